@@ -36,6 +36,7 @@ import org.sonar.squidbridge.annotations.SqaleConstantRemediation;
 import org.sonar.squidbridge.annotations.SqaleSubCharacteristic;
 import org.sonar.squidbridge.checks.SquidCheck;
 
+import org.fundacionjala.enforce.sonarqube.apex.ApexOutlineVisitor;
 import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
 
 /**
@@ -50,7 +51,7 @@ import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
 @SqaleSubCharacteristic(RulesDefinition.SubCharacteristics.READABILITY)
 @SqaleConstantRemediation("1min")
 @ActivatedByDefault
-public class ClassNameCheck extends SquidCheck<Grammar> {
+public class ClassNameCheck extends SquidCheck<Grammar> implements ApexOutlineVisitor {
 
     /**
      * It is the code of the rule for the plugin.
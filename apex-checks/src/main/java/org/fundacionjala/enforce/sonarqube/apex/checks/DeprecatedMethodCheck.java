@@ -31,6 +31,7 @@ import org.sonar.squidbridge.annotations.ActivatedByDefault;
 import org.sonar.squidbridge.annotations.SqaleConstantRemediation;
 import org.sonar.squidbridge.annotations.SqaleSubCharacteristic;
 
+import org.fundacionjala.enforce.sonarqube.apex.ApexOutlineVisitor;
 import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
 
 /**
@@ -46,7 +47,7 @@ import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
 @SqaleSubCharacteristic(RulesDefinition.SubCharacteristics.READABILITY)
 @SqaleConstantRemediation("1min")
 @ActivatedByDefault
-public class DeprecatedMethodCheck extends AnnotationMethodCheck {
+public class DeprecatedMethodCheck extends AnnotationMethodCheck implements ApexOutlineVisitor {
 
     /**
      * Stores a message template.
@@ -32,6 +32,8 @@ import org.sonar.squidbridge.annotations.SqaleConstantRemediation;
 import org.sonar.squidbridge.annotations.SqaleSubCharacteristic;
 import org.sonar.squidbridge.checks.AbstractLineLengthCheck;
 
+import org.fundacionjala.enforce.sonarqube.apex.ApexOutlineVisitor;
+
 /**
  * This class defines the maximum number of the lines.
  */
@@ -44,7 +46,7 @@ import org.sonar.squidbridge.checks.AbstractLineLengthCheck;
 @SqaleSubCharacteristic(RulesDefinition.SubCharacteristics.READABILITY)
 @SqaleConstantRemediation("1min")
 @ActivatedByDefault
-public class LineLengthCheck extends AbstractLineLengthCheck<Grammar> {
+public class LineLengthCheck extends AbstractLineLengthCheck<Grammar> implements ApexOutlineVisitor {
 
     /**
      * Identifier key of the class.
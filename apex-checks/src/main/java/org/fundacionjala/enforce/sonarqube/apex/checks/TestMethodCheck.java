@@ -33,6 +33,7 @@ import org.sonar.squidbridge.annotations.ActivatedByDefault;
 import org.sonar.squidbridge.annotations.SqaleConstantRemediation;
 import org.sonar.squidbridge.annotations.SqaleSubCharacteristic;
 
+import org.fundacionjala.enforce.sonarqube.apex.ApexOutlineVisitor;
 import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
 
 /**
@@ -48,7 +49,7 @@ import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
 @SqaleSubCharacteristic(RulesDefinition.SubCharacteristics.READABILITY)
 @SqaleConstantRemediation("6min")
 @ActivatedByDefault
-public class TestMethodCheck extends AnnotationMethodCheck {
+public class TestMethodCheck extends AnnotationMethodCheck implements ApexOutlineVisitor {
 
     /**
      * Stores a message template.
@@ -79,9 +80,11 @@ public class TestMethodCheck extends AnnotationMethodCheck {
         if (isTest(astNode)) {
             return;
         }
-        List<AstNode> methods = astNode.getDescendants(ApexGrammarRuleKey.METHOD_DECLARATION);
-        methods.forEach(method -> {
-            if (isTest(method)) {
+        List<AstNode> fields = astNode.getChildren(ApexGrammarRuleKey.FIELD_DECLARATION);
+        fields.forEach(field -> {
+            AstNode method = field.is(ApexGrammarRuleKey.METHOD_DECLARATION) ? field
+                    : field.getFirstChild(ApexGrammarRuleKey.METHOD_DECLARATION);
+            if (method != null && isTest(method)) {
                 getContext().createLineViolation(this, methodMessage(astNode), method);
             }
         });
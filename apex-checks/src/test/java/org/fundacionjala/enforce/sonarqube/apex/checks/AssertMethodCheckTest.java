@@ -24,11 +24,20 @@
 package org.fundacionjala.enforce.sonarqube.apex.checks;
 
 import java.io.File;
+import java.util.EnumSet;
 
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.Grammar;
 import org.junit.Before;
 import org.junit.Test;
+import org.sonar.squidbridge.AstScanner;
 import org.sonar.squidbridge.api.SourceFile;
 import org.sonar.squidbridge.checks.CheckMessagesVerifier;
+import org.sonar.squidbridge.indexer.QueryByType;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexAstScanner;
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
 
 import static org.fundacionjala.enforce.sonarqube.apex.ApexAstScanner.scanFile;
 
@@ -50,4 +59,17 @@ public class AssertMethodCheckTest {
                 .next().atLine(5).withMessage("It's bad practice to use assert(value, value).")
                 .noMore();
     }
+
+    @Test
+    public void testAssertsInALazyScan() {
+        assertMethodCheck = new AssertMethodCheck();
+        AstScanner<Grammar> scanner = ApexAstScanner.create(new ApexConfiguration(Charsets.UTF_8),
+                EnumSet.of(ApexMetric.METHODS), assertMethodCheck);
+        scanner.scanFile(new File("src/test/resources/checks/testMethod.cls"));
+        sourceFile = (SourceFile) scanner.getIndex().search(new QueryByType(SourceFile.class)).iterator().next();
+        CheckMessagesVerifier.verify(sourceFile.getCheckMessages())
+                .next().atLine(4).withMessage("It's bad practice to use assert(true).")
+                .next().atLine(5).withMessage("It's bad practice to use assert(value, value).")
+                .noMore();
+    }
 }
@@ -24,11 +24,20 @@
 package org.fundacionjala.enforce.sonarqube.apex.checks;
 
 import java.io.File;
+import java.util.EnumSet;
 
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.Grammar;
 import org.junit.Test;
 
+import org.sonar.squidbridge.AstScanner;
 import org.sonar.squidbridge.api.SourceFile;
 import org.sonar.squidbridge.checks.CheckMessagesVerifier;
+import org.sonar.squidbridge.indexer.QueryByType;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexAstScanner;
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
 
 import static org.fundacionjala.enforce.sonarqube.apex.ApexAstScanner.scanFile;
 
@@ -53,4 +62,16 @@ public class MethodNameCheckTest {
                 .next().atLine(3).withMessage(
                 "Rename method \"MyMethod\" to match the regular expression ^[a-z][a-zA-Z0-9]+$.");
     }
+
+    @Test
+    public void testErrorMethodNameInAnOutlineScan() throws Exception {
+        methodNameCheck = new MethodNameCheck();
+        AstScanner<Grammar> scanner = ApexAstScanner.create(new ApexConfiguration(Charsets.UTF_8),
+                EnumSet.of(ApexMetric.METHODS), methodNameCheck);
+        scanner.scanFile(new File("src/test/resources/checks/clazzError.cls"));
+        sourceFile = (SourceFile) scanner.getIndex().search(new QueryByType(SourceFile.class)).iterator().next();
+        CheckMessagesVerifier.verify(sourceFile.getCheckMessages())
+                .next().atLine(3).withMessage(
+                "Rename method \"MyMethod\" to match the regular expression ^[a-z][a-zA-Z0-9]+$.");
+    }
 }
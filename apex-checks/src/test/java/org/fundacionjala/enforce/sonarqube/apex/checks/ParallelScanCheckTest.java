@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.checks;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.Grammar;
+import org.junit.Test;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.api.CheckMessage;
+import org.sonar.squidbridge.api.SourceCode;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.ApexParallelScanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ParallelScanCheckTest {
+
+    private static final List<File> FILES = ImmutableList.of(
+            new File("src/test/resources/checks/clazzCorrect.cls"),
+            new File("src/test/resources/checks/clazzCorrect_.cls"),
+            new File("src/test/resources/checks/clazzError.cls"),
+            new File("src/test/resources/checks/lineLength.cls"),
+            new File("src/test/resources/checks/testMethod.cls"));
+
+    @Test
+    public void testTheCheckMessagesOfAParallelScanMatchASingleThreadScan() {
+        List<String> singleThreadMessages = scan(1);
+        assertFalse(singleThreadMessages.isEmpty());
+        assertEquals(singleThreadMessages, scan(4));
+    }
+
+    private static List<String> scan(int threads) {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        ApexParallelScanner scanner = new ApexParallelScanner(configuration, threads,
+                ParallelScanCheckTest::createChecks);
+        scanner.scanFiles(FILES);
+        List<String> messages = Lists.newArrayList();
+        for (File file : FILES) {
+            SourceCode sourceFile = scanner.getIndex().search(file.getAbsolutePath());
+            for (CheckMessage message : sourceFile.getCheckMessages()) {
+                messages.add(String.format("%s:%d:%s: %s", file.getName(), message.getLine(),
+                        message.getCheck().getClass().getSimpleName(), message.formatDefaultMessage()));
+            }
+        }
+        messages.sort(null);
+        return messages;
+    }
+
+    private static Collection<SquidAstVisitor<Grammar>> createChecks() {
+        List<SquidAstVisitor<Grammar>> checks = Lists.newArrayList();
+        for (Class check : CheckList.getChecks()) {
+            try {
+                checks.add((SquidAstVisitor<Grammar>) check.newInstance());
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return checks;
+    }
+}
@@ -25,10 +25,17 @@ package org.fundacionjala.enforce.sonarqube.apex.checks;
 
 import java.io.File;
 
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.Grammar;
 import org.junit.Before;
 import org.junit.Test;
+import org.sonar.squidbridge.AstScanner;
 import org.sonar.squidbridge.api.SourceFile;
 import org.sonar.squidbridge.checks.CheckMessagesVerifier;
+import org.sonar.squidbridge.indexer.QueryByType;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexAstScanner;
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
 
 import static org.fundacionjala.enforce.sonarqube.apex.ApexAstScanner.scanFile;
 
@@ -49,4 +56,16 @@ public class TestMethodCheckTest {
                 .next().atLine(3).withMessage("The \"testType\" method corresponds to a test class.")
                 .noMore();
     }
+
+    @Test
+    public void testACollapsingScan() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setCollapseWrappers(true);
+        AstScanner<Grammar> scanner = ApexAstScanner.create(configuration, new TestMethodCheck());
+        scanner.scanFile(new File("src/test/resources/checks/testMethod.cls"));
+        sourceFile = (SourceFile) scanner.getIndex().search(new QueryByType(SourceFile.class)).iterator().next();
+        CheckMessagesVerifier.verify(sourceFile.getCheckMessages())
+                .next().atLine(3).withMessage("The \"testType\" method corresponds to a test class.")
+                .noMore();
+    }
 }
@@ -24,19 +24,28 @@
 package org.fundacionjala.enforce.sonarqube.apex;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
 import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.AstNodeType;
 import com.sonar.sslr.api.Grammar;
-import com.sonar.sslr.impl.Parser;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.impl.ast.AstWalker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.AstScannerExceptionHandler;
 import org.sonar.squidbridge.CommentAnalyser;
 import org.sonar.squidbridge.SourceCodeBuilderCallback;
 import org.sonar.squidbridge.SourceCodeBuilderVisitor;
 import org.sonar.squidbridge.SquidAstVisitor;
-import org.sonar.squidbridge.SquidAstVisitorContextImpl;
+import org.sonar.squidbridge.api.AnalysisException;
 import org.sonar.squidbridge.api.SourceClass;
 import org.sonar.squidbridge.api.SourceCode;
 import org.sonar.squidbridge.api.SourceFile;
@@ -47,14 +56,18 @@ import org.sonar.squidbridge.metrics.CommentsVisitor;
 import org.sonar.squidbridge.metrics.ComplexityVisitor;
 import org.sonar.squidbridge.metrics.CounterVisitor;
 import org.sonar.squidbridge.metrics.LinesOfCodeVisitor;
-import org.sonar.squidbridge.metrics.LinesVisitor;
 
 import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
+import org.fundacionjala.enforce.sonarqube.apex.parser.ApexCompactParser;
+import org.fundacionjala.enforce.sonarqube.apex.parser.ApexCompiledParser;
+import org.fundacionjala.enforce.sonarqube.apex.parser.ApexLazyParser;
 import org.fundacionjala.enforce.sonarqube.apex.parser.ApexParser;
 
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_DECLARATION;
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_NAME;
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.DML_STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.ERROR_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.ERROR_STATEMENT;
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_NAME;
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.FOR_STATEMENT;
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_DECLARATION;
@@ -68,6 +81,21 @@ import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRu
  */
 public class ApexAstScanner {
 
+    /**
+     * Stores the logger of the scans.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ApexAstScanner.class);
+
+    /**
+     * Stores an error message when a file can not be parsed.
+     */
+    private static final String PARSE_ERROR = "Unable to parse file: %s";
+
+    /**
+     * Stores an error message when a file can not be visited.
+     */
+    private static final String ANALYSIS_ERROR = "Unable to analyze file: %s";
+
     /**
      * Stores an error message when there is more than one sourceFile.
      */
@@ -82,7 +110,7 @@ public class ApexAstScanner {
     /**
      * Stores a project name.
      */
-    private static final String PROJECT_NAME = "Apex Project";
+    static final String PROJECT_NAME = "Apex Project";
 
     /**
      * Stores a key pattern.
@@ -101,34 +129,100 @@ public class ApexAstScanner {
     }
 
     /**
-     * Returns a scanner from configuration and visitors.
+     * Returns a scanner from configuration and visitors. The index of the scanner is an
+     * {@link ApexSourceIndex} and the context of the visitors is an {@link ApexVisitorContext}.
      *
      * @param config apex configuration.
      * @param visitors list of visitors.
      * @return a scanner.
      */
     public static AstScanner<Grammar> create(ApexConfiguration config, SquidAstVisitor<Grammar>... visitors) {
+        return create(config, EnumSet.allOf(ApexMetric.class), visitors);
+    }
+
+    /**
+     * Returns a scanner that computes some metrics with the parser that fits them. A file above the budget of the
+     * configuration is only measured from its tokens and counted in {@link ApexMetric#SKIPPED_FILES}.
+     *
+     * @param config apex configuration.
+     * @param metrics metrics to be computed.
+     * @param visitors list of visitors.
+     * @return a scanner.
+     */
+    public static AstScanner<Grammar> create(ApexConfiguration config, Set<ApexMetric> metrics,
+            SquidAstVisitor<Grammar>... visitors) {
+        return create(config, metrics, createParser(config, metrics, visitors), visitors);
+    }
+
+    /**
+     * Returns the parser of the files, which only parses the method bodies that the metrics or visitors need.
+     *
+     * @param config apex configuration.
+     * @param metrics metrics to be computed.
+     * @param visitors list of visitors.
+     * @return a parser.
+     */
+    private static ApexCompiledParser createParser(ApexConfiguration config, Set<ApexMetric> metrics,
+            SquidAstVisitor<Grammar>... visitors) {
+        boolean wholeFiles = needsBodies(metrics) || config.getErrorRecovery();
+        ApexCompiledParser parser;
+        if (wholeFiles && (config.getCompactAst() || config.getAstCacheDirectory() != null)) {
+            parser = ApexParser.createCompact(config);
+        } else if (wholeFiles && config.getSplitFiles()) {
+            parser = ApexParser.createSplit(config);
+        } else if (wholeFiles) {
+            parser = ApexParser.createCompiled(config);
+        } else if (isOutline(visitors)) {
+            parser = ApexParser.createOutline(config);
+        } else {
+            parser = ApexParser.createLazy(config, Arrays.asList(visitors));
+        }
+        if (config.getCollapseWrappers() && !(parser instanceof ApexCompactParser)) {
+            parser.setCollapsedTypes(ApexCompiledParser.WRAPPER_RULES, Arrays.asList(visitors));
+        }
+        parser.setBudget(config.getMaxFileTokens(), config.getMaxFileMillis());
+        return parser;
+    }
+
+    /**
+     * Returns a scanner from configuration, metrics, parser and visitors.
+     *
+     * @param config apex configuration.
+     * @param metrics metrics to be computed.
+     * @param parser parser of the scanner.
+     * @param visitors list of visitors.
+     * @return a scanner.
+     */
+    private static AstScanner<Grammar> create(ApexConfiguration config, Set<ApexMetric> metrics,
+            ApexCompiledParser parser, SquidAstVisitor<Grammar>... visitors) {
         final SourceProject sourceProject = new SourceProject(PROJECT_NAME);
-        final SquidAstVisitorContextImpl<Grammar> context = new SquidAstVisitorContextImpl<>(sourceProject);
-        final Parser<Grammar> parser = ApexParser.create(config);
+        final ApexVisitorContext context = new ApexVisitorContext(sourceProject, parser);
 
-        AstScanner.Builder<Grammar> builder = AstScanner.<Grammar>builder(context).setBaseParser(parser);
+        ScannerBuilder builder = new ScannerBuilder(context);
+        builder.setBaseParser(parser);
         builder.withMetrics(ApexMetric.values());
         builder.setFilesMetric(ApexMetric.FILES);
+        if (config.getMaxFileMillis() > 0) {
+            builder.withSquidAstVisitor(new ApexDeadlineVisitor());
+        }
+        if (parser instanceof ApexLazyParser) {
+            builder.withSquidAstVisitor(new ApexBlockErrorsVisitor(ApexMetric.PARSE_ERRORS, (ApexLazyParser) parser));
+        }
 
         setCommentAnalyser(builder);
-        setClassesAnalyser(builder);
-        setMethodAnalyser(builder);
-        setMetrics(config, builder);
+        setClassesAnalyser(metrics, builder);
+        setMethodAnalyser(metrics, builder);
+        setMetrics(config, metrics, builder);
 
         for (SquidAstVisitor<Grammar> visitor : visitors) {
             builder.withSquidAstVisitor(visitor);
         }
-        return builder.build();
+        return new IndexedAstScanner(builder, sourceProject, config.getMaxFileMillis());
     }
 
     /**
-     * Returns a source file from file and visitors.
+     * Returns a source file from file and visitors. The file is parsed with the compiled parser of the
+     * current thread, which is reused from one call to the next.
      *
      * @param file source file.
      * @param visitors list of visitors.
@@ -140,8 +234,14 @@ public class ApexAstScanner {
         if (!file.isFile()) {
             throw new IllegalArgumentException(String.format(FILE_NOT_FOUND, file));
         }
-        AstScanner<Grammar> scanner = create(new ApexConfiguration(Charsets.UTF_8), visitors);
-        scanner.scanFile(file);
+        ApexConfiguration config = new ApexConfiguration(Charsets.UTF_8);
+        ApexCompiledParser parser = ApexParser.getCompiled(config);
+        AstScanner<Grammar> scanner = create(config, EnumSet.allOf(ApexMetric.class), parser, visitors);
+        try {
+            scanner.scanFile(file);
+        } finally {
+            parser.reset();
+        }
         Collection<SourceCode> sources = scanner.getIndex().search(new QueryByType(SourceFile.class));
         if (sources.size() != 1) {
             throw new IllegalStateException(String.format(ONE_SOURCE_FILE, sources.size()));
@@ -150,14 +250,84 @@ public class ApexAstScanner {
     }
 
     /**
-     * Sets the default apex metrics in {@link AstScanner}.
+     * Returns whether a metric needs the method bodies.
+     *
+     * @param metrics metrics to be computed.
+     * @return true when a metric needs the method bodies.
+     */
+    private static boolean needsBodies(Set<ApexMetric> metrics) {
+        for (ApexMetric metric : metrics) {
+            if (metric.needsBodies()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the visitors of a scanner can visit the files parsed in outline mode.
+     *
+     * @param visitors list of visitors.
+     * @return true when every visitor is an outline visitor.
+     */
+    private static boolean isOutline(SquidAstVisitor<Grammar>... visitors) {
+        for (SquidAstVisitor<Grammar> visitor : visitors) {
+            if (!(visitor instanceof ApexOutlineVisitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the requested apex metrics in {@link AstScanner}.
      *
      * @param config apex configuration.
+     * @param metrics metrics to be computed.
      * @param builder scanner builder.
      */
-    private static void setMetrics(ApexConfiguration config, AstScanner.Builder<Grammar> builder) {
-        builder.withSquidAstVisitor(new LinesVisitor<>(ApexMetric.LINES));
-        builder.withSquidAstVisitor(new LinesOfCodeVisitor<>(ApexMetric.LINES_OF_CODE));
+    private static void setMetrics(ApexConfiguration config, Set<ApexMetric> metrics,
+            AstScanner.Builder<Grammar> builder) {
+        if (metrics.contains(ApexMetric.LINES)) {
+            builder.withSquidAstVisitor(new ApexLinesVisitor(ApexMetric.LINES));
+        }
+        if (metrics.contains(ApexMetric.LINES_OF_CODE)) {
+            builder.withSquidAstVisitor(new LinesOfCodeVisitor<>(ApexMetric.LINES_OF_CODE));
+        }
+        if (metrics.contains(ApexMetric.COMPLEXITY)) {
+            setComplexity(builder);
+        }
+        if (metrics.contains(ApexMetric.COMMENT_LINES)) {
+            builder.withSquidAstVisitor(CommentsVisitor.<Grammar>builder()
+                    .withCommentMetric(ApexMetric.COMMENT_LINES)
+                    .withNoSonar(true)
+                    .withIgnoreHeaderComment(config.getIgnoreHeaderComments())
+                    .build());
+        }
+        if (metrics.contains(ApexMetric.STATEMENTS)) {
+            builder.withSquidAstVisitor(CounterVisitor.<Grammar>builder()
+                    .setMetricDef(ApexMetric.STATEMENTS)
+                    .subscribeTo(TERMINAL_STATEMENT)
+                    .build());
+        }
+        if (metrics.contains(ApexMetric.SKIPPED_FILES)) {
+            builder.withSquidAstVisitor(
+                    new ApexBudgetVisitor(ApexMetric.SKIPPED_FILES, ApexMetric.TIMED_OUT_FILES));
+        }
+        if (metrics.contains(ApexMetric.PARSE_ERRORS)) {
+            builder.withSquidAstVisitor(CounterVisitor.<Grammar>builder()
+                    .setMetricDef(ApexMetric.PARSE_ERRORS)
+                    .subscribeTo(ERROR_DECLARATION, ERROR_STATEMENT)
+                    .build());
+        }
+    }
+
+    /**
+     * Sets the complexity metric in {@link AstScanner}.
+     *
+     * @param builder scanner builder.
+     */
+    private static void setComplexity(AstScanner.Builder<Grammar> builder) {
         AstNodeType[] complexityAstNodeType = new AstNodeType[]{
             METHOD_DECLARATION,
             WHILE_STATEMENT,
@@ -170,46 +340,44 @@ public class ApexAstScanner {
                 .setMetricDef(ApexMetric.COMPLEXITY)
                 .subscribeTo(complexityAstNodeType)
                 .build());
-        builder.withSquidAstVisitor(CommentsVisitor.<Grammar>builder().withCommentMetric(ApexMetric.COMMENT_LINES)
-                .withNoSonar(true)
-                .withIgnoreHeaderComment(config.getIgnoreHeaderComments())
-                .build());
-        builder.withSquidAstVisitor(CounterVisitor.<Grammar>builder()
-                .setMetricDef(ApexMetric.STATEMENTS)
-                .subscribeTo(TERMINAL_STATEMENT)
-                .build());
     }
 
     /**
      * Sets the default visitors to mapping a method.
      *
+     * @param metrics metrics to be computed.
      * @param builder scanner builder.
      */
-    private static void setMethodAnalyser(AstScanner.Builder<Grammar> builder) {
+    private static void setMethodAnalyser(Set<ApexMetric> metrics, AstScanner.Builder<Grammar> builder) {
         builder.withSquidAstVisitor(new SourceCodeBuilderVisitor<>(
                 buildCallback(METHOD_NAME, IS_CLASS),
                 METHOD_DECLARATION));
 
-        builder.withSquidAstVisitor(CounterVisitor.<Grammar>builder()
-                .setMetricDef(ApexMetric.METHODS)
-                .subscribeTo(METHOD_DECLARATION)
-                .build());
+        if (metrics.contains(ApexMetric.METHODS)) {
+            builder.withSquidAstVisitor(CounterVisitor.<Grammar>builder()
+                    .setMetricDef(ApexMetric.METHODS)
+                    .subscribeTo(METHOD_DECLARATION)
+                    .build());
+        }
     }
 
     /**
      * Sets the default visitors to mapping a class.
      *
+     * @param metrics metrics to be computed.
      * @param builder scanner builder.
      */
-    private static void setClassesAnalyser(AstScanner.Builder<Grammar> builder) {
+    private static void setClassesAnalyser(Set<ApexMetric> metrics, AstScanner.Builder<Grammar> builder) {
         builder.withSquidAstVisitor(new SourceCodeBuilderVisitor<>(
                 buildCallback(CLASS_NAME, !IS_CLASS),
                 CLASS_DECLARATION));
 
-        builder.withSquidAstVisitor(CounterVisitor.<Grammar>builder()
-                .setMetricDef(ApexMetric.CLASSES)
-                .subscribeTo(CLASS_DECLARATION)
-                .build());
+        if (metrics.contains(ApexMetric.CLASSES)) {
+            builder.withSquidAstVisitor(CounterVisitor.<Grammar>builder()
+                    .setMetricDef(ApexMetric.CLASSES)
+                    .subscribeTo(CLASS_DECLARATION)
+                    .build());
+        }
     }
 
     /**
@@ -264,4 +432,229 @@ public class ApexAstScanner {
         int line = node.getToken().getLine();
         return String.format(KEY_PATTERN, name, line);
     }
+
+    /**
+     * Scanner that indexes the source code in an {@link ApexSourceIndex}.
+     */
+    private static class IndexedAstScanner extends AstScanner<Grammar> {
+
+        /**
+         * Stores the index of the scanned source code.
+         */
+        private final ApexSourceIndex index = new ApexSourceIndex();
+
+        /**
+         * Stores the visitors of the scanner.
+         */
+        private final List<SquidAstVisitor<Grammar>> visitors;
+
+        /**
+         * Stores the context of the visitors.
+         */
+        private final ApexVisitorContext context;
+
+        /**
+         * Stores the parser of the files.
+         */
+        private final ApexCompiledParser parser;
+
+        /**
+         * Stores the maximum milliseconds spent parsing and visiting a file, 0 for no maximum.
+         */
+        private final long maxMillis;
+
+        /**
+         * Default constructor.
+         *
+         * @param builder scanner builder.
+         * @param sourceProject project of the scanner.
+         * @param maxMillis maximum milliseconds spent parsing and visiting a file, 0 for no maximum.
+         */
+        IndexedAstScanner(ScannerBuilder builder, SourceProject sourceProject, long maxMillis) {
+            super(builder);
+            this.visitors = builder.visitors;
+            this.context = builder.context;
+            this.parser = builder.parser;
+            this.maxMillis = maxMillis;
+            index.index(sourceProject);
+        }
+
+        /**
+         * Scans some files. Without a time budget, the files are scanned as {@link AstScanner} does. With a time
+         * budget, a file whose visit outlasts it is visited again from its tokens, without the source code and
+         * the messages of its first visit.
+         *
+         * @param files the files.
+         * @throws AnalysisException when a file can not be parsed or visited for another reason.
+         */
+        @Override
+        public void scanFiles(Collection<File> files) {
+            if (maxMillis == 0) {
+                super.scanFiles(files);
+                return;
+            }
+            visitors.forEach(SquidAstVisitor::init);
+            AstWalker walker = new AstWalker(visitors);
+            for (File file : files) {
+                context.setFile(file, ApexMetric.FILES);
+                context.startBudget(maxMillis);
+                scanFile(file, walker);
+            }
+            visitors.forEach(SquidAstVisitor::destroy);
+            decorateSquidTree();
+        }
+
+        /**
+         * Parses and visits a file, as {@link AstScanner} does, and visits its tokens when its visit outlasts
+         * the time budget.
+         *
+         * @param file the file.
+         * @param walker walker of the visitors.
+         * @throws AnalysisException when the file can not be parsed or visited for another reason.
+         */
+        private void scanFile(File file, AstWalker walker) {
+            SourceCode sourceFile = context.peekSourceCode();
+            String parseError = String.format(PARSE_ERROR, file.getAbsolutePath());
+            AstNode ast = null;
+            Exception parseException = null;
+            try {
+                ast = parser.parse(file);
+            } catch (RecognitionException e) {
+                LOG.error(parseError);
+                LOG.error(e.getMessage());
+                parseException = e;
+            } catch (Exception e) {
+                LOG.error(parseError, e);
+                parseException = e;
+            } catch (StackOverflowError e) {
+                throw new AnalysisException(parseError, e);
+            }
+            try {
+                if (parseException == null) {
+                    walkWithinBudget(sourceFile, ast, walker);
+                } else {
+                    visitFileWithError(parseException);
+                }
+                context.popTillSourceProject();
+            } catch (RuntimeException | StackOverflowError e) {
+                throw new AnalysisException(String.format(ANALYSIS_ERROR, file.getAbsolutePath()), e);
+            }
+        }
+
+        /**
+         * Walks the tree of a file, and walks the tree of its tokens instead when the walk outlasts the time
+         * budget. The source code of the classes and functions of the first walk, its measures and its
+         * messages are dropped first.
+         *
+         * @param sourceFile source code of the file.
+         * @param ast root node of the file.
+         * @param walker walker of the visitors.
+         */
+        private void walkWithinBudget(SourceCode sourceFile, AstNode ast, AstWalker walker) {
+            try {
+                walker.walkAndVisit(ast);
+            } catch (ApexDeadlineVisitor.DeadlineException e) {
+                context.popTillSourceProject();
+                index.removeDescendants(sourceFile);
+                if (sourceFile.hasChildren()) {
+                    sourceFile.getChildren().clear();
+                }
+                sourceFile.getCheckMessages().clear();
+                for (ApexMetric metric : ApexMetric.values()) {
+                    if (metric != ApexMetric.FILES) {
+                        sourceFile.removeMeasure(metric);
+                    }
+                }
+                context.addSourceCode(sourceFile);
+                context.startBudget(0);
+                walker.walkAndVisit(parser.timeOut());
+            }
+        }
+
+        /**
+         * Notifies the visitors of a file that could not be parsed, as {@link AstScanner} does.
+         *
+         * @param parseException the exception of the parser.
+         */
+        private void visitFileWithError(Exception parseException) {
+            visitors.forEach(visitor -> visitor.visitFile(null));
+            for (SquidAstVisitor<Grammar> visitor : visitors) {
+                if (!(visitor instanceof AstScannerExceptionHandler)) {
+                    continue;
+                }
+                AstScannerExceptionHandler handler = (AstScannerExceptionHandler) visitor;
+                if (parseException instanceof RecognitionException) {
+                    handler.processRecognitionException((RecognitionException) parseException);
+                } else {
+                    handler.processException(parseException);
+                }
+            }
+            visitors.forEach(visitor -> visitor.leaveFile(null));
+        }
+
+        /**
+         * Returns the index of the scanned source code.
+         *
+         * @return the index.
+         */
+        @Override
+        public ApexSourceIndex getIndex() {
+            return index;
+        }
+    }
+
+    /**
+     * Builder of a scanner that keeps the visitors, the context and the parser it is given.
+     */
+    private static class ScannerBuilder extends AstScanner.Builder<Grammar> {
+
+        /**
+         * Stores the visitors of the scanner.
+         */
+        private final List<SquidAstVisitor<Grammar>> visitors = Lists.newArrayList();
+
+        /**
+         * Stores the context of the visitors.
+         */
+        private final ApexVisitorContext context;
+
+        /**
+         * Stores the parser of the files.
+         */
+        private ApexCompiledParser parser;
+
+        /**
+         * Default constructor.
+         *
+         * @param context context of the visitors.
+         */
+        ScannerBuilder(ApexVisitorContext context) {
+            super(context);
+            this.context = context;
+        }
+
+        /**
+         * Sets the parser of the files.
+         *
+         * @param parser the parser.
+         * @return this builder.
+         */
+        ScannerBuilder setBaseParser(ApexCompiledParser parser) {
+            this.parser = parser;
+            super.setBaseParser(parser);
+            return this;
+        }
+
+        /**
+         * Adds a visitor to the scanner.
+         *
+         * @param visitor the visitor.
+         * @return this builder.
+         */
+        @Override
+        public AstScanner.Builder<Grammar> withSquidAstVisitor(SquidAstVisitor<Grammar> visitor) {
+            visitors.add(visitor);
+            return super.withSquidAstVisitor(visitor);
+        }
+    }
 }
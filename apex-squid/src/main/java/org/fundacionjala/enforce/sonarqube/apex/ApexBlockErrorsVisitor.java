@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.measures.MetricDef;
+
+import org.fundacionjala.enforce.sonarqube.apex.parser.ApexLazyParser;
+
+/**
+ * Visitor that adds the blocks of statements that the grammar rejected while the visitors searched a file
+ * parsed by a {@link ApexLazyParser} to a metric of the file.
+ */
+public class ApexBlockErrorsVisitor extends SquidAstVisitor<Grammar> {
+
+    /**
+     * Stores the metric of the parse errors.
+     */
+    private final MetricDef metric;
+
+    /**
+     * Stores the parser of the files.
+     */
+    private final ApexLazyParser parser;
+
+    /**
+     * Default constructor.
+     *
+     * @param metric metric of the parse errors.
+     * @param parser parser of the files.
+     */
+    public ApexBlockErrorsVisitor(MetricDef metric, ApexLazyParser parser) {
+        this.metric = metric;
+        this.parser = parser;
+    }
+
+    /**
+     * Adds the failed blocks of the file, once the other visitors have left it.
+     *
+     * @param astNode root node of the file, null when it could not be parsed.
+     */
+    @Override
+    public void leaveFile(AstNode astNode) {
+        if (astNode != null && parser.getFailedBlocks() > 0) {
+            getContext().peekSourceCode().add(metric, parser.getFailedBlocks());
+        }
+    }
+}
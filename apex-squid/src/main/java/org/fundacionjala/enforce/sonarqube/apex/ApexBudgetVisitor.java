@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.measures.MetricDef;
+
+/**
+ * Counts the files that exceeded the budget of the parser, whose trees only have their tokens, so the metrics
+ * computed from the rules of the grammar are missing for them. The files whose parse or visit outlasted the
+ * budget are also counted apart from the files with too many tokens.
+ */
+public class ApexBudgetVisitor extends SquidAstVisitor<Grammar> {
+
+    /**
+     * Stores the metric of the skipped files.
+     */
+    private final MetricDef metric;
+
+    /**
+     * Stores the metric of the skipped files whose parse timed out.
+     */
+    private final MetricDef timeoutMetric;
+
+    /**
+     * Default constructor.
+     *
+     * @param metric metric of the skipped files.
+     * @param timeoutMetric metric of the skipped files whose parse timed out.
+     */
+    public ApexBudgetVisitor(MetricDef metric, MetricDef timeoutMetric) {
+        this.metric = metric;
+        this.timeoutMetric = timeoutMetric;
+    }
+
+    /**
+     * Sets the metric of a file that exceeded the budget.
+     *
+     * @param astNode root node of the file, null when it could not be parsed.
+     */
+    @Override
+    public void visitFile(AstNode astNode) {
+        ApexVisitorContext context = (ApexVisitorContext) getContext();
+        if (astNode != null && context.isOverBudget()) {
+            context.peekSourceCode().setMeasure(metric, 1);
+            if (context.isTimedOut()) {
+                context.peekSourceCode().setMeasure(timeoutMetric, 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Digest of the code of the analyzer, which the caches add to their fingerprints so a new version of the
+ * analyzer does not replay the entries of the previous one.
+ */
+public final class ApexCodeDigest {
+
+    /**
+     * Stores the digest algorithm.
+     */
+    private static final String ALGORITHM = "SHA-1";
+
+    /**
+     * Default constructor.
+     */
+    private ApexCodeDigest() {
+    }
+
+    /**
+     * Returns a digest of the jars, or the class directories, that contain some classes. When the code can not
+     * be read, the digest is unique, and the caches miss.
+     *
+     * @param types the classes.
+     * @return the digest.
+     */
+    public static String digest(Collection<Class<?>> types) {
+        try {
+            Set<File> locations = new TreeSet<>();
+            for (Class<?> type : types) {
+                CodeSource source = type.getProtectionDomain().getCodeSource();
+                if (source != null && source.getLocation() != null) {
+                    locations.add(new File(source.getLocation().toURI()));
+                }
+            }
+            MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+            for (File location : locations) {
+                digestLocation(digest, location);
+            }
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        } catch (IOException | URISyntaxException | NoSuchAlgorithmException e) {
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    /**
+     * Adds a jar, or every file of a class directory, to a digest.
+     *
+     * @param digest the digest.
+     * @param location the jar or the directory.
+     * @throws IOException when a file can not be read.
+     */
+    private static void digestLocation(MessageDigest digest, File location) throws IOException {
+        if (!location.isDirectory()) {
+            digest.update(Files.readAllBytes(location.toPath()));
+            return;
+        }
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(location.toPath())) {
+            paths = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            digest.update(location.toPath().relativize(path).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(path));
+        }
+    }
+}
@@ -23,6 +23,7 @@
  */
 package org.fundacionjala.enforce.sonarqube.apex;
 
+import java.io.File;
 import java.nio.charset.Charset;
 
 import org.sonar.squidbridge.api.SquidConfiguration;
@@ -37,6 +38,41 @@ public class ApexConfiguration extends SquidConfiguration {
      */
     private boolean ignoreHeaderComments;
 
+    /**
+     * Represents a value to skip the declarations and statements that can not be parsed.
+     */
+    private boolean errorRecovery;
+
+    /**
+     * Represents a value to store the trees of the parsed files in primitive arrays.
+     */
+    private boolean compactAst;
+
+    /**
+     * Represents a value to collapse the wrapper rules into their only child.
+     */
+    private boolean collapseWrappers;
+
+    /**
+     * Represents the maximum number of tokens of a fully analyzed file, 0 for no maximum.
+     */
+    private int maxFileTokens;
+
+    /**
+     * Represents the maximum milliseconds spent parsing and visiting a fully analyzed file, 0 for no maximum.
+     */
+    private long maxFileMillis;
+
+    /**
+     * Represents the directory where the trees of the parsed files are cached, null for no cache.
+     */
+    private File astCacheDirectory;
+
+    /**
+     * Represents a value to parse the top level declarations of a large file on parallel tasks.
+     */
+    private boolean splitFiles = true;
+
     /**
      * Default constructor that requires charset.
      *
@@ -46,6 +82,24 @@ public class ApexConfiguration extends SquidConfiguration {
         super(charset);
     }
 
+    /**
+     * Copy constructor.
+     *
+     * @param config configuration to be copied.
+     */
+    public ApexConfiguration(ApexConfiguration config) {
+        super(config.getCharset());
+        setStopSquidOnException(config.stopSquidOnException());
+        ignoreHeaderComments = config.ignoreHeaderComments;
+        errorRecovery = config.errorRecovery;
+        compactAst = config.compactAst;
+        collapseWrappers = config.collapseWrappers;
+        maxFileTokens = config.maxFileTokens;
+        maxFileMillis = config.maxFileMillis;
+        astCacheDirectory = config.astCacheDirectory;
+        splitFiles = config.splitFiles;
+    }
+
     /**
      * Returns ignore header comments.
      *
@@ -63,4 +117,133 @@ public class ApexConfiguration extends SquidConfiguration {
     public void setIgnoreHeaderComments(boolean ignoreHeaderComments) {
         this.ignoreHeaderComments = ignoreHeaderComments;
     }
+
+    /**
+     * Returns error recovery.
+     *
+     * @return the error recovery value.
+     */
+    public boolean getErrorRecovery() {
+        return errorRecovery;
+    }
+
+    /**
+     * Sets error recovery, which parses the files with the error recovering grammar.
+     *
+     * @param errorRecovery to be set.
+     */
+    public void setErrorRecovery(boolean errorRecovery) {
+        this.errorRecovery = errorRecovery;
+    }
+
+    /**
+     * Returns compact ast.
+     *
+     * @return the compact ast value.
+     */
+    public boolean getCompactAst() {
+        return compactAst;
+    }
+
+    /**
+     * Sets compact ast, which stores the trees of the parsed files in primitive arrays.
+     *
+     * @param compactAst to be set.
+     */
+    public void setCompactAst(boolean compactAst) {
+        this.compactAst = compactAst;
+    }
+
+    /**
+     * Returns collapse wrappers.
+     *
+     * @return the collapse wrappers value.
+     */
+    public boolean getCollapseWrappers() {
+        return collapseWrappers;
+    }
+
+    /**
+     * Sets collapse wrappers, which replaces the nodes of the wrapper rules with their only child.
+     * The compact trees and the AST cache keep the wrappers.
+     *
+     * @param collapseWrappers to be set.
+     */
+    public void setCollapseWrappers(boolean collapseWrappers) {
+        this.collapseWrappers = collapseWrappers;
+    }
+
+    /**
+     * Returns max file tokens.
+     *
+     * @return the max file tokens value.
+     */
+    public int getMaxFileTokens() {
+        return maxFileTokens;
+    }
+
+    /**
+     * Sets max file tokens, above which a file is only measured from its tokens.
+     *
+     * @param maxFileTokens to be set, 0 for no maximum.
+     */
+    public void setMaxFileTokens(int maxFileTokens) {
+        this.maxFileTokens = maxFileTokens;
+    }
+
+    /**
+     * Returns max file millis.
+     *
+     * @return the max file millis value.
+     */
+    public long getMaxFileMillis() {
+        return maxFileMillis;
+    }
+
+    /**
+     * Sets max file millis, after which the parse or the visit of a file is abandoned and the file is only
+     * measured from its tokens.
+     *
+     * @param maxFileMillis to be set, 0 for no maximum.
+     */
+    public void setMaxFileMillis(long maxFileMillis) {
+        this.maxFileMillis = maxFileMillis;
+    }
+
+    /**
+     * Returns ast cache directory.
+     *
+     * @return the ast cache directory value, or null when the trees are not cached.
+     */
+    public File getAstCacheDirectory() {
+        return astCacheDirectory;
+    }
+
+    /**
+     * Sets ast cache directory, where the token streams and the trees of the parsed files are cached.
+     *
+     * @param astCacheDirectory to be set, null for no cache.
+     */
+    public void setAstCacheDirectory(File astCacheDirectory) {
+        this.astCacheDirectory = astCacheDirectory;
+    }
+
+    /**
+     * Returns split files.
+     *
+     * @return the split files value.
+     */
+    public boolean getSplitFiles() {
+        return splitFiles;
+    }
+
+    /**
+     * Sets split files, which parses the top level declarations of a large file on the tasks of the common
+     * fork join pool. It is enabled by default.
+     *
+     * @param splitFiles to be set.
+     */
+    public void setSplitFiles(boolean splitFiles) {
+        this.splitFiles = splitFiles;
+    }
 }
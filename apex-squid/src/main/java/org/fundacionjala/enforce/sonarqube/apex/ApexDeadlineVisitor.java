@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import org.sonar.squidbridge.SquidAstVisitor;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
+
+/**
+ * Abandons the visit of a file once its time budget has passed, so a slow visitor can not stall the scan. It
+ * must be the first visitor, so it is notified of a node before the other visitors.
+ */
+class ApexDeadlineVisitor extends SquidAstVisitor<Grammar> {
+
+    /**
+     * Stores the number of visited nodes between two reads of the clock.
+     */
+    private static final int CLOCK_INTERVAL = 64;
+
+    /**
+     * Stores the number of visited nodes since the clock was last read.
+     */
+    private int nodes;
+
+    /**
+     * Subscribes to the rules of the grammar.
+     */
+    @Override
+    public void init() {
+        subscribeTo(ApexGrammarRuleKey.values());
+    }
+
+    /**
+     * Checks the deadline of the file, reading the clock once every {@link #CLOCK_INTERVAL} nodes.
+     *
+     * @param astNode the visited node.
+     * @throws DeadlineException when the deadline has passed.
+     */
+    @Override
+    public void visitNode(AstNode astNode) {
+        ApexVisitorContext context = (ApexVisitorContext) getContext();
+        if (++nodes >= CLOCK_INTERVAL && !context.isOverBudget()) {
+            nodes = 0;
+            if (context.isPastDeadline()) {
+                throw new DeadlineException();
+            }
+        }
+    }
+
+    /**
+     * Exception that abandons the visit of a file.
+     */
+    static final class DeadlineException extends RuntimeException {
+
+        /**
+         * Stores the serial version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Default constructor.
+         */
+        DeadlineException() {
+            super(null, null, false, false);
+        }
+    }
+}
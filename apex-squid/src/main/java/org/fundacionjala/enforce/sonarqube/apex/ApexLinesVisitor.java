@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.measures.MetricDef;
+
+/**
+ * Counts the lines of a file from the line starts of its token stream, instead of visiting every token to
+ * find the end of file.
+ */
+public class ApexLinesVisitor extends SquidAstVisitor<Grammar> {
+
+    /**
+     * Stores the metric of the lines.
+     */
+    private final MetricDef metric;
+
+    /**
+     * Default constructor.
+     *
+     * @param metric metric of the lines.
+     */
+    public ApexLinesVisitor(MetricDef metric) {
+        this.metric = metric;
+    }
+
+    /**
+     * Sets the number of lines of a parsed file.
+     *
+     * @param astNode root node of the file, null when it could not be parsed.
+     */
+    @Override
+    public void visitFile(AstNode astNode) {
+        if (astNode != null) {
+            ApexVisitorContext context = (ApexVisitorContext) getContext();
+            context.peekSourceCode().setMeasure(metric, context.getTokenStream().getLineCount());
+        }
+    }
+}
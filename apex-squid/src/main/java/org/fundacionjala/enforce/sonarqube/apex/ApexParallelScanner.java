@@ -0,0 +1,352 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import java.io.File;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sonar.sslr.api.Grammar;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceProject;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
+
+/**
+ * Scans files on several worker threads and merges the generated {@link SourceFile} into one index.
+ * Every worker owns its parser and its visitors, the files are pulled from a shared queue and the
+ * merged index keeps the order of the scanned files, so the results are the same as a serial scan.
+ */
+public class ApexParallelScanner {
+
+    /**
+     * Stores an error message when the number of workers is invalid.
+     */
+    private static final String INVALID_WORKERS = "The number of workers must be positive, but was %d.";
+
+    /**
+     * Stores an error message when the scan is interrupted.
+     */
+    private static final String INTERRUPTED = "The parallel scan has been interrupted.";
+
+    /**
+     * Stores an error message when a worker fails.
+     */
+    private static final String WORKER_FAILED = "A scanner worker has failed.";
+
+    /**
+     * Stores the time to wait for a scanned file before checking the state of the workers.
+     */
+    private static final long POLL_MILLISECONDS = 50;
+
+    /**
+     * Stores the apex configuration shared by the workers. It is a copy that does not split the files, since
+     * the workers already keep the processors busy.
+     */
+    private final ApexConfiguration config;
+
+    /**
+     * Stores the maximum number of workers.
+     */
+    private final int workers;
+
+    /**
+     * Stores a factory that creates a new set of visitors for each worker.
+     */
+    private final Supplier<Collection<SquidAstVisitor<Grammar>>> visitorsFactory;
+
+    /**
+     * Stores the index where the results of the workers are merged.
+     */
+    private final ApexSourceIndex index = new ApexSourceIndex();
+
+    /**
+     * Stores the project that contains the merged source files.
+     */
+    private final SourceProject project = new SourceProject(ApexAstScanner.PROJECT_NAME);
+
+    /**
+     * Default constructor.
+     *
+     * @param config apex configuration.
+     * @param workers maximum number of threads.
+     * @param visitorsFactory creates the visitors of each worker.
+     * @exception IllegalArgumentException when the number of workers is not positive.
+     */
+    public ApexParallelScanner(ApexConfiguration config, int workers,
+            Supplier<Collection<SquidAstVisitor<Grammar>>> visitorsFactory) {
+        if (workers < 1) {
+            throw new IllegalArgumentException(String.format(INVALID_WORKERS, workers));
+        }
+        this.config = new ApexConfiguration(config);
+        this.config.setSplitFiles(false);
+        this.workers = workers;
+        this.visitorsFactory = visitorsFactory;
+        index.index(project);
+    }
+
+    /**
+     * Returns the index with the merged results.
+     *
+     * @return the index.
+     */
+    public ApexSourceIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Scans the files using the worker threads and merges the results.
+     *
+     * @param files files to be scanned.
+     * @exception IllegalStateException when the scan is interrupted or a worker fails.
+     */
+    public void scanFiles(Collection<File> files) {
+        int poolSize = Math.max(1, Math.min(workers, files.size()));
+        Queue<File> pending = new ConcurrentLinkedQueue<>(files);
+        List<Callable<SourceProject>> tasks = Lists.newArrayList();
+        for (int i = 0; i < poolSize; i++) {
+            Collection<SquidAstVisitor<Grammar>> visitors = visitorsFactory.get();
+            tasks.add(() -> scan(visitors, pending));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            merge(files, executor.invokeAll(tasks));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(INTERRUPTED, e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Scans the files using the worker threads and hands every scanned file to a listener on the calling
+     * thread, without merging them into the index.
+     *
+     * @param files files to be scanned.
+     * @param listener receives every scanned file.
+     * @exception IllegalStateException when the scan is interrupted or a worker fails.
+     */
+    public void scanFiles(Collection<File> files, Consumer<SourceFile> listener) {
+        int poolSize = Math.max(1, Math.min(workers, files.size()));
+        Queue<File> pending = new ConcurrentLinkedQueue<>(files);
+        BlockingQueue<SourceFile> scanned = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            List<Future<?>> results = Lists.newArrayList();
+            for (int i = 0; i < poolSize; i++) {
+                Collection<SquidAstVisitor<Grammar>> visitors = visitorsFactory.get();
+                results.add(executor.submit(() -> new ApexStreamingScanner(config, scanned::add, toArray(visitors))
+                        .scanFiles(new PendingFiles(pending))));
+            }
+            boolean running = true;
+            while (running || !scanned.isEmpty()) {
+                running = !results.stream().allMatch(Future::isDone);
+                SourceFile sourceFile = scanned.poll(POLL_MILLISECONDS, TimeUnit.MILLISECONDS);
+                if (sourceFile != null) {
+                    listener.accept(sourceFile);
+                }
+            }
+            for (Future<?> result : results) {
+                getResult(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(INTERRUPTED, e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Scans the pending files with a new scanner and returns its project.
+     *
+     * @param visitors visitors of the worker.
+     * @param pending queue of the files to be scanned.
+     * @return the project of the worker.
+     */
+    private SourceProject scan(Collection<SquidAstVisitor<Grammar>> visitors, Queue<File> pending) {
+        AstScanner<Grammar> scanner = ApexAstScanner.create(config, toArray(visitors));
+        scanner.scanFiles(new PendingFiles(pending));
+        return (SourceProject) scanner.getIndex().search(ApexAstScanner.PROJECT_NAME);
+    }
+
+    /**
+     * Returns the visitors of a worker as the array expected by the scanners.
+     *
+     * @param visitors visitors of the worker.
+     * @return the array of the visitors.
+     */
+    @SuppressWarnings("unchecked")
+    private static SquidAstVisitor<Grammar>[] toArray(Collection<SquidAstVisitor<Grammar>> visitors) {
+        return visitors.toArray((SquidAstVisitor<Grammar>[]) new SquidAstVisitor<?>[visitors.size()]);
+    }
+
+    /**
+     * Merges the projects of the workers keeping the order of the scanned files.
+     *
+     * @param files scanned files.
+     * @param results projects of the workers.
+     * @throws InterruptedException when the current thread is interrupted.
+     */
+    private void merge(Collection<File> files, List<Future<SourceProject>> results) throws InterruptedException {
+        Map<String, SourceCode> sourceFiles = Maps.newHashMap();
+        for (Future<SourceProject> result : results) {
+            SourceProject workerProject = getResult(result);
+            if (workerProject.hasChildren()) {
+                workerProject.getChildren().forEach(sourceFile -> sourceFiles.put(sourceFile.getKey(), sourceFile));
+            }
+            for (ApexMetric metric : ApexMetric.values()) {
+                if (!metric.isCalculatedMetric() && metric.isThereAggregationFormula()) {
+                    project.add(metric, workerProject);
+                }
+            }
+        }
+        for (File file : files) {
+            SourceCode sourceFile = sourceFiles.remove(file.getAbsolutePath());
+            if (sourceFile != null) {
+                project.addChild(sourceFile);
+                indexChildren(sourceFile);
+            }
+        }
+    }
+
+    /**
+     * Returns the result of a worker.
+     *
+     * @param <T> type of the result.
+     * @param result result of the worker.
+     * @return the result.
+     * @throws InterruptedException when the current thread is interrupted.
+     */
+    private static <T> T getResult(Future<T> result) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(WORKER_FAILED, cause);
+        }
+    }
+
+    /**
+     * Adds the descendants of a source code to the merged index.
+     *
+     * @param sourceCode source code to be indexed.
+     */
+    private void indexChildren(SourceCode sourceCode) {
+        if (sourceCode.hasChildren()) {
+            for (SourceCode child : sourceCode.getChildren()) {
+                index.index(child);
+                indexChildren(child);
+            }
+        }
+    }
+
+    /**
+     * Collection that takes the files from a queue shared by the workers.
+     */
+    private static class PendingFiles extends AbstractCollection<File> {
+
+        /**
+         * Stores the shared queue.
+         */
+        private final Queue<File> pending;
+
+        /**
+         * Default constructor.
+         *
+         * @param pending shared queue.
+         */
+        PendingFiles(Queue<File> pending) {
+            this.pending = pending;
+        }
+
+        /**
+         * Returns an iterator that polls the shared queue.
+         *
+         * @return the iterator.
+         */
+        @Override
+        public Iterator<File> iterator() {
+            return new Iterator<File>() {
+                private File next;
+
+                @Override
+                public boolean hasNext() {
+                    if (next == null) {
+                        next = pending.poll();
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public File next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    File file = next;
+                    next = null;
+                    return file;
+                }
+            };
+        }
+
+        /**
+         * Returns the number of files still in the queue.
+         *
+         * @return the size.
+         */
+        @Override
+        public int size() {
+            return pending.size();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.sonar.squidbridge.api.Query;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceCodeIndexer;
+import org.sonar.squidbridge.api.SourceCodeSearchEngine;
+import org.sonar.squidbridge.api.SourceFile;
+
+/**
+ * Index of the scanned source code that records the descendants of every {@link SourceFile} while they are
+ * indexed, so the classes and functions of a file are found without searching the whole index.
+ */
+public class ApexSourceIndex implements SourceCodeIndexer, SourceCodeSearchEngine {
+
+    /**
+     * Stores the source code by key.
+     */
+    private final Map<String, SourceCode> index = Maps.newTreeMap();
+
+    /**
+     * Stores the descendants of each source file in the order they were indexed.
+     */
+    private final Map<SourceCode, List<SourceCode>> descendants = new IdentityHashMap<>();
+
+    /**
+     * Indexes a source code and records it as a descendant of its file.
+     *
+     * @param sourceCode source code to be indexed.
+     */
+    @Override
+    public void index(SourceCode sourceCode) {
+        sourceCode.setSourceCodeIndexer(this);
+        index.put(sourceCode.getKey(), sourceCode);
+        if (sourceCode instanceof SourceFile) {
+            descendants.putIfAbsent(sourceCode, Lists.newArrayList());
+        } else {
+            SourceFile sourceFile = sourceCode.getParent(SourceFile.class);
+            if (sourceFile != null) {
+                descendants.computeIfAbsent(sourceFile, file -> Lists.newArrayList()).add(sourceCode);
+            }
+        }
+    }
+
+    /**
+     * Removes the descendants of a source file from the index, when the file is scanned again.
+     *
+     * @param sourceFile the source file.
+     */
+    void removeDescendants(SourceCode sourceFile) {
+        List<SourceCode> result = descendants.get(sourceFile);
+        if (result != null) {
+            result.forEach(sourceCode -> index.remove(sourceCode.getKey()));
+            result.clear();
+        }
+    }
+
+    /**
+     * Returns the source code with a key.
+     *
+     * @param key the key.
+     * @return the source code or null.
+     */
+    @Override
+    public SourceCode search(String key) {
+        return index.get(key);
+    }
+
+    /**
+     * Returns the source code that matches all the queries, walking the whole index.
+     *
+     * @param queries the queries.
+     * @return the matching source code.
+     */
+    @Override
+    public Collection<SourceCode> search(Query... queries) {
+        Collection<SourceCode> result = new HashSet<>();
+        for (SourceCode sourceCode : index.values()) {
+            if (matches(sourceCode, queries)) {
+                result.add(sourceCode);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the descendants of a source file.
+     *
+     * @param sourceFile the source file.
+     * @return an unmodifiable list of descendants.
+     */
+    public List<SourceCode> getDescendants(SourceCode sourceFile) {
+        List<SourceCode> result = descendants.get(sourceFile);
+        return result == null ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Returns the descendants of a source file with a given type.
+     *
+     * @param <T> type of the descendants.
+     * @param sourceFile the source file.
+     * @param type type of the descendants.
+     * @return the descendants.
+     */
+    public <T extends SourceCode> List<T> getDescendants(SourceCode sourceFile, Class<T> type) {
+        List<T> result = Lists.newArrayList();
+        for (SourceCode sourceCode : getDescendants(sourceFile)) {
+            if (type.isInstance(sourceCode)) {
+                result.add(type.cast(sourceCode));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true when a source code matches all the queries.
+     *
+     * @param sourceCode the source code.
+     * @param queries the queries.
+     * @return true when it matches.
+     */
+    private static boolean matches(SourceCode sourceCode, Query... queries) {
+        for (Query query : queries) {
+            if (!query.match(sourceCode)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import java.io.File;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+import com.sonar.sslr.api.Grammar;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceCodeIndexer;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceProject;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
+
+/**
+ * Scans files and hands every {@link SourceFile} to a listener as soon as all the visitors have left it.
+ * The file is released from the project afterwards, so the memory used by the scan depends on the largest
+ * file instead of on the number of files.
+ */
+public class ApexStreamingScanner {
+
+    /**
+     * Stores an indexer that keeps no reference to the scanned source code.
+     */
+    private static final SourceCodeIndexer NO_INDEXER = sourceCode -> {
+    };
+
+    /**
+     * Stores the scanner that runs the visitors.
+     */
+    private final AstScanner<Grammar> scanner;
+
+    /**
+     * Stores the project where the scanner adds the current file.
+     */
+    private final SourceProject project;
+
+    /**
+     * Stores the listener of the scanned files.
+     */
+    private final Consumer<SourceFile> listener;
+
+    /**
+     * Default constructor.
+     *
+     * @param config apex configuration.
+     * @param listener receives every scanned file.
+     * @param visitors list of visitors.
+     */
+    public ApexStreamingScanner(ApexConfiguration config, Consumer<SourceFile> listener,
+            SquidAstVisitor<Grammar>... visitors) {
+        this.scanner = ApexAstScanner.create(config, visitors);
+        this.project = (SourceProject) scanner.getIndex().search(ApexAstScanner.PROJECT_NAME);
+        this.project.setSourceCodeIndexer(NO_INDEXER);
+        this.listener = listener;
+    }
+
+    /**
+     * Scans the files, notifying the listener after each one.
+     *
+     * @param files files to be scanned.
+     */
+    public void scanFiles(Collection<File> files) {
+        scanner.scanFiles(new StreamedFiles(files));
+        flush();
+    }
+
+    /**
+     * Decorates the files scanned since the last call, hands them to the listener and releases them.
+     */
+    private void flush() {
+        if (project.hasChildren()) {
+            for (SourceCode sourceFile : project.getChildren()) {
+                decorate(sourceFile);
+                listener.accept((SourceFile) sourceFile);
+            }
+            project.getChildren().clear();
+        }
+    }
+
+    /**
+     * Aggregates the metrics of the children in their parents, as the scanner does with the whole project
+     * once all the files have been scanned.
+     *
+     * @param sourceCode source code to be decorated.
+     */
+    private static void decorate(SourceCode sourceCode) {
+        if (!sourceCode.hasChildren()) {
+            return;
+        }
+        for (SourceCode child : sourceCode.getChildren()) {
+            decorate(child);
+        }
+        for (ApexMetric metric : ApexMetric.values()) {
+            boolean aggregate = metric.aggregateIfThereIsAlreadyAValue()
+                    || Double.doubleToRawLongBits(sourceCode.getDouble(metric)) == 0L;
+            if (aggregate && !metric.isCalculatedMetric() && metric.isThereAggregationFormula()) {
+                for (SourceCode child : sourceCode.getChildren()) {
+                    sourceCode.add(metric, child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collection whose iterator flushes the previous file before moving to the next one.
+     */
+    private class StreamedFiles extends AbstractCollection<File> {
+
+        /**
+         * Stores the files to be scanned.
+         */
+        private final Collection<File> files;
+
+        /**
+         * Default constructor.
+         *
+         * @param files files to be scanned.
+         */
+        StreamedFiles(Collection<File> files) {
+            this.files = files;
+        }
+
+        /**
+         * Returns an iterator that flushes the scanned files when it advances.
+         *
+         * @return the iterator.
+         */
+        @Override
+        public Iterator<File> iterator() {
+            Iterator<File> iterator = files.iterator();
+            return new Iterator<File>() {
+                @Override
+                public boolean hasNext() {
+                    flush();
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public File next() {
+                    flush();
+                    return iterator.next();
+                }
+            };
+        }
+
+        /**
+         * Returns the number of files.
+         *
+         * @return the size.
+         */
+        @Override
+        public int size() {
+            return files.size();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import java.util.concurrent.TimeUnit;
+
+import com.sonar.sslr.api.Grammar;
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
+import org.sonar.squidbridge.api.SourceProject;
+
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexTokenStream;
+import org.fundacionjala.enforce.sonarqube.apex.parser.ApexCompiledParser;
+
+/**
+ * Context of the visitors of an Apex scanner, which gives them the token stream of the visited file and its
+ * line starts without reading the file again.
+ */
+public class ApexVisitorContext extends SquidAstVisitorContextImpl<Grammar> {
+
+    /**
+     * Stores the parser of the scanner.
+     */
+    private final ApexCompiledParser parser;
+
+    /**
+     * Stores whether the visited file has a deadline.
+     */
+    private boolean hasDeadline;
+
+    /**
+     * Stores the value of {@link System#nanoTime()} after which the visit of the file is abandoned.
+     */
+    private long deadline;
+
+    /**
+     * Default constructor.
+     *
+     * @param project project of the scanner.
+     * @param parser parser of the scanner.
+     */
+    public ApexVisitorContext(SourceProject project, ApexCompiledParser parser) {
+        super(project);
+        this.parser = parser;
+    }
+
+    /**
+     * Returns the token stream of the visited file.
+     *
+     * @return the stream, or null when the file could not be lexed.
+     */
+    public ApexTokenStream getTokenStream() {
+        return parser.getTokenStream();
+    }
+
+    /**
+     * Returns whether the visited file exceeded the budget of the parser, so its tree only has its tokens.
+     *
+     * @return true when the file exceeded the budget.
+     */
+    public boolean isOverBudget() {
+        return parser.isOverBudget();
+    }
+
+    /**
+     * Returns whether the visited file exceeded the budget of the parser because its parse or its visit
+     * outlasted it.
+     *
+     * @return true when the parse of the file timed out.
+     */
+    public boolean isTimedOut() {
+        return parser.isTimedOut();
+    }
+
+    /**
+     * Starts the time budget of a file, which covers its parse and its visit.
+     *
+     * @param maxMillis maximum milliseconds, 0 for no maximum.
+     */
+    public void startBudget(long maxMillis) {
+        hasDeadline = maxMillis > 0;
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+    }
+
+    /**
+     * Returns whether the time budget of the visited file has passed.
+     *
+     * @return true when the deadline has passed.
+     */
+    public boolean isPastDeadline() {
+        return hasDeadline && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * Pops the source code of the visited file and of its classes and functions.
+     */
+    @Override
+    protected void popTillSourceProject() {
+        super.popTillSourceProject();
+    }
+}
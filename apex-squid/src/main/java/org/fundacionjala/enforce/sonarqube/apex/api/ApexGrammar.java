@@ -125,6 +125,8 @@ import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRu
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_DECLARATION;
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CONSTRUCTOR_DECLARATION;
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CREATING_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.ERROR_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.ERROR_STATEMENT;
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.EXPRESSION;
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.FIELD_DECLARATION;
 import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.LITERAL_EXPRESSION;
@@ -166,6 +168,38 @@ public class ApexGrammar {
     private ApexGrammar() {
     }
 
+    /**
+     * Returns the grammar shared by all the parsers. It is built once, on first use, and it must not be
+     * modified, so it can be used by several parsers and threads at the same time.
+     *
+     * @return the shared grammar.
+     */
+    public static Grammar getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns the outline grammar shared by all the parsers. It is built once, on first use, and it must not
+     * be modified.
+     *
+     * @return the shared outline grammar.
+     * @see #createOutline()
+     */
+    public static Grammar getOutlineInstance() {
+        return OutlineHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the error recovering grammar shared by all the parsers. It is built once, on first use, and it
+     * must not be modified.
+     *
+     * @return the shared error recovering grammar.
+     * @see #createRecovering()
+     */
+    public static Grammar getRecoveringInstance() {
+        return RecoveringHolder.INSTANCE;
+    }
+
     /**
      * It is the main method of grammar. Here all other grammars are
      * constructed.
@@ -173,16 +207,53 @@ public class ApexGrammar {
      * @return the grammar
      */
     public static Grammar create() {
+        return create(false, false);
+    }
+
+    /**
+     * Creates the error recovering grammar, which parses the files as the grammar does, but matches a field
+     * declaration or a statement that can not be parsed as an error declaration or an error statement. The
+     * error node skips the tokens up to the next semicolon or block of the same depth, or up to the brace that
+     * closes the enclosing block.
+     *
+     * @return the error recovering grammar.
+     */
+    public static Grammar createRecovering() {
+        return create(false, true);
+    }
+
+    /**
+     * Creates the outline grammar, which parses the declarations of classes, methods, constructors and fields
+     * as the grammar does, but skips each block of statements by matching its braces.
+     *
+     * @return the outline grammar.
+     */
+    public static Grammar createOutline() {
+        return create(true, false);
+    }
+
+    /**
+     * Creates the grammar, the outline grammar or the error recovering grammar.
+     *
+     * @param outline whether the blocks of statements are skipped.
+     * @param recovering whether the declarations and statements that can not be parsed are skipped.
+     * @return the grammar.
+     */
+    private static Grammar create(boolean outline, boolean recovering) {
         LexerfulGrammarBuilder grammarBuilder = LexerfulGrammarBuilder.create();
         expression(grammarBuilder);
         expressionFinal(grammarBuilder);
-        statement(grammarBuilder);
+        statement(grammarBuilder, recovering);
         whileStatement(grammarBuilder);
         tryStatement(grammarBuilder);
         forStatement(grammarBuilder);
         returnStatement(grammarBuilder);
         dmlStatement(grammarBuilder);
-        statementBlock(grammarBuilder);
+        if (outline) {
+            outlineStatementBlock(grammarBuilder);
+        } else {
+            statementBlock(grammarBuilder);
+        }
         statementIf(grammarBuilder);
         statamentElse(grammarBuilder);
         variableDeclaration(grammarBuilder);
@@ -218,9 +289,13 @@ public class ApexGrammar {
         classDeclaration(grammarBuilder);
         keyword(grammarBuilder);
         modifier(grammarBuilder);
-        fieldDeclaration(grammarBuilder);
+        fieldDeclaration(grammarBuilder, recovering);
         modifierKeyWord(grammarBuilder);
         typeDeclaration(grammarBuilder);
+        if (recovering) {
+            errorDeclaration(grammarBuilder);
+            errorStatement(grammarBuilder);
+        }
 
         grammarBuilder.rule(APEX_GRAMMAR).is(TYPE_DECLARATION, EOF);
         grammarBuilder.setRootRule(APEX_GRAMMAR);
@@ -381,13 +456,53 @@ public class ApexGrammar {
      * The grammar of the empty body of a class is built.
      *
      * @param grammarBuilder ApexGrammarBuilder parameter.
+     * @param recovering whether a declaration that can not be parsed is an error declaration.
      */
-    private static void fieldDeclaration(LexerfulGrammarBuilder grammarBuilder) {
+    private static void fieldDeclaration(LexerfulGrammarBuilder grammarBuilder, boolean recovering) {
+        Object declaration = grammarBuilder.firstOf(
+                METHOD_DECLARATION,
+                CONSTRUCTOR_DECLARATION,
+                VARIABLE_DECLARATION);
         grammarBuilder.rule(FIELD_DECLARATION).is(
-                grammarBuilder.firstOf(
-                        METHOD_DECLARATION,
-                        CONSTRUCTOR_DECLARATION,
-                        VARIABLE_DECLARATION)
+                recovering ? grammarBuilder.firstOf(declaration, ERROR_DECLARATION) : declaration
+        );
+    }
+
+    /**
+     * It is responsible for setting the rule of a field declaration that can not be parsed.
+     *
+     * @param grammarBuilder ApexGrammarBuilder parameter.
+     */
+    private static void errorDeclaration(LexerfulGrammarBuilder grammarBuilder) {
+        grammarBuilder.rule(ERROR_DECLARATION).is(skippedTokens(grammarBuilder));
+    }
+
+    /**
+     * It is responsible for setting the rule of a statement that can not be parsed.
+     *
+     * @param grammarBuilder ApexGrammarBuilder parameter.
+     */
+    private static void errorStatement(LexerfulGrammarBuilder grammarBuilder) {
+        grammarBuilder.rule(ERROR_STATEMENT).is(skippedTokens(grammarBuilder));
+    }
+
+    /**
+     * Returns the expression of the tokens skipped by an error node: the tokens up to the next semicolon or
+     * block, both included, or else the tokens up to the brace that closes the enclosing block. It consumes
+     * one token at least, and never the closing brace nor the end of file.
+     *
+     * @param grammarBuilder ApexGrammarBuilder parameter.
+     * @return the expression.
+     */
+    private static Object skippedTokens(LexerfulGrammarBuilder grammarBuilder) {
+        Object skippedToken = grammarBuilder.anyTokenButNot(grammarBuilder.firstOf(SEMICOLON, LBRACE, RBRACE, EOF));
+        return grammarBuilder.firstOf(
+                grammarBuilder.sequence(
+                        grammarBuilder.zeroOrMore(skippedToken),
+                        grammarBuilder.firstOf(
+                                SEMICOLON,
+                                grammarBuilder.bridge(LBRACE, RBRACE))),
+                grammarBuilder.oneOrMore(skippedToken)
         );
     }
 
@@ -752,6 +867,16 @@ public class ApexGrammar {
                 RBRACE);
     }
 
+    /**
+     * Skips a block of statements, from its opening brace to the matching closing brace. The tokens of the
+     * block are kept as children of the block.
+     *
+     * @param grammarBuilder ApexGrammarBuilder parameter.
+     */
+    private static void outlineStatementBlock(LexerfulGrammarBuilder grammarBuilder) {
+        grammarBuilder.rule(STATEMENT_BLOCK).is(grammarBuilder.bridge(LBRACE, RBRACE));
+    }
+
     /**
      * It is responsible for creating the rules for a while.
      *
@@ -844,16 +969,18 @@ public class ApexGrammar {
      * It is responsible for setting the rules for the all statements.
      *
      * @param grammarBuilder ApexGrammarBuilder parameter.
+     * @param recovering whether a statement that can not be parsed is an error statement.
      */
-    private static void statement(LexerfulGrammarBuilder grammarBuilder) {
+    private static void statement(LexerfulGrammarBuilder grammarBuilder, boolean recovering) {
+        Object statement = grammarBuilder.firstOf(
+                TERMINAL_STATEMENT,
+                STATEMENT_IF,
+                WHILE_STATEMENT,
+                FOR_STATEMENT,
+                TRY_STATEMENT,
+                RETURN_STATEMENT);
         grammarBuilder.rule(STATEMENT).is(
-                grammarBuilder.firstOf(
-                        TERMINAL_STATEMENT,
-                        STATEMENT_IF,
-                        WHILE_STATEMENT,
-                        FOR_STATEMENT,
-                        TRY_STATEMENT,
-                        RETURN_STATEMENT)
+                recovering ? grammarBuilder.firstOf(statement, ERROR_STATEMENT) : statement
         );
         grammarBuilder.rule(TERMINAL_STATEMENT).is(
                 grammarBuilder.firstOf(
@@ -919,4 +1046,37 @@ public class ApexGrammar {
     private static void type(LexerfulGrammarBuilder grammarBuilder) {
         grammarBuilder.rule(TYPE).is(TYPE_SPECIFIER);
     }
+
+    /**
+     * Lazily builds the shared grammar, the class loader guarantees it is built once and safely published.
+     */
+    private static class Holder {
+
+        /**
+         * Stores the shared grammar.
+         */
+        private static final Grammar INSTANCE = create();
+    }
+
+    /**
+     * Lazily builds the shared outline grammar.
+     */
+    private static class OutlineHolder {
+
+        /**
+         * Stores the shared outline grammar.
+         */
+        private static final Grammar INSTANCE = createOutline();
+    }
+
+    /**
+     * Lazily builds the shared error recovering grammar.
+     */
+    private static class RecoveringHolder {
+
+        /**
+         * Stores the shared error recovering grammar.
+         */
+        private static final Grammar INSTANCE = createRecovering();
+    }
 }
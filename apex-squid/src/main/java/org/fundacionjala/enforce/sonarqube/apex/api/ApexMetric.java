@@ -40,7 +40,10 @@ public enum ApexMetric implements MetricDef {
     METHODS,
     CLASSES,
     COMPLEXITY,
-    COMMENT_LINES;
+    COMMENT_LINES,
+    PARSE_ERRORS,
+    SKIPPED_FILES,
+    TIMED_OUT_FILES;
 
     /**
      * Returns the name of metric.
@@ -82,6 +85,16 @@ public enum ApexMetric implements MetricDef {
         return TRUE;
     }
 
+    /**
+     * Indicates if the metric is computed from the statements of the method bodies, which are not parsed by an
+     * outline scan.
+     *
+     * @return true for the statements, the complexity and the parse errors.
+     */
+    public boolean needsBodies() {
+        return this == STATEMENTS || this == COMPLEXITY || this == PARSE_ERRORS;
+    }
+
     /**
      * Returns a calculated metric formula.
      *
@@ -41,6 +41,8 @@ public enum ApexGrammarRuleKey implements GrammarRuleKey {
     CREATING_EXPRESSION,
     DML_STATEMENT,
     EQUAL,
+    ERROR_DECLARATION,
+    ERROR_STATEMENT,
     FIELD_DECLARATION,
     FOR_STATEMENT,
     CLASS_DECLARATION,
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reader of the integers written by an {@link ApexBinaryOutput}, from a buffer of bytes that can be mapped
+ * from a file.
+ */
+public final class ApexBinaryInput {
+
+    /**
+     * Stores the bits of a byte that hold a part of an integer.
+     */
+    private static final int PAYLOAD = 0x7F;
+
+    /**
+     * Stores the bit of a byte that is set when more bytes follow.
+     */
+    private static final int MORE = 0x80;
+
+    /**
+     * Stores the number of bits of an integer held by a byte.
+     */
+    private static final int SHIFT = 7;
+
+    /**
+     * Stores the maximum shift of the last byte of an integer.
+     */
+    private static final int MAX_SHIFT = 28;
+
+    /**
+     * Stores the buffer of the bytes.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Default constructor.
+     *
+     * @param buffer the buffer, read from its position.
+     */
+    public ApexBinaryInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads an integer that is not negative.
+     *
+     * @return the integer.
+     * @exception IllegalArgumentException when the bytes are not an integer that is not negative.
+     * @exception java.nio.BufferUnderflowException when the buffer ends before the integer.
+     */
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift <= MAX_SHIFT; shift += SHIFT) {
+            int part = buffer.get();
+            value |= (part & PAYLOAD) << shift;
+            if ((part & MORE) == 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Negative value: " + value);
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed integer at " + buffer.position());
+    }
+
+    /**
+     * Reads an integer that is not negative and is lower than a bound.
+     *
+     * @param bound the bound.
+     * @return the integer.
+     * @exception IllegalArgumentException when the integer is not lower than the bound.
+     */
+    public int readVarInt(int bound) {
+        int value = readVarInt();
+        if (value >= bound) {
+            throw new IllegalArgumentException(String.format("Value %d out of bound %d", value, bound));
+        }
+        return value;
+    }
+
+    /**
+     * Reads a character.
+     *
+     * @return the character.
+     * @exception IllegalArgumentException when the integer read is not a character.
+     */
+    public char readChar() {
+        return (char) readVarInt(Character.MAX_VALUE + 1);
+    }
+
+    /**
+     * Returns whether every byte has been read.
+     *
+     * @return true at the end of the buffer.
+     */
+    public boolean isAtEnd() {
+        return !buffer.hasRemaining();
+    }
+}
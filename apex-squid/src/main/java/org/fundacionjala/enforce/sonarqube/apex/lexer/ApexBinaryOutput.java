@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable buffer of bytes where integers are written as variable length quantities: seven bits per byte,
+ * lowest bits first, with the high bit set on every byte but the last. Small integers, such as the types of
+ * the tokens and the deltas between their offsets, take one byte.
+ */
+public final class ApexBinaryOutput {
+
+    /**
+     * Stores the initial capacity of the buffer.
+     */
+    private static final int INITIAL_CAPACITY = 4096;
+
+    /**
+     * Stores the bits of a byte that hold a part of an integer.
+     */
+    private static final int PAYLOAD = 0x7F;
+
+    /**
+     * Stores the bit of a byte that is set when more bytes follow.
+     */
+    private static final int MORE = 0x80;
+
+    /**
+     * Stores the number of bits of an integer held by a byte.
+     */
+    private static final int SHIFT = 7;
+
+    /**
+     * Stores the bytes written.
+     */
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Stores the number of bytes written.
+     */
+    private int size;
+
+    /**
+     * Writes an integer that is not negative.
+     *
+     * @param value the integer.
+     * @exception IllegalArgumentException when the integer is negative.
+     */
+    public void writeVarInt(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        ensureCapacity(size + Integer.BYTES + 1);
+        int remaining = value;
+        while (remaining > PAYLOAD) {
+            bytes[size++] = (byte) (remaining & PAYLOAD | MORE);
+            remaining >>>= SHIFT;
+        }
+        bytes[size++] = (byte) remaining;
+    }
+
+    /**
+     * Writes a character as an integer, so an ASCII character takes one byte.
+     *
+     * @param value the character.
+     */
+    public void writeChar(char value) {
+        writeVarInt(value);
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return the number of bytes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes the bytes to a stream.
+     *
+     * @param output the stream.
+     * @throws IOException when the bytes can not be written.
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        output.write(bytes, 0, size);
+    }
+
+    /**
+     * Grows the buffer to a capacity.
+     *
+     * @param capacity the capacity.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+}
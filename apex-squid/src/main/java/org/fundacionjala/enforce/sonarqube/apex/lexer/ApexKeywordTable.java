@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword;
+
+/**
+ * Open addressing hash table of the {@link ApexKeyword} values that classifies a word directly on the
+ * character buffer of the lexer, without creating a string for it.
+ */
+final class ApexKeywordTable {
+
+    /**
+     * Stores the multiplier of the hash function.
+     */
+    private static final int MULTIPLIER = 31;
+
+    /**
+     * Stores the ratio between the size of the table and the number of keywords.
+     */
+    private static final int LOAD_RATIO = 4;
+
+    /**
+     * Stores the keywords by slot, null when the slot is empty.
+     */
+    private static final ApexKeyword[] SLOTS;
+
+    /**
+     * Stores the mask of the slot indexes.
+     */
+    private static final int MASK;
+
+    static {
+        int size = Integer.highestOneBit(ApexKeyword.values().length * LOAD_RATIO - 1) << 1;
+        SLOTS = new ApexKeyword[size];
+        MASK = size - 1;
+        for (ApexKeyword keyword : ApexKeyword.values()) {
+            String value = keyword.getValue();
+            int slot = hash(value.toCharArray(), 0, value.length()) & MASK;
+            while (SLOTS[slot] != null) {
+                slot = (slot + 1) & MASK;
+            }
+            SLOTS[slot] = keyword;
+        }
+    }
+
+    /**
+     * Default constructor.
+     */
+    private ApexKeywordTable() {
+    }
+
+    /**
+     * Returns the keyword between two offsets of a buffer, comparing the characters case sensitively.
+     *
+     * @param buffer the buffer.
+     * @param start the start offset.
+     * @param end the end offset.
+     * @return the keyword, or null when the word is not a keyword.
+     */
+    static ApexKeyword find(char[] buffer, int start, int end) {
+        int slot = hash(buffer, start, end) & MASK;
+        ApexKeyword keyword = SLOTS[slot];
+        while (keyword != null) {
+            if (matches(keyword.getValue(), buffer, start, end)) {
+                return keyword;
+            }
+            slot = (slot + 1) & MASK;
+            keyword = SLOTS[slot];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the hash of the characters between two offsets of a buffer.
+     *
+     * @param buffer the buffer.
+     * @param start the start offset.
+     * @param end the end offset.
+     * @return the hash.
+     */
+    private static int hash(char[] buffer, int start, int end) {
+        int hash = 0;
+        for (int index = start; index < end; index++) {
+            hash = MULTIPLIER * hash + buffer[index];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns true when the characters between two offsets of a buffer are a value.
+     *
+     * @param value the value.
+     * @param buffer the buffer.
+     * @param start the start offset.
+     * @param end the end offset.
+     * @return true when the characters are the value.
+     */
+    private static boolean matches(String value, char[] buffer, int start, int end) {
+        if (value.length() != end - start) {
+            return false;
+        }
+        for (int index = start; index < end; index++) {
+            if (buffer[index] != value.charAt(index - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
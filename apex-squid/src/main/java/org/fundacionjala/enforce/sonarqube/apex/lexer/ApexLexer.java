@@ -25,6 +25,7 @@ package org.fundacionjala.enforce.sonarqube.apex.lexer;
 
 import com.sonar.sslr.impl.Lexer;
 import com.sonar.sslr.impl.channel.BlackHoleChannel;
+import com.sonar.sslr.impl.channel.CommentRegexpChannel;
 import com.sonar.sslr.impl.channel.IdentifierAndKeywordChannel;
 import com.sonar.sslr.impl.channel.PunctuatorChannel;
 
@@ -40,6 +41,11 @@ import static com.sonar.sslr.impl.channel.RegexpChannelBuilder.regexp;
  */
 public class ApexLexer {
 
+    /**
+     * Stores a pattern to identify a line or block comment.
+     */
+    private static final String COMMENT = "(?://[^\\n\\r]*+|/\\*[\\s\\S]*?\\*/)";
+
     /**
      * Stores a pattern to identify a keyword.
      */
@@ -76,6 +82,7 @@ public class ApexLexer {
         return Lexer.builder()
                 .withCharset(config.getCharset())
                 .withFailIfNoChannelToConsumeOneCharacter(Boolean.TRUE)
+                .withChannel(new CommentRegexpChannel(COMMENT))
                 .withChannel(regexp(ApexTokenType.NUMERIC, NUMERIC_PATTERN))
                 .withChannel(regexp(ApexTokenType.STRING, STRING_PATTERN))
                 .withChannel(new IdentifierAndKeywordChannel(KEYWORD,
@@ -0,0 +1,544 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.TokenType;
+import com.sonar.sslr.impl.LexerException;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexTokenType;
+
+/**
+ * Hand-written lexer for Apex that dispatches on the current character and scans every token and comment in
+ * one linear pass over the source. It emits the same tokens as {@link ApexLexer}. Files are read through an
+ * {@link ApexSourceReader}, so an instance is not thread safe.
+ */
+public class ApexSinglePassLexer {
+
+    /**
+     * Stores the URI of the tokens lexed from a string.
+     */
+    private static final String UNIT_TEST_URI = "tests://unittest";
+
+    /**
+     * Stores an error message when a file can not be read.
+     */
+    private static final String FILE_ERROR = "Unable to lex file: %s";
+
+    /**
+     * Stores an error message when the source can not be lexed.
+     */
+    private static final String LEXER_ERROR = "Unable to lex source code at line : %d and column : %d in file : %s";
+
+    /**
+     * Stores an error message when a source code string can not be lexed.
+     */
+    private static final String STRING_ERROR = "Unable to lex string source code \"%s\"";
+
+    /**
+     * Stores an error message when an edit is out of the source.
+     */
+    private static final String EDIT_ERROR = "Edit at offset %d removing %d characters is out of a source of %d";
+
+    /**
+     * Stores an error message when a character does not start any token.
+     */
+    private static final String CHARACTER_ERROR = "None of the channel has been able to handle character '%s' "
+            + "(decimal value %d) at line %d, column %d";
+
+    /**
+     * Stores the number of ASCII characters.
+     */
+    private static final int ASCII = 128;
+
+    /**
+     * Stores the maximum number of underscores before a letter in an identifier.
+     */
+    private static final int MAX_UNDERSCORES = 2;
+
+    /**
+     * Stores the punctuators by their first character, the longest first.
+     */
+    private static final ApexPunctuator[][] PUNCTUATORS = new ApexPunctuator[ASCII][];
+
+    static {
+        for (ApexPunctuator punctuator : ApexPunctuator.values()) {
+            char first = punctuator.getValue().charAt(0);
+            ApexPunctuator[] punctuators = PUNCTUATORS[first];
+            punctuators = punctuators == null
+                    ? new ApexPunctuator[1] : Arrays.copyOf(punctuators, punctuators.length + 1);
+            punctuators[punctuators.length - 1] = punctuator;
+            Arrays.sort(punctuators, Comparator.comparingInt(value -> -value.getValue().length()));
+            PUNCTUATORS[first] = punctuators;
+        }
+    }
+
+    /**
+     * Stores the reader of the files, whose buffers are reused for every file.
+     */
+    private final ApexSourceReader reader;
+
+    /**
+     * Stores the source being lexed.
+     */
+    private char[] buffer;
+
+    /**
+     * Stores the length of the source.
+     */
+    private int length;
+
+    /**
+     * Stores the URI of the source.
+     */
+    private URI uri;
+
+    /**
+     * Stores the offset of the current character.
+     */
+    private int position;
+
+    /**
+     * Stores the line of the current character, starting at 1.
+     */
+    private int line;
+
+    /**
+     * Stores the column of the current character, starting at 0.
+     */
+    private int column;
+
+    /**
+     * Stores the stream of the lexed tokens.
+     */
+    private ApexTokenStream stream;
+
+    /**
+     * Default constructor.
+     *
+     * @param config apex configuration.
+     */
+    public ApexSinglePassLexer(ApexConfiguration config) {
+        this.reader = new ApexSourceReader(config.getCharset());
+    }
+
+    /**
+     * Resets the lexer for a new use, keeping its read buffers unless they grew for a large file.
+     */
+    public void reset() {
+        buffer = null;
+        stream = null;
+        uri = null;
+        reader.reset();
+    }
+
+    /**
+     * Returns the tokens of a file.
+     *
+     * @param file the file.
+     * @return an unmodifiable list of tokens ending with the end of file token.
+     * @exception IllegalArgumentException when the file is not a file.
+     * @exception LexerException when the file can not be read or lexed.
+     */
+    public List<Token> lex(File file) {
+        return Collections.unmodifiableList(lexStream(file).toTokens());
+    }
+
+    /**
+     * Returns the tokens of a source code.
+     *
+     * @param source the source code.
+     * @return an unmodifiable list of tokens ending with the end of file token.
+     * @exception LexerException when the source can not be lexed.
+     */
+    public List<Token> lex(String source) {
+        return Collections.unmodifiableList(lexStream(source).toTokens());
+    }
+
+    /**
+     * Returns the compact stream of the tokens of a file.
+     *
+     * @param file the file.
+     * @return the stream, ending with the end of file token.
+     * @exception IllegalArgumentException when the file is not a file.
+     * @exception LexerException when the file can not be read or lexed.
+     */
+    public ApexTokenStream lexStream(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException(String.format("file \"%s\" must be a file", file.getAbsolutePath()));
+        }
+        CharBuffer source;
+        try {
+            source = reader.read(file);
+        } catch (IOException e) {
+            throw new LexerException(String.format(FILE_ERROR, file.getAbsolutePath()), e);
+        }
+        return lex(Arrays.copyOf(source.array(), source.limit()), file.toURI());
+    }
+
+    /**
+     * Returns the compact stream of the tokens of a source code.
+     *
+     * @param source the source code.
+     * @return the stream, ending with the end of file token.
+     * @exception LexerException when the source can not be lexed.
+     */
+    public ApexTokenStream lexStream(String source) {
+        try {
+            return lex(source.toCharArray(), new URI(UNIT_TEST_URI));
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        } catch (LexerException e) {
+            throw new LexerException(String.format(STRING_ERROR, source), e);
+        }
+    }
+
+    /**
+     * Returns the stream of the tokens of a source.
+     *
+     * @param source characters of the source, owned by the returned stream.
+     * @param sourceUri URI of the source.
+     * @return the stream, ending with the end of file token.
+     * @exception LexerException when the source can not be lexed.
+     */
+    private ApexTokenStream lex(char[] source, URI sourceUri) {
+        buffer = source;
+        length = source.length;
+        uri = sourceUri;
+        position = 0;
+        line = 1;
+        column = 0;
+        stream = new ApexTokenStream(source, sourceUri);
+        scan(null, 0, 0);
+        ApexTokenStream result = stream;
+        stream = null;
+        buffer = null;
+        return result;
+    }
+
+    /**
+     * Returns the stream of the tokens of a source after an edit, lexing again only the tokens around the
+     * edit. The lexing starts after the last token that the edit can not change and stops at the first token
+     * after the edit that starts where a token of the previous stream started, copying the following tokens.
+     *
+     * @param previous the stream of the source before the edit.
+     * @param offset offset of the edit in the source before the edit.
+     * @param removed number of characters removed at the offset.
+     * @param inserted characters inserted at the offset.
+     * @return the change of the stream.
+     * @exception IllegalArgumentException when the edit is out of the source.
+     * @exception LexerException when the edited source can not be lexed.
+     */
+    public ApexTokenStreamChange relex(ApexTokenStream previous, int offset, int removed, String inserted) {
+        char[] old = previous.getBuffer();
+        if (offset < 0 || removed < 0 || offset + removed > old.length) {
+            throw new IllegalArgumentException(String.format(EDIT_ERROR, offset, removed, old.length));
+        }
+        char[] source = new char[old.length - removed + inserted.length()];
+        System.arraycopy(old, 0, source, 0, offset);
+        inserted.getChars(0, inserted.length(), source, offset);
+        System.arraycopy(old, offset + removed, source, offset + inserted.length(), old.length - offset - removed);
+
+        int start = previous.findRestart(offset);
+        buffer = source;
+        length = source.length;
+        uri = previous.getURI();
+        position = start == 0 ? 0 : previous.getOffset(start - 1) + previous.getLength(start - 1);
+        line = previous.getLineAt(position);
+        column = previous.getColumnAt(position);
+        stream = new ApexTokenStream(source, uri);
+        stream.copyPrefix(previous, start, position);
+        int shift = inserted.length() - removed;
+        int synced = scan(previous, offset + inserted.length(), shift);
+        ApexTokenStream result = stream;
+        stream = null;
+        buffer = null;
+        return synced < 0
+                ? new ApexTokenStreamChange(result, start, previous.size(), result.size())
+                : new ApexTokenStreamChange(result, start, synced, synced + result.size() - previous.size());
+    }
+
+    /**
+     * Lexes the source from the current position. When a previous stream is given, the lexing stops at the
+     * first token after an offset that starts where a token of the previous stream started, and the tokens
+     * of the previous stream from this one are copied.
+     *
+     * @param previous the previous stream, or null.
+     * @param syncOffset the offset from which the tokens can be copied.
+     * @param shift the difference between the offsets of the source and the offsets of the previous stream.
+     * @return the index in the previous stream of the first copied token, or -1 when no token was copied.
+     * @exception LexerException when the source can not be lexed.
+     */
+    private int scan(ApexTokenStream previous, int syncOffset, int shift) {
+        while (position < length) {
+            if (previous != null && position >= syncOffset) {
+                int synced = previous.find(position - shift);
+                if (synced >= 0) {
+                    stream.copySuffix(previous, synced, shift, line - previous.getLine(synced),
+                            column - previous.getColumn(synced));
+                    return synced;
+                }
+            }
+            char character = buffer[position];
+            switch (character) {
+                case ' ':
+                case '\t':
+                case '\r':
+                case '\n':
+                    skipWhitespaces();
+                    break;
+                case '0':
+                    addToken(ApexTokenType.NUMERIC, position + 1);
+                    break;
+                case '1':
+                case '2':
+                case '3':
+                case '4':
+                case '5':
+                case '6':
+                case '7':
+                case '8':
+                case '9':
+                    addToken(ApexTokenType.NUMERIC, scanDigits(position + 1));
+                    break;
+                case '\'':
+                    scanString();
+                    break;
+                case '/':
+                    scanSlash();
+                    break;
+                default:
+                    int end = scanIdentifier(position);
+                    if (end > position) {
+                        addWord(end);
+                    } else {
+                        scanPunctuator();
+                    }
+                    break;
+            }
+        }
+        stream.add(GenericTokenType.EOF, length, 0, line, column);
+        return -1;
+    }
+
+    /**
+     * Skips the whitespaces at the current position, updating the line and the column.
+     */
+    private void skipWhitespaces() {
+        int end = position;
+        while (end < length && (buffer[end] == ' ' || buffer[end] == '\t' || buffer[end] == '\r'
+                || buffer[end] == '\n')) {
+            end++;
+        }
+        advance(end);
+    }
+
+    /**
+     * Returns the end of the digits starting at an offset.
+     *
+     * @param start the offset.
+     * @return the end offset.
+     */
+    private int scanDigits(int start) {
+        int end = start;
+        while (end < length && buffer[end] >= '0' && buffer[end] <= '9') {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the end of the identifier starting at an offset: groups of at most two underscores followed by
+     * a letter and any letters or digits.
+     *
+     * @param start the offset.
+     * @return the end offset, equal to the start when there is no identifier.
+     */
+    private int scanIdentifier(int start) {
+        int end = start;
+        while (true) {
+            int underscores = 0;
+            while (underscores < MAX_UNDERSCORES && end + underscores < length && buffer[end + underscores] == '_') {
+                underscores++;
+            }
+            if (end + underscores >= length || !isLetter(buffer[end + underscores])) {
+                return end;
+            }
+            end += underscores + 1;
+            while (end < length && (isLetter(buffer[end]) || buffer[end] >= '0' && buffer[end] <= '9')) {
+                end++;
+            }
+        }
+    }
+
+    /**
+     * Scans a string literal, where a backslash escapes the next character.
+     */
+    private void scanString() {
+        int end = position + 1;
+        while (end < length && buffer[end] != '\'') {
+            end += buffer[end] == '\\' ? 2 : 1;
+        }
+        if (end >= length) {
+            scanPunctuator();
+            return;
+        }
+        stream.add(ApexTokenType.STRING, position, end + 1 - position, line, column);
+        advance(end + 1);
+    }
+
+    /**
+     * Scans a line comment, a block comment or a punctuator starting with a slash. A block comment without
+     * end is not a comment.
+     */
+    private void scanSlash() {
+        char next = position + 1 < length ? buffer[position + 1] : 0;
+        int end = -1;
+        if (next == '/') {
+            end = position + 2;
+            while (end < length && buffer[end] != '\n' && buffer[end] != '\r') {
+                end++;
+            }
+        } else if (next == '*') {
+            for (int index = position + 2; index + 1 < length; index++) {
+                if (buffer[index] == '*' && buffer[index + 1] == '/') {
+                    end = index + 2;
+                    break;
+                }
+            }
+        }
+        if (end < 0) {
+            scanPunctuator();
+        } else {
+            stream.addComment(position, end - position, line, column);
+            advance(end);
+        }
+    }
+
+    /**
+     * Moves the current position to an offset, updating the line and the column.
+     *
+     * @param end the offset.
+     */
+    private void advance(int end) {
+        for (; position < end; position++) {
+            char character = buffer[position];
+            if (character == '\n' || character == '\r' && (position + 1 >= length || buffer[position + 1] != '\n')) {
+                line++;
+                column = 0;
+                stream.addLine(position + 1);
+            } else {
+                column++;
+            }
+        }
+    }
+
+    /**
+     * Scans the longest punctuator at the current position.
+     *
+     * @exception LexerException when no punctuator starts at the current position.
+     */
+    private void scanPunctuator() {
+        char character = buffer[position];
+        ApexPunctuator[] punctuators = character < ASCII ? PUNCTUATORS[character] : null;
+        if (punctuators != null) {
+            for (ApexPunctuator punctuator : punctuators) {
+                String value = punctuator.getValue();
+                if (matches(value)) {
+                    stream.add(punctuator, position, value.length(), line, column);
+                    position += value.length();
+                    column += value.length();
+                    return;
+                }
+            }
+        }
+        throw new LexerException(String.format(LEXER_ERROR, line, column, uri),
+                new IllegalStateException(String.format(CHARACTER_ERROR,
+                        character, (int) character, line, column)));
+    }
+
+    /**
+     * Returns true when a value is at the current position.
+     *
+     * @param value the value.
+     * @return true when the characters at the current position are the value.
+     */
+    private boolean matches(String value) {
+        if (position + value.length() > length) {
+            return false;
+        }
+        for (int index = 0; index < value.length(); index++) {
+            if (buffer[position + index] != value.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds an identifier or a keyword ending at an offset.
+     *
+     * @param end the end offset.
+     */
+    private void addWord(int end) {
+        ApexKeyword keyword = ApexKeywordTable.find(buffer, position, end);
+        addToken(keyword == null ? GenericTokenType.IDENTIFIER : keyword, end);
+    }
+
+    /**
+     * Adds a token without line breaks from the current position to an offset.
+     *
+     * @param type type of the token.
+     * @param end the end offset.
+     */
+    private void addToken(TokenType type, int end) {
+        stream.add(type, position, end - position, line, column);
+        column += end - position;
+        position = end;
+    }
+
+    /**
+     * Returns true when a character is an ASCII letter.
+     *
+     * @param character the character.
+     * @return true when it is a letter.
+     */
+    private static boolean isLetter(char character) {
+        return character >= 'a' && character <= 'z' || character >= 'A' && character <= 'Z';
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads source files into buffers that are reused from one file to the next. Each file is read in bulk with
+ * a {@link FileChannel} and decoded with the charset of the configuration, copying the bytes directly when
+ * the content is pure ASCII and the charset is compatible with it. An instance is not thread safe.
+ */
+class ApexSourceReader {
+
+    /**
+     * Stores the initial capacity of the buffers.
+     */
+    private static final int INITIAL_CAPACITY = 8192;
+
+    /**
+     * Stores the largest capacity of the buffers that is kept when the reader is reset.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    /**
+     * Stores the number of ASCII characters.
+     */
+    private static final int ASCII = 128;
+
+    /**
+     * Stores the decoder of the charset, which replaces malformed input as a stream reader does.
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * Stores whether the charset decodes every ASCII byte to the same character.
+     */
+    private final boolean asciiCompatible;
+
+    /**
+     * Stores the buffer of the bytes of the current file.
+     */
+    private ByteBuffer bytes;
+
+    /**
+     * Stores the buffer of the characters of the current file.
+     */
+    private CharBuffer chars;
+
+    /**
+     * Default constructor.
+     *
+     * @param charset the charset of the files.
+     */
+    ApexSourceReader(Charset charset) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.asciiCompatible = isAsciiCompatible(charset);
+        this.bytes = ByteBuffer.allocate(INITIAL_CAPACITY);
+        this.chars = CharBuffer.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Reads a file. The returned buffer is backed by an array, starts at position 0 and is overwritten by the
+     * next read.
+     *
+     * @param file the file.
+     * @return the characters of the file.
+     * @throws IOException when the file can not be read.
+     */
+    CharBuffer read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file);
+            }
+            bytes.clear();
+            if (bytes.capacity() <= size) {
+                bytes = ByteBuffer.allocate((int) size + 1);
+            }
+            while (channel.read(bytes) >= 0) {
+                if (!bytes.hasRemaining()) {
+                    bytes = grow(bytes);
+                }
+            }
+        }
+        bytes.flip();
+        return asciiCompatible && copyAscii() ? chars : decode();
+    }
+
+    /**
+     * Resets the reader for a new use, releasing the buffers that grew beyond the retained capacity for a
+     * large file.
+     */
+    void reset() {
+        if (bytes.capacity() > MAX_RETAINED_CAPACITY) {
+            bytes = ByteBuffer.allocate(INITIAL_CAPACITY);
+        }
+        if (chars.capacity() > MAX_RETAINED_CAPACITY) {
+            chars = CharBuffer.allocate(INITIAL_CAPACITY);
+        }
+        bytes.clear();
+        chars.clear();
+    }
+
+    /**
+     * Copies the bytes to the characters when all of them are ASCII.
+     *
+     * @return false when a byte is not ASCII.
+     */
+    private boolean copyAscii() {
+        byte[] source = bytes.array();
+        int length = bytes.limit();
+        chars.clear();
+        if (chars.capacity() < length) {
+            chars = CharBuffer.allocate(length);
+        }
+        char[] target = chars.array();
+        for (int index = 0; index < length; index++) {
+            byte value = source[index];
+            if (value < 0) {
+                return false;
+            }
+            target[index] = (char) value;
+        }
+        chars.limit(length);
+        return true;
+    }
+
+    /**
+     * Decodes the bytes to the characters with the charset.
+     *
+     * @return the characters.
+     * @throws CharacterCodingException when the bytes can not be decoded.
+     */
+    private CharBuffer decode() throws CharacterCodingException {
+        decoder.reset();
+        chars.clear();
+        int capacity = (int) (bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1;
+        if (chars.capacity() < capacity) {
+            chars = CharBuffer.allocate(capacity);
+        }
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(chars);
+        }
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        chars.flip();
+        return chars;
+    }
+
+    /**
+     * Returns a buffer twice as large with the content of a full buffer.
+     *
+     * @param buffer the full buffer.
+     * @return the larger buffer.
+     */
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    /**
+     * Returns true when a charset decodes every ASCII byte to the same character.
+     *
+     * @param charset the charset.
+     * @return true when it is compatible with ASCII.
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        byte[] ascii = new byte[ASCII];
+        for (int index = 0; index < ASCII; index++) {
+            ascii[index] = (byte) index;
+        }
+        String decoded = new String(ascii, charset);
+        if (decoded.length() != ASCII) {
+            return false;
+        }
+        for (int index = 0; index < ASCII; index++) {
+            if (decoded.charAt(index) != index) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
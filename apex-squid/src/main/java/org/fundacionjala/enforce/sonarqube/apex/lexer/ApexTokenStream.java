@@ -0,0 +1,805 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+import java.net.URI;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.TokenType;
+import com.sonar.sslr.api.Trivia;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexTokenType;
+
+/**
+ * Compact stream of the tokens of a source. The tokens are stored as parallel arrays of type, offset,
+ * length, line and column over the characters of the source, instead of one {@link Token} per token.
+ * Comments are stored the same way and only become {@link Trivia} when a {@link Token} is built. The stream
+ * also stores the offset where each line starts.
+ */
+public class ApexTokenStream {
+
+    /**
+     * Stores the value of the end of file token.
+     */
+    private static final String EOF_VALUE = "EOF";
+
+    /**
+     * Stores the initial capacity of the arrays.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Stores the number of characters after the end of a token that the lexer reads to end it, which are the
+     * two underscores and the letter that continue an identifier.
+     */
+    private static final int LOOKAHEAD = 3;
+
+    /**
+     * Stores the types that a token can have, indexed by their code.
+     */
+    private static final TokenType[] TYPES;
+
+    /**
+     * Stores the codes of the types.
+     */
+    private static final Map<TokenType, Integer> CODES = new IdentityHashMap<>();
+
+    /**
+     * Stores the code of the slash punctuator.
+     */
+    private static final int DIV_CODE;
+
+    static {
+        List<TokenType> types = Lists.newArrayList(GenericTokenType.EOF, GenericTokenType.IDENTIFIER);
+        types.addAll(Arrays.asList(ApexTokenType.values()));
+        types.addAll(Arrays.asList(ApexKeyword.values()));
+        types.addAll(Arrays.asList(ApexPunctuator.values()));
+        TYPES = types.toArray(new TokenType[types.size()]);
+        for (int code = 0; code < TYPES.length; code++) {
+            CODES.put(TYPES[code], code);
+        }
+        DIV_CODE = CODES.get(ApexPunctuator.DIV);
+    }
+
+    /**
+     * Stores the characters of the source.
+     */
+    private final char[] buffer;
+
+    /**
+     * Stores the URI of the source.
+     */
+    private final URI uri;
+
+    /**
+     * Stores the number of tokens.
+     */
+    private int size;
+
+    /**
+     * Stores the type code of each token.
+     */
+    private int[] types = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the offset of each token.
+     */
+    private int[] offsets = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the length of each token.
+     */
+    private int[] lengths = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the line of each token.
+     */
+    private int[] lines = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the column of each token.
+     */
+    private int[] columns = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the number of comments.
+     */
+    private int commentCount;
+
+    /**
+     * Stores the number of comments added before each token and its own comments.
+     */
+    private int[] commentEnds = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the offset of each comment.
+     */
+    private int[] commentOffsets = new int[0];
+
+    /**
+     * Stores the length of each comment.
+     */
+    private int[] commentLengths = new int[0];
+
+    /**
+     * Stores the line of each comment.
+     */
+    private int[] commentLines = new int[0];
+
+    /**
+     * Stores the column of each comment.
+     */
+    private int[] commentColumns = new int[0];
+
+    /**
+     * Stores the number of lines.
+     */
+    private int lineCount = 1;
+
+    /**
+     * Stores the offset of the first character of each line.
+     */
+    private int[] lineStarts = new int[INITIAL_CAPACITY];
+
+    /**
+     * Default constructor.
+     *
+     * @param buffer characters of the source, owned by the stream.
+     * @param uri URI of the source.
+     */
+    ApexTokenStream(char[] buffer, URI uri) {
+        this.buffer = buffer;
+        this.uri = uri;
+    }
+
+    /**
+     * Adds a token.
+     *
+     * @param type type of the token.
+     * @param offset offset of the token.
+     * @param length length of the token.
+     * @param line line of the token.
+     * @param column column of the token.
+     */
+    void add(TokenType type, int offset, int length, int line, int column) {
+        add(CODES.get(type), offset, length, line, column);
+    }
+
+    /**
+     * Adds a token from the code of its type.
+     *
+     * @param code code of the type of the token.
+     * @param offset offset of the token.
+     * @param length length of the token.
+     * @param line line of the token.
+     * @param column column of the token.
+     */
+    private void add(int code, int offset, int length, int line, int column) {
+        ensureTokenCapacity(size + 1);
+        types[size] = code;
+        offsets[size] = offset;
+        lengths[size] = length;
+        lines[size] = line;
+        columns[size] = column;
+        commentEnds[size] = commentCount;
+        size++;
+    }
+
+    /**
+     * Adds a comment, which belongs to the next added token.
+     *
+     * @param offset offset of the comment.
+     * @param length length of the comment.
+     * @param line line of the comment.
+     * @param column column of the comment.
+     */
+    void addComment(int offset, int length, int line, int column) {
+        ensureCommentCapacity(commentCount + 1);
+        commentOffsets[commentCount] = offset;
+        commentLengths[commentCount] = length;
+        commentLines[commentCount] = line;
+        commentColumns[commentCount] = column;
+        commentCount++;
+    }
+
+    /**
+     * Adds the start of a line.
+     *
+     * @param offset the offset of the first character of the line.
+     */
+    void addLine(int offset) {
+        if (lineCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+        }
+        lineStarts[lineCount++] = offset;
+    }
+
+    /**
+     * Copies the first tokens of another stream with their comments, and its lines up to an offset.
+     *
+     * @param source the other stream.
+     * @param count the number of tokens.
+     * @param offset the offset.
+     */
+    void copyPrefix(ApexTokenStream source, int count, int offset) {
+        int copiedLines = source.getLineAt(offset);
+        if (copiedLines > lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, copiedLines);
+        }
+        System.arraycopy(source.lineStarts, 0, lineStarts, 0, copiedLines);
+        lineCount = copiedLines;
+        int comments = count == 0 ? 0 : source.commentEnds[count - 1];
+        ensureTokenCapacity(count);
+        ensureCommentCapacity(comments);
+        System.arraycopy(source.types, 0, types, 0, count);
+        System.arraycopy(source.offsets, 0, offsets, 0, count);
+        System.arraycopy(source.lengths, 0, lengths, 0, count);
+        System.arraycopy(source.lines, 0, lines, 0, count);
+        System.arraycopy(source.columns, 0, columns, 0, count);
+        System.arraycopy(source.commentEnds, 0, commentEnds, 0, count);
+        System.arraycopy(source.commentOffsets, 0, commentOffsets, 0, comments);
+        System.arraycopy(source.commentLengths, 0, commentLengths, 0, comments);
+        System.arraycopy(source.commentLines, 0, commentLines, 0, comments);
+        System.arraycopy(source.commentColumns, 0, commentColumns, 0, comments);
+        size = count;
+        commentCount = comments;
+    }
+
+    /**
+     * Copies the tokens of another stream from an index to its end, moving them by a number of characters.
+     * The first copied token takes the comments added to this stream since the last token, and the other
+     * tokens take their comments from the other stream.
+     *
+     * @param source the other stream.
+     * @param from the index of the first copied token.
+     * @param shift the number of characters to add to the offsets.
+     * @param lineShift the number of lines to add to the lines.
+     * @param columnShift the number of columns to add to the columns on the line of the first copied token.
+     */
+    void copySuffix(ApexTokenStream source, int from, int shift, int lineShift, int columnShift) {
+        int lineIndex = source.getLineAt(source.offsets[from]);
+        int copiedLines = source.lineCount - lineIndex;
+        if (lineCount + copiedLines > lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineCount + copiedLines);
+        }
+        for (int index = 0; index < copiedLines; index++) {
+            lineStarts[lineCount + index] = source.lineStarts[lineIndex + index] + shift;
+        }
+        lineCount += copiedLines;
+        int count = source.size - from;
+        int firstComment = source.commentEnds[from];
+        int comments = source.commentCount - firstComment;
+        ensureTokenCapacity(size + count);
+        ensureCommentCapacity(commentCount + comments);
+        System.arraycopy(source.types, from, types, size, count);
+        System.arraycopy(source.lengths, from, lengths, size, count);
+        System.arraycopy(source.commentLengths, firstComment, commentLengths, commentCount, comments);
+        int firstLine = source.lines[from];
+        int commentShift = commentCount - firstComment;
+        for (int index = 0; index < count; index++) {
+            int tokenLine = source.lines[from + index];
+            offsets[size + index] = source.offsets[from + index] + shift;
+            lines[size + index] = tokenLine + lineShift;
+            columns[size + index] = source.columns[from + index] + (tokenLine == firstLine ? columnShift : 0);
+            commentEnds[size + index] = source.commentEnds[from + index] + commentShift;
+        }
+        for (int index = 0; index < comments; index++) {
+            int commentLine = source.commentLines[firstComment + index];
+            commentOffsets[commentCount + index] = source.commentOffsets[firstComment + index] + shift;
+            commentLines[commentCount + index] = commentLine + lineShift;
+            commentColumns[commentCount + index] = source.commentColumns[firstComment + index]
+                    + (commentLine == firstLine ? columnShift : 0);
+        }
+        size += count;
+        commentCount += comments;
+    }
+
+    /**
+     * Returns the index of the first token that an edit at an offset can change. The previous tokens end far
+     * enough from the offset for their lexing not to see the edit, and none of them is a slash followed by a
+     * star, which becomes a comment when the edit closes it.
+     *
+     * @param offset the offset of the edit.
+     * @return the index of the token.
+     */
+    int findRestart(int offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (offsets[middle] + lengths[middle] + LOOKAHEAD <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int index = 0; index < low; index++) {
+            int end = offsets[index] + lengths[index];
+            if (types[index] == DIV_CODE && end < buffer.length && buffer[end] == '*') {
+                return index;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the token that starts at an offset.
+     *
+     * @param offset the offset.
+     * @return the index of the token, or -1 when no token starts at the offset.
+     */
+    int find(int offset) {
+        int index = Arrays.binarySearch(offsets, 0, size, offset);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Returns the characters of the source.
+     *
+     * @return the characters.
+     */
+    char[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the number of tokens, including the end of file token.
+     *
+     * @return the number of tokens.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the URI of the source.
+     *
+     * @return the URI.
+     */
+    public URI getURI() {
+        return uri;
+    }
+
+    /**
+     * Returns the type of a token.
+     *
+     * @param index index of the token.
+     * @return the type.
+     */
+    public TokenType getType(int index) {
+        return TYPES[types[checkIndex(index)]];
+    }
+
+    /**
+     * Returns the offset of a token in the source.
+     *
+     * @param index index of the token.
+     * @return the offset.
+     */
+    public int getOffset(int index) {
+        return offsets[checkIndex(index)];
+    }
+
+    /**
+     * Returns the number of characters of a token.
+     *
+     * @param index index of the token.
+     * @return the length.
+     */
+    public int getLength(int index) {
+        return lengths[checkIndex(index)];
+    }
+
+    /**
+     * Returns the line of a token, starting at 1.
+     *
+     * @param index index of the token.
+     * @return the line.
+     */
+    public int getLine(int index) {
+        return lines[checkIndex(index)];
+    }
+
+    /**
+     * Returns the column of a token, starting at 0.
+     *
+     * @param index index of the token.
+     * @return the column.
+     */
+    public int getColumn(int index) {
+        return columns[checkIndex(index)];
+    }
+
+    /**
+     * Returns a read only view of the characters of a token, without copying them.
+     *
+     * @param index index of the token.
+     * @return the characters.
+     */
+    public CharSequence getText(int index) {
+        return CharBuffer.wrap(buffer, getOffset(index), getLength(index)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the number of lines of the source.
+     *
+     * @return the number of lines.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the offset of the first character of a line.
+     *
+     * @param line the line, starting at 1.
+     * @return the offset.
+     */
+    public int getLineStart(int line) {
+        return lineStarts[checkLine(line) - 1];
+    }
+
+    /**
+     * Returns the number of characters of a line, without its line terminator.
+     *
+     * @param line the line, starting at 1.
+     * @return the length.
+     */
+    public int getLineLength(int line) {
+        int start = lineStarts[checkLine(line) - 1];
+        int end = line < lineCount ? lineStarts[line] : buffer.length;
+        if (end > start && buffer[end - 1] == '\n') {
+            end--;
+        }
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        return end - start;
+    }
+
+    /**
+     * Returns the line of an offset.
+     *
+     * @param offset the offset.
+     * @return the line, starting at 1.
+     */
+    public int getLineAt(int offset) {
+        if (offset < 0 || offset > buffer.length) {
+            throw new IndexOutOfBoundsException("Offset: " + offset + ", length: " + buffer.length);
+        }
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return index < 0 ? -index - 1 : index + 1;
+    }
+
+    /**
+     * Returns the column of an offset.
+     *
+     * @param offset the offset.
+     * @return the column, starting at 0.
+     */
+    public int getColumnAt(int offset) {
+        return offset - lineStarts[getLineAt(offset) - 1];
+    }
+
+    /**
+     * Returns the index of the first comment before a token.
+     *
+     * @param index index of the token.
+     * @return the index of the comment.
+     */
+    public int getFirstComment(int index) {
+        return checkIndex(index) == 0 ? 0 : commentEnds[index - 1];
+    }
+
+    /**
+     * Returns the index after the last comment before a token.
+     *
+     * @param index index of the token.
+     * @return the index after the comment.
+     */
+    public int getCommentEnd(int index) {
+        return commentEnds[checkIndex(index)];
+    }
+
+    /**
+     * Returns the number of comments.
+     *
+     * @return the number of comments.
+     */
+    public int getCommentCount() {
+        return commentCount;
+    }
+
+    /**
+     * Returns the line of a comment, starting at 1.
+     *
+     * @param comment index of the comment.
+     * @return the line.
+     */
+    public int getCommentLine(int comment) {
+        return commentLines[checkComment(comment)];
+    }
+
+    /**
+     * Returns the column of a comment, starting at 0.
+     *
+     * @param comment index of the comment.
+     * @return the column.
+     */
+    public int getCommentColumn(int comment) {
+        return commentColumns[checkComment(comment)];
+    }
+
+    /**
+     * Returns a read only view of the characters of a comment, without copying them.
+     *
+     * @param comment index of the comment.
+     * @return the characters, including the comment delimiters.
+     */
+    public CharSequence getCommentText(int comment) {
+        checkComment(comment);
+        return CharBuffer.wrap(buffer, commentOffsets[comment], commentLengths[comment]).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the value of a token. Keywords and punctuators share the value of their type.
+     *
+     * @param index index of the token.
+     * @return the value.
+     */
+    public String getValue(int index) {
+        TokenType type = getType(index);
+        if (type == GenericTokenType.EOF) {
+            return EOF_VALUE;
+        }
+        if (type instanceof ApexKeyword || type instanceof ApexPunctuator) {
+            return type.getValue();
+        }
+        return new String(buffer, offsets[index], lengths[index]);
+    }
+
+    /**
+     * Builds the {@link Token} of a token, with its preceding comments as trivia. The text of the comments
+     * is only copied here.
+     *
+     * @param index index of the token.
+     * @return the token.
+     */
+    public Token getToken(int index) {
+        Token.Builder builder = Token.builder()
+                .setType(getType(index))
+                .setValueAndOriginalValue(getValue(index))
+                .setURI(uri)
+                .setLine(lines[index])
+                .setColumn(columns[index]);
+        for (int comment = getFirstComment(index); comment < commentEnds[index]; comment++) {
+            builder.addTrivia(Trivia.createComment(Token.builder()
+                    .setType(GenericTokenType.COMMENT)
+                    .setValueAndOriginalValue(new String(buffer, commentOffsets[comment], commentLengths[comment]))
+                    .setURI(uri)
+                    .setLine(commentLines[comment])
+                    .setColumn(commentColumns[comment])
+                    .build()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds the {@link Token} of every token.
+     *
+     * @return the tokens.
+     */
+    public List<Token> toTokens() {
+        List<Token> tokens = Lists.newArrayListWithCapacity(size);
+        for (int index = 0; index < size; index++) {
+            tokens.add(getToken(index));
+        }
+        return tokens;
+    }
+
+    /**
+     * Writes the stream with its source, as the deltas between the offsets and lines of consecutive tokens
+     * and comments. The types are written as their codes, which depend on the order of the token types.
+     *
+     * @param output the output.
+     */
+    public void write(ApexBinaryOutput output) {
+        output.writeVarInt(buffer.length);
+        for (char character : buffer) {
+            output.writeChar(character);
+        }
+        output.writeVarInt(size);
+        for (int index = 0; index < size; index++) {
+            int previous = index - 1;
+            output.writeVarInt(types[index]);
+            output.writeVarInt(offsets[index] - (index == 0 ? 0 : offsets[previous]));
+            output.writeVarInt(lengths[index]);
+            output.writeVarInt(lines[index] - (index == 0 ? 0 : lines[previous]));
+            output.writeVarInt(columns[index]);
+            output.writeVarInt(commentEnds[index] - (index == 0 ? 0 : commentEnds[previous]));
+        }
+        output.writeVarInt(commentCount);
+        for (int comment = 0; comment < commentCount; comment++) {
+            int previous = comment - 1;
+            output.writeVarInt(commentOffsets[comment] - (comment == 0 ? 0 : commentOffsets[previous]));
+            output.writeVarInt(commentLengths[comment]);
+            output.writeVarInt(commentLines[comment] - (comment == 0 ? 0 : commentLines[previous]));
+            output.writeVarInt(commentColumns[comment]);
+        }
+        output.writeVarInt(lineCount);
+        for (int line = 1; line < lineCount; line++) {
+            output.writeVarInt(lineStarts[line] - lineStarts[line - 1]);
+        }
+    }
+
+    /**
+     * Reads a stream written by {@link #write(ApexBinaryOutput)}.
+     *
+     * @param input the input.
+     * @param uri URI of the source.
+     * @return the stream.
+     * @exception IllegalArgumentException when the input is not a valid stream.
+     */
+    public static ApexTokenStream read(ApexBinaryInput input, URI uri) {
+        char[] buffer = new char[input.readVarInt()];
+        for (int index = 0; index < buffer.length; index++) {
+            buffer[index] = input.readChar();
+        }
+        ApexTokenStream stream = new ApexTokenStream(buffer, uri);
+        int size = input.readVarInt();
+        stream.ensureTokenCapacity(size);
+        int offset = 0;
+        int line = 0;
+        int commentEnd = 0;
+        for (int index = 0; index < size; index++) {
+            int code = input.readVarInt(TYPES.length);
+            offset += input.readVarInt();
+            int length = checkRange(offset, input.readVarInt(), buffer.length);
+            line += input.readVarInt();
+            stream.add(code, offset, length, line, input.readVarInt());
+            commentEnd += input.readVarInt();
+            stream.commentEnds[index] = commentEnd;
+        }
+        int commentCount = input.readVarInt();
+        stream.ensureCommentCapacity(commentCount);
+        int commentOffset = 0;
+        int commentLine = 0;
+        for (int comment = 0; comment < commentCount; comment++) {
+            commentOffset += input.readVarInt();
+            int length = checkRange(commentOffset, input.readVarInt(), buffer.length);
+            commentLine += input.readVarInt();
+            stream.addComment(commentOffset, length, commentLine, input.readVarInt());
+        }
+        if (commentEnd != commentCount) {
+            throw new IllegalArgumentException("Comment count: " + commentCount + ", end: " + commentEnd);
+        }
+        int lineCount = input.readVarInt();
+        int lineStart = 0;
+        for (int index = 1; index < lineCount; index++) {
+            lineStart += input.readVarInt();
+            checkRange(lineStart, 0, buffer.length);
+            stream.addLine(lineStart);
+        }
+        return stream;
+    }
+
+    /**
+     * Verifies that a range of characters is inside the source.
+     *
+     * @param offset the offset of the range.
+     * @param length the length of the range.
+     * @param sourceLength the length of the source.
+     * @return the length.
+     * @exception IllegalArgumentException when the range is not inside the source.
+     */
+    private static int checkRange(int offset, int length, int sourceLength) {
+        if (offset < 0 || offset > sourceLength - length) {
+            throw new IllegalArgumentException("Range: " + offset + "+" + length + ", source: " + sourceLength);
+        }
+        return length;
+    }
+
+    /**
+     * Grows the arrays of the tokens to a capacity.
+     *
+     * @param capacity the capacity.
+     */
+    private void ensureTokenCapacity(int capacity) {
+        if (capacity > types.length) {
+            int newCapacity = Math.max(capacity, types.length * 2);
+            types = Arrays.copyOf(types, newCapacity);
+            offsets = Arrays.copyOf(offsets, newCapacity);
+            lengths = Arrays.copyOf(lengths, newCapacity);
+            lines = Arrays.copyOf(lines, newCapacity);
+            columns = Arrays.copyOf(columns, newCapacity);
+            commentEnds = Arrays.copyOf(commentEnds, newCapacity);
+        }
+    }
+
+    /**
+     * Grows the arrays of the comments to a capacity.
+     *
+     * @param capacity the capacity.
+     */
+    private void ensureCommentCapacity(int capacity) {
+        if (capacity > commentOffsets.length) {
+            int newCapacity = Math.max(capacity, Math.max(INITIAL_CAPACITY, commentOffsets.length * 2));
+            commentOffsets = Arrays.copyOf(commentOffsets, newCapacity);
+            commentLengths = Arrays.copyOf(commentLengths, newCapacity);
+            commentLines = Arrays.copyOf(commentLines, newCapacity);
+            commentColumns = Arrays.copyOf(commentColumns, newCapacity);
+        }
+    }
+
+    /**
+     * Verifies a line.
+     *
+     * @param line the line.
+     * @return the line.
+     * @throws IndexOutOfBoundsException when the source has not the line.
+     */
+    private int checkLine(int line) {
+        if (line < 1 || line > lineCount) {
+            throw new IndexOutOfBoundsException("Line: " + line + ", count: " + lineCount);
+        }
+        return line;
+    }
+
+    /**
+     * Verifies the index of a comment.
+     *
+     * @param comment the index.
+     * @return the index.
+     * @throws IndexOutOfBoundsException when there is no comment at the index.
+     */
+    private int checkComment(int comment) {
+        if (comment < 0 || comment >= commentCount) {
+            throw new IndexOutOfBoundsException("Comment index: " + comment + ", count: " + commentCount);
+        }
+        return comment;
+    }
+
+    /**
+     * Verifies the index of a token.
+     *
+     * @param index the index.
+     * @return the index.
+     * @throws IndexOutOfBoundsException when there is no token at the index.
+     */
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Token index: " + index + ", size: " + size);
+        }
+        return index;
+    }
+}
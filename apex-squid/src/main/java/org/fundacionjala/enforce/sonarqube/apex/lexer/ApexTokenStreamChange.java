@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+/**
+ * Result of lexing a source again after an edit: the new stream and the range of tokens that replaced tokens
+ * of the previous stream. The tokens before the range are the same in both streams, and the tokens after it
+ * only moved.
+ */
+public class ApexTokenStreamChange {
+
+    /**
+     * Stores the stream after the edit.
+     */
+    private final ApexTokenStream stream;
+
+    /**
+     * Stores the index of the first changed token.
+     */
+    private final int start;
+
+    /**
+     * Stores the index after the last replaced token of the previous stream.
+     */
+    private final int previousEnd;
+
+    /**
+     * Stores the index after the last changed token of the new stream.
+     */
+    private final int end;
+
+    /**
+     * Default constructor.
+     *
+     * @param stream the stream after the edit.
+     * @param start the index of the first changed token.
+     * @param previousEnd the index after the last replaced token of the previous stream.
+     * @param end the index after the last changed token of the new stream.
+     */
+    ApexTokenStreamChange(ApexTokenStream stream, int start, int previousEnd, int end) {
+        this.stream = stream;
+        this.start = start;
+        this.previousEnd = previousEnd;
+        this.end = end;
+    }
+
+    /**
+     * Returns the stream after the edit.
+     *
+     * @return the stream.
+     */
+    public ApexTokenStream getStream() {
+        return stream;
+    }
+
+    /**
+     * Returns the index of the first changed token, in both streams.
+     *
+     * @return the index.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the index after the last token of the previous stream that was replaced.
+     *
+     * @return the index.
+     */
+    public int getPreviousEnd() {
+        return previousEnd;
+    }
+
+    /**
+     * Returns the index after the last token of the new stream that replaced them.
+     *
+     * @return the index.
+     */
+    public int getEnd() {
+        return end;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.Token;
+
+/**
+ * Node that also stands for the wrapper rules collapsed into it by {@link ApexAstCreator}. The types of the
+ * wrappers are kept as aliases, so the node is of its own type and of each alias. The children of a type are
+ * also searched by their aliases, whereas {@link AstNode} compares the type of each child.
+ */
+class ApexAliasedNode extends AstNode {
+
+    /**
+     * Stores the types of the collapsed wrappers, from the innermost one, or null when there is none.
+     */
+    private AstNodeType[] aliases;
+
+    /**
+     * Default constructor.
+     *
+     * @param type the type of the node.
+     * @param name the name of the node.
+     * @param token the first token of the node.
+     */
+    ApexAliasedNode(AstNodeType type, String name, Token token) {
+        super(type, name, token);
+    }
+
+    /**
+     * Adds the type of a wrapper collapsed into the node.
+     *
+     * @param alias the type of the wrapper.
+     */
+    void addAlias(AstNodeType alias) {
+        if (aliases == null) {
+            aliases = new AstNodeType[]{alias};
+        } else {
+            aliases = Arrays.copyOf(aliases, aliases.length + 1);
+            aliases[aliases.length - 1] = alias;
+        }
+    }
+
+    /**
+     * Returns the types of the wrappers collapsed into the node.
+     *
+     * @return the types, from the innermost wrapper.
+     */
+    AstNodeType[] getAliases() {
+        return aliases == null ? new AstNodeType[0] : aliases.clone();
+    }
+
+    /**
+     * Returns whether the node, or a wrapper collapsed into it, is of one of some types.
+     *
+     * @param types the types.
+     * @return true when the node or a collapsed wrapper is of one of the types.
+     */
+    @Override
+    public boolean is(AstNodeType... types) {
+        if (super.is(types)) {
+            return true;
+        }
+        if (aliases != null) {
+            for (AstNodeType alias : aliases) {
+                for (AstNodeType type : types) {
+                    if (alias == type) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the first child that is of one of some types or has one of them as an alias.
+     *
+     * @param types the types.
+     * @return the child, or null when there is none.
+     */
+    @Override
+    public AstNode getFirstChild(AstNodeType... types) {
+        for (AstNode child : getChildren()) {
+            if (child.is(types)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the children that are of some types or have one of them as an alias.
+     *
+     * @param types the types.
+     * @return a new list of the children.
+     */
+    @Override
+    public List<AstNode> getChildren(AstNodeType... types) {
+        List<AstNode> children = new ArrayList<>();
+        for (AstNode child : getChildren()) {
+            if (child.is(types)) {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Returns the last child that is of one of some types or has one of them as an alias.
+     *
+     * @param types the types.
+     * @return the child, or null when there is none.
+     */
+    @Override
+    public AstNode getLastChild(AstNodeType... types) {
+        List<AstNode> children = getChildren();
+        for (int index = children.size() - 1; index >= 0; index--) {
+            if (children.get(index).is(types)) {
+                return children.get(index);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+
+import com.google.common.base.Joiner;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexCodeDigest;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexBinaryInput;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexBinaryOutput;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexTokenStream;
+
+/**
+ * Persistent cache of the token streams and compact trees of the parsed files, so the tools that run
+ * different rules over the same sources parse an unchanged file once. An entry is keyed by the content of the
+ * file and by a fingerprint of the format, the code of the analyzer, the grammar and the charset, and it is
+ * written with the integers of {@link ApexBinaryOutput}. The entries are mapped in memory when they are read. A
+ * cache that can not be read or written only misses.
+ */
+public class ApexAstCache {
+
+    /**
+     * Stores the version of the format of the entries, it must be increased when the format changes.
+     */
+    static final int FORMAT_VERSION = 2;
+
+    /**
+     * Stores the prefix of the temporary entries.
+     */
+    private static final String TEMPORARY_PREFIX = "apex-ast";
+
+    /**
+     * Stores the digest algorithm used to build the keys.
+     */
+    private static final String ALGORITHM = "SHA-1";
+
+    /**
+     * Stores the directory of the entries.
+     */
+    private final File directory;
+
+    /**
+     * Stores the fingerprint of the format, the code of the analyzer, the grammar and the charset.
+     */
+    private final byte[] fingerprint;
+
+    /**
+     * Stores the last looked up file.
+     */
+    private File lastFile;
+
+    /**
+     * Stores the key of the last looked up file.
+     */
+    private String lastKey;
+
+    /**
+     * Default constructor.
+     *
+     * @param directory directory of the entries.
+     * @param charset charset of the files.
+     * @param grammar name of the grammar of the trees, which distinguishes the grammars of the same code,
+     * such as the grammar that recovers from the errors.
+     */
+    public ApexAstCache(File directory, Charset charset, String grammar) {
+        this.directory = directory;
+        String code = ApexCodeDigest.digest(Collections.singleton(ApexAstCache.class));
+        this.fingerprint = (Joiner.on('|').join(FORMAT_VERSION, code, grammar, charset.name()) + "\n"
+                + Joiner.on('\n').join(ApexCompactAst.getWrittenTypeNames())).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the cached token stream and tree of a file. An invalid entry is deleted.
+     *
+     * @param file file to be parsed.
+     * @return the entry, or null when the file is not cached or can not be read.
+     */
+    public Entry get(File file) {
+        lastFile = null;
+        String key = key(file);
+        if (key == null) {
+            return null;
+        }
+        File entry = new File(directory, key);
+        if (!entry.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(entry.toPath(), StandardOpenOption.READ)) {
+            ApexBinaryInput input = new ApexBinaryInput(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            if (input.readVarInt() != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Version mismatch");
+            }
+            ApexTokenStream stream = ApexTokenStream.read(input, file.toURI());
+            ApexCompactAst ast = ApexCompactAst.read(input, stream.toTokens());
+            if (!input.isAtEnd()) {
+                throw new IllegalArgumentException("Trailing bytes");
+            }
+            return new Entry(stream, ast);
+        } catch (IOException | IllegalArgumentException | BufferUnderflowException e) {
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the token stream and tree of a file. An entry that can not be written is skipped.
+     *
+     * @param file parsed file.
+     * @param stream token stream of the file.
+     * @param ast tree of the file.
+     */
+    public void put(File file, ApexTokenStream stream, ApexCompactAst ast) {
+        String key = key(file);
+        if (key == null) {
+            return;
+        }
+        ApexBinaryOutput output = new ApexBinaryOutput();
+        output.writeVarInt(FORMAT_VERSION);
+        stream.write(output);
+        try {
+            ast.write(output);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        File temporary = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            temporary = File.createTempFile(TEMPORARY_PREFIX, null, directory);
+            try (OutputStream entry = new BufferedOutputStream(new FileOutputStream(temporary))) {
+                output.writeTo(entry);
+            }
+            Files.move(temporary.toPath(), new File(directory, key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            if (temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the key of a file, computed from its content and the fingerprint. The key of the last looked up
+     * file is kept, so it is computed once when a file is looked up and then stored.
+     *
+     * @param file the file.
+     * @return the key, or null when the file can not be read.
+     */
+    private String key(File file) {
+        if (!file.equals(lastFile)) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+                digest.update(fingerprint);
+                digest.update(Files.readAllBytes(file.toPath()));
+                lastKey = String.format("%040x", new BigInteger(1, digest.digest()));
+                lastFile = file;
+            } catch (IOException | NoSuchAlgorithmException e) {
+                return null;
+            }
+        }
+        return lastKey;
+    }
+
+    /**
+     * Token stream and tree of a cached file.
+     */
+    public static final class Entry {
+
+        /**
+         * Stores the token stream of the file.
+         */
+        private final ApexTokenStream tokenStream;
+
+        /**
+         * Stores the tree of the file.
+         */
+        private final ApexCompactAst ast;
+
+        /**
+         * Default constructor.
+         *
+         * @param tokenStream token stream of the file.
+         * @param ast tree of the file.
+         */
+        Entry(ApexTokenStream tokenStream, ApexCompactAst ast) {
+            this.tokenStream = tokenStream;
+            this.ast = ast;
+        }
+
+        /**
+         * Returns the token stream of the file.
+         *
+         * @return the stream.
+         */
+        public ApexTokenStream getTokenStream() {
+            return tokenStream;
+        }
+
+        /**
+         * Returns the tree of the file.
+         *
+         * @return the tree.
+         */
+        public ApexCompactAst getAst() {
+            return ast;
+        }
+    }
+}
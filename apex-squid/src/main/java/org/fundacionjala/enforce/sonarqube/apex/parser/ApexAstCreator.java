@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.TokenType;
+import com.sonar.sslr.impl.matcher.RuleDefinition;
+import org.sonar.sslr.internal.matchers.Matcher;
+import org.sonar.sslr.internal.matchers.ParseNode;
+import org.sonar.sslr.internal.vm.lexerful.TokenTypeExpression;
+
+/**
+ * Creates the syntax tree of a parse tree as {@code LexerfulAstCreator} does, while collapsing the wrapper
+ * rules of some types. A wrapper node with a single child that spans the same tokens is replaced by its child,
+ * which keeps the type of the wrapper as an alias, see {@link ApexAliasedNode}. The rules of the Apex grammar
+ * are never skipped from the tree, whereas the tokens whose type has to be skipped are.
+ */
+final class ApexAstCreator {
+
+    /**
+     * Stores the parsed tokens.
+     */
+    private final List<Token> tokens;
+
+    /**
+     * Stores the types of the wrapper rules to be collapsed.
+     */
+    private final Set<AstNodeType> collapsedTypes;
+
+    /**
+     * Default constructor.
+     *
+     * @param tokens the parsed tokens.
+     * @param collapsedTypes the types of the wrapper rules to be collapsed.
+     */
+    private ApexAstCreator(List<Token> tokens, Set<AstNodeType> collapsedTypes) {
+        this.tokens = tokens;
+        this.collapsedTypes = collapsedTypes;
+    }
+
+    /**
+     * Creates the syntax tree of a parse tree.
+     *
+     * @param parseNode the root of the parse tree.
+     * @param tokens the parsed tokens.
+     * @param collapsedTypes the types of the wrapper rules to be collapsed.
+     * @return the root node.
+     */
+    static AstNode create(ParseNode parseNode, List<Token> tokens, Set<AstNodeType> collapsedTypes) {
+        return new ApexAstCreator(tokens, collapsedTypes).visit(parseNode);
+    }
+
+    /**
+     * Creates the node of a parse node.
+     *
+     * @param parseNode the parse node.
+     * @return the node, or null when the node is skipped.
+     */
+    private ApexAliasedNode visit(ParseNode parseNode) {
+        Matcher matcher = parseNode.getMatcher();
+        if (matcher instanceof RuleDefinition) {
+            return visitRule((RuleDefinition) matcher, parseNode);
+        }
+        Token token = tokens.get(parseNode.getStartIndex());
+        TokenType type = token.getType();
+        if (matcher instanceof TokenTypeExpression && type.hasToBeSkippedFromAst(null)) {
+            return null;
+        }
+        return createNode(type, type.getName(), token, parseNode);
+    }
+
+    /**
+     * Creates the node of a rule, or returns its only child with the type of the rule as an alias when the
+     * rule is collapsed.
+     *
+     * @param rule the rule.
+     * @param parseNode the parse node.
+     * @return the node.
+     */
+    private ApexAliasedNode visitRule(RuleDefinition rule, ParseNode parseNode) {
+        List<ApexAliasedNode> children = new ArrayList<>(parseNode.getChildren().size());
+        for (ParseNode child : parseNode.getChildren()) {
+            ApexAliasedNode node = visit(child);
+            if (node != null) {
+                children.add(node);
+            }
+        }
+        AstNodeType type = rule.getRealAstNodeType();
+        if (children.size() == 1 && collapsedTypes.contains(type) && spansTheSameTokens(children.get(0), parseNode)) {
+            ApexAliasedNode child = children.get(0);
+            child.addAlias(type);
+            return child;
+        }
+        int start = parseNode.getStartIndex();
+        Token token = start < tokens.size() ? tokens.get(start) : null;
+        ApexAliasedNode node = createNode(type, rule.getName(), token, parseNode);
+        children.forEach(node::addChild);
+        return node;
+    }
+
+    /**
+     * Creates a node over the tokens of a parse node.
+     *
+     * @param type the type of the node.
+     * @param name the name of the node.
+     * @param token the first token of the node.
+     * @param parseNode the parse node.
+     * @return the node.
+     */
+    private static ApexAliasedNode createNode(AstNodeType type, String name, Token token, ParseNode parseNode) {
+        ApexAliasedNode node = new ApexAliasedNode(type, name, token);
+        node.setFromIndex(parseNode.getStartIndex());
+        node.setToIndex(parseNode.getEndIndex());
+        return node;
+    }
+
+    /**
+     * Returns whether a node spans the same tokens as a parse node.
+     *
+     * @param node the node.
+     * @param parseNode the parse node.
+     * @return true when the indexes of their tokens are the same.
+     */
+    private static boolean spansTheSameTokens(AstNode node, ParseNode parseNode) {
+        return node.getFromIndex() == parseNode.getStartIndex() && node.getToIndex() == parseNode.getEndIndex();
+    }
+}
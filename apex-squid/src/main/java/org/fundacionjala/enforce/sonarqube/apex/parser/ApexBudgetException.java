@@ -0,0 +1,51 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import com.sonar.sslr.api.RecognitionException;
+
+/**
+ * Exception thrown by a parser when the parse of a file outlasts its time budget.
+ */
+final class ApexBudgetException extends RecognitionException {
+
+    /**
+     * Stores the serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Stores the message of the exception.
+     */
+    private static final String MESSAGE = "The parse exceeded its budget of %d ms.";
+
+    /**
+     * Default constructor.
+     *
+     * @param millis the budget in milliseconds.
+     */
+    ApexBudgetException(long millis) {
+        super(0, String.format(MESSAGE, millis));
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.TokenType;
+import org.sonar.sslr.internal.matchers.Matcher;
+import org.sonar.sslr.internal.vm.Instruction;
+import org.sonar.sslr.internal.vm.Machine;
+import org.sonar.sslr.internal.vm.lexerful.TokenTypeExpression;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexTokenType;
+import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
+
+/**
+ * Predicts the alternatives of the choices of a compiled grammar from the next token. The first tokens of
+ * each rule are computed from the compiled instructions, and each choice whose alternatives start with a
+ * token or a rule call is replaced with an instruction that jumps to the first alternative that can start
+ * with the next token, instead of trying the alternatives in order. The parse trees and the error indexes
+ * are the ones of the grammar: an alternative that starts with a rule call still records its failure.
+ */
+final class ApexChoicePredictor {
+
+    /**
+     * Stores the token types of the language.
+     */
+    private static final TokenType[][] TOKEN_TYPES = {
+        ApexKeyword.values(), ApexPunctuator.values(), ApexTokenType.values(), GenericTokenType.values()
+    };
+
+    /**
+     * Stores the compiled instructions, replaced in place.
+     */
+    private final Instruction[] instructions;
+
+    /**
+     * Stores a copy of the compiled instructions, analyzed while the choices are replaced.
+     */
+    private final Instruction[] original;
+
+    /**
+     * Stores the matchers of the rules of the grammar.
+     */
+    private final List<Matcher> rules = new ArrayList<>();
+
+    /**
+     * Stores the token types by the text of their token expression.
+     */
+    private final Map<String, TokenType> tokenTypes = new HashMap<>();
+
+    /**
+     * Stores the first tokens of the rules by the address of their body.
+     */
+    private final Map<Integer, First> firsts = new HashMap<>();
+
+    /**
+     * Default constructor.
+     *
+     * @param grammar the grammar that was compiled.
+     * @param instructions the compiled instructions.
+     */
+    ApexChoicePredictor(Grammar grammar, Instruction[] instructions) {
+        this.instructions = instructions;
+        this.original = instructions.clone();
+        for (ApexGrammarRuleKey key : ApexGrammarRuleKey.values()) {
+            Matcher rule = (Matcher) grammar.rule(key);
+            if (rule != null) {
+                rules.add(rule);
+            }
+        }
+        Set<String> ambiguous = new HashSet<>();
+        for (TokenType[] types : TOKEN_TYPES) {
+            for (TokenType type : types) {
+                String text = new TokenTypeExpression(type).toString();
+                if (tokenTypes.put(text, type) != null) {
+                    ambiguous.add(text);
+                }
+            }
+        }
+        tokenTypes.keySet().removeAll(ambiguous);
+    }
+
+    /**
+     * Replaces the choices that can skip alternatives with a predictive choice.
+     *
+     * @return the number of replaced choices.
+     */
+    int predict() {
+        int predicted = 0;
+        for (int address = 0; address < original.length; address++) {
+            if (original[address] instanceof Instruction.ChoiceInstruction) {
+                Instruction choice = predictChoice(address);
+                if (choice != null) {
+                    instructions[address] = choice;
+                    predicted++;
+                }
+            }
+        }
+        return predicted;
+    }
+
+    /**
+     * Returns the predictive choice of a choice instruction. The body of a choice ends with a commit: a
+     * commit to the next instruction ends an optional expression, a commit that verifies the progress ends a
+     * repetition, and any other commit ends an alternative of an ordered choice, followed by the next one.
+     *
+     * @param address the address of the choice.
+     * @return the predictive choice, or null when no alternative can be skipped.
+     */
+    private Instruction predictChoice(int address) {
+        List<Alternative> alternatives = new ArrayList<>();
+        int current = address;
+        int end = -1;
+        while (isChoice(current, end)) {
+            int next = current + original[current].hashCode();
+            alternatives.add(alternative(current, next - current, current + 1));
+            if (!(original[next - 1] instanceof Instruction.CommitInstruction) || original[next - 1].hashCode() == 1) {
+                current = next;
+                break;
+            }
+            end = next - 1 + original[next - 1].hashCode();
+            current = next;
+        }
+        if (alternatives.isEmpty()) {
+            return null;
+        }
+        alternatives.add(new Alternative(current, 0, null, null));
+        return predictiveChoice(address, alternatives);
+    }
+
+    /**
+     * Returns whether an instruction is a choice that starts an alternative.
+     *
+     * @param address the address of the instruction.
+     * @param end the end of the ordered choice, or -1 for the first alternative.
+     * @return true when the instruction starts an alternative.
+     */
+    private boolean isChoice(int address, int end) {
+        if (!(original[address] instanceof Instruction.ChoiceInstruction)) {
+            return false;
+        }
+        int commit = address + original[address].hashCode() - 1;
+        Instruction instruction = original[commit];
+        if (end < 0) {
+            return instruction instanceof Instruction.CommitInstruction
+                    || instruction instanceof Instruction.CommitVerifyInstruction;
+        }
+        return instruction instanceof Instruction.CommitInstruction && commit + instruction.hashCode() == end;
+    }
+
+    /**
+     * Returns an alternative from the first instruction of its body.
+     *
+     * @param address the address of the choice of the alternative.
+     * @param offset the offset of the choice.
+     * @param body the address of the body.
+     * @return the alternative.
+     */
+    private Alternative alternative(int address, int offset, int body) {
+        Instruction instruction = original[body];
+        TokenType type = tokenTypes.get(instruction.toString());
+        if (instruction instanceof TokenTypeExpression && type != null) {
+            First first = new First();
+            first.types.add(type);
+            return new Alternative(address, offset, first, null);
+        }
+        Matcher rule = calledRule(instruction);
+        if (rule != null) {
+            return new Alternative(address, offset, first(body + instruction.hashCode()), rule);
+        }
+        return new Alternative(address, offset, null, null);
+    }
+
+    /**
+     * Returns the predictive choice of a list of alternatives, where the last alternative is always tried.
+     *
+     * @param address the address of the choice.
+     * @param alternatives the alternatives.
+     * @return the predictive choice, or null when no alternative can be skipped.
+     */
+    private Instruction predictiveChoice(int address, List<Alternative> alternatives) {
+        Set<TokenType> types = new HashSet<>();
+        for (Alternative alternative : alternatives) {
+            if (alternative.first != null) {
+                types.addAll(alternative.first.types);
+            }
+        }
+        Prediction otherwise = prediction(address, alternatives, null);
+        boolean skips = otherwise.distance > 0;
+        Map<TokenType, Prediction> predictions = new IdentityHashMap<>();
+        for (TokenType type : types) {
+            Prediction prediction = prediction(address, alternatives, type);
+            predictions.put(type, prediction);
+            skips |= prediction.distance > 0;
+        }
+        if (!skips) {
+            return null;
+        }
+        return new PredictiveChoice(predictions, otherwise);
+    }
+
+    /**
+     * Returns the prediction of a list of alternatives for a token type.
+     *
+     * @param address the address of the choice.
+     * @param alternatives the alternatives.
+     * @param type the token type, or null for any other type.
+     * @return the prediction.
+     */
+    private static Prediction prediction(int address, List<Alternative> alternatives, TokenType type) {
+        Matcher failed = null;
+        for (Alternative alternative : alternatives) {
+            if (alternative.first == null || alternative.first.starts(type)) {
+                return new Prediction(alternative.address - address, alternative.offset, failed);
+            }
+            if (failed == null) {
+                failed = alternative.rule;
+            }
+        }
+        throw new IllegalStateException("The last alternative is always tried");
+    }
+
+    /**
+     * Returns the first tokens of a rule. A rule that is reached again before any token is consumed is left
+     * recursive, and can start with any token.
+     *
+     * @param body the address of the body of the rule.
+     * @return the first tokens.
+     */
+    private First first(int body) {
+        First first = firsts.get(body);
+        if (first == null) {
+            first = new First();
+            first.any = true;
+            firsts.put(body, first);
+            First computed = new First();
+            explore(body, computed, new HashSet<Integer>());
+            firsts.put(body, computed);
+            first = computed;
+        }
+        return first;
+    }
+
+    /**
+     * Adds the tokens that can be consumed first from an instruction, following every path that does not
+     * consume a token.
+     *
+     * @param address the address of the instruction.
+     * @param first the first tokens.
+     * @param visited the visited addresses.
+     */
+    private void explore(int address, First first, Set<Integer> visited) {
+        if (first.any || !visited.add(address)) {
+            return;
+        }
+        Instruction instruction = original[address];
+        if (instruction instanceof Instruction.ChoiceInstruction) {
+            explore(address + 1, first, visited);
+            explore(address + instruction.hashCode(), first, visited);
+        } else if (instruction instanceof Instruction.CommitInstruction
+                || instruction instanceof Instruction.CommitVerifyInstruction
+                || instruction instanceof Instruction.JumpInstruction) {
+            explore(address + instruction.hashCode(), first, visited);
+        } else if (instruction instanceof Instruction.RetInstruction) {
+            first.empty = true;
+        } else if (instruction instanceof TokenTypeExpression && tokenTypes.containsKey(instruction.toString())) {
+            first.types.add(tokenTypes.get(instruction.toString()));
+        } else if (calledRule(instruction) != null) {
+            First called = first(address + instruction.hashCode());
+            first.any |= called.any;
+            first.types.addAll(called.types);
+            if (called.empty) {
+                explore(address + 1, first, visited);
+            }
+        } else {
+            first.any = true;
+        }
+    }
+
+    /**
+     * Returns the rule called by an instruction.
+     *
+     * @param instruction the instruction.
+     * @return the matcher of the rule, or null when the instruction is not a call to a rule of the grammar.
+     */
+    private Matcher calledRule(Instruction instruction) {
+        if (instruction instanceof Instruction.CallInstruction) {
+            for (Matcher rule : rules) {
+                if (ApexCompiledParser.isCall(instruction, rule)) {
+                    return rule;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * First tokens of an expression.
+     */
+    private static final class First {
+
+        /**
+         * Stores the token types that can be consumed first.
+         */
+        private final Set<TokenType> types = new HashSet<>();
+
+        /**
+         * Stores whether the expression can match without consuming a token.
+         */
+        private boolean empty;
+
+        /**
+         * Stores whether the expression can start with any token.
+         */
+        private boolean any;
+
+        /**
+         * Returns whether the expression can be tried on a token.
+         *
+         * @param type the type of the token, or null for any other type.
+         * @return false when the expression fails on the token.
+         */
+        private boolean starts(TokenType type) {
+            return any || empty || types.contains(type);
+        }
+    }
+
+    /**
+     * Alternative of a choice.
+     */
+    private static final class Alternative {
+
+        /**
+         * Stores the address of the alternative.
+         */
+        private final int address;
+
+        /**
+         * Stores the offset of the choice of the alternative, or 0 when the alternative is always tried.
+         */
+        private final int offset;
+
+        /**
+         * Stores the first tokens of the alternative, or null when they are not known.
+         */
+        private final First first;
+
+        /**
+         * Stores the rule called first by the alternative, or null when it starts with a token.
+         */
+        private final Matcher rule;
+
+        /**
+         * Default constructor.
+         *
+         * @param address the address of the alternative.
+         * @param offset the offset of the choice of the alternative.
+         * @param first the first tokens of the alternative.
+         * @param rule the rule called first by the alternative.
+         */
+        private Alternative(int address, int offset, First first, Matcher rule) {
+            this.address = address;
+            this.offset = offset;
+            this.first = first;
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * Alternative predicted for a token type.
+     */
+    private static final class Prediction {
+
+        /**
+         * Stores the distance from the choice to the predicted alternative.
+         */
+        private final int distance;
+
+        /**
+         * Stores the offset of the choice of the predicted alternative, or 0 when it has no choice.
+         */
+        private final int offset;
+
+        /**
+         * Stores the first skipped rule, whose failure is recorded, or null when no rule is skipped.
+         */
+        private final Matcher failed;
+
+        /**
+         * Default constructor.
+         *
+         * @param distance the distance to the predicted alternative.
+         * @param offset the offset of the choice of the predicted alternative.
+         * @param failed the first skipped rule.
+         */
+        private Prediction(int distance, int offset, Matcher failed) {
+            this.distance = distance;
+            this.offset = offset;
+            this.failed = failed;
+        }
+    }
+
+    /**
+     * Choice that tries the alternative predicted for the next token.
+     */
+    private static final class PredictiveChoice extends Instruction {
+
+        /**
+         * Stores the predictions by token type.
+         */
+        private final Map<TokenType, Prediction> predictions;
+
+        /**
+         * Stores the prediction for any other token type and for the end of the input.
+         */
+        private final Prediction otherwise;
+
+        /**
+         * Default constructor.
+         *
+         * @param predictions the predictions by token type.
+         * @param otherwise the prediction for any other token type.
+         */
+        private PredictiveChoice(Map<TokenType, Prediction> predictions, Prediction otherwise) {
+            this.predictions = predictions;
+            this.otherwise = otherwise;
+        }
+
+        /**
+         * Jumps to the predicted alternative. A skipped rule fails on the current token, so its failure is
+         * recorded by backtracking from a call to it, as the machine does when the rule is tried.
+         *
+         * @param machine the parsing machine.
+         */
+        @Override
+        public void execute(Machine machine) {
+            Prediction prediction = machine.length() == 0 ? null : predictions.get(machine.tokenAt(0).getType());
+            if (prediction == null) {
+                prediction = otherwise;
+            }
+            if (prediction.failed == null) {
+                machine.jump(prediction.distance);
+            } else {
+                machine.pushBacktrack(prediction.distance);
+                machine.pushReturn(1, prediction.failed, 1);
+                machine.backtrack();
+            }
+            if (prediction.offset != 0) {
+                machine.pushBacktrack(prediction.offset);
+                machine.jump(1);
+            }
+        }
+
+        /**
+         * Returns the text of the instruction.
+         *
+         * @return the text.
+         */
+        @Override
+        public String toString() {
+            return "PredictiveChoice " + otherwise.distance;
+        }
+    }
+}
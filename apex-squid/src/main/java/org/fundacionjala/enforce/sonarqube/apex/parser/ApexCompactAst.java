@@ -0,0 +1,513 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.TokenType;
+import com.sonar.sslr.impl.matcher.RuleDefinition;
+import org.sonar.sslr.internal.matchers.Matcher;
+import org.sonar.sslr.internal.matchers.ParseNode;
+import org.sonar.sslr.internal.vm.lexerful.TokenTypeExpression;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexTokenType;
+import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexBinaryInput;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexBinaryOutput;
+
+/**
+ * Syntax tree stored in primitive arrays instead of {@link AstNode} objects. The nodes are numbered in pre-order
+ * from the root, so the first child of a node is the next node and the descendants of a node are the nodes up
+ * to the end of its subtree. Each node stores the ordinal of its type in the table of the tree, its parent, the
+ * end of its subtree, which is also its next sibling when it is not the last child, and the indexes of its
+ * tokens. The nodes are the ones that {@code LexerfulAstCreator} creates from the same parse tree, and they are
+ * navigated through the flyweight {@link AstNode} returned by {@link #getNode(int)}, which is created the first
+ * time that its node is reached, so a walk of the tree creates each flyweight once.
+ */
+public final class ApexCompactAst {
+
+    /**
+     * Stores the value of an index that has no node.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Stores the initial capacity of the arrays of the nodes.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Stores the types that a written tree can have, the rules of the grammar and the token types, whose
+     * indexes are written as the codes of the types.
+     */
+    private static final List<AstNodeType> WRITTEN_TYPES = new ArrayList<>();
+
+    /**
+     * Stores the names of the written types.
+     */
+    private static final List<String> WRITTEN_NAMES = new ArrayList<>();
+
+    /**
+     * Stores the codes of the written types.
+     */
+    private static final Map<AstNodeType, Integer> CODES = new IdentityHashMap<>();
+
+    static {
+        for (ApexGrammarRuleKey key : ApexGrammarRuleKey.values()) {
+            WRITTEN_TYPES.add(key);
+            WRITTEN_NAMES.add(key.toString());
+        }
+        TokenType[][] tokenTypes = {
+            ApexKeyword.values(), ApexPunctuator.values(), ApexTokenType.values(), GenericTokenType.values()
+        };
+        for (TokenType[] group : tokenTypes) {
+            for (TokenType type : group) {
+                WRITTEN_TYPES.add(type);
+                WRITTEN_NAMES.add(type.getName());
+            }
+        }
+        for (int code = 0; code < WRITTEN_TYPES.size(); code++) {
+            CODES.put(WRITTEN_TYPES.get(code), code);
+        }
+    }
+
+    /**
+     * Stores the tokens of the tree.
+     */
+    private final List<Token> tokens;
+
+    /**
+     * Stores the ordinals of the types by type while the tree is created.
+     */
+    private Map<AstNodeType, Integer> ordinals = new IdentityHashMap<>();
+
+    /**
+     * Stores the types of the tree by ordinal.
+     */
+    private AstNodeType[] nodeTypes = new AstNodeType[INITIAL_CAPACITY];
+
+    /**
+     * Stores the names of the types of the tree by ordinal.
+     */
+    private String[] nodeNames = new String[INITIAL_CAPACITY];
+
+    /**
+     * Stores the number of types of the tree.
+     */
+    private int typeCount;
+
+    /**
+     * Stores the ordinal of the type of each node.
+     */
+    private int[] types = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the parent of each node.
+     */
+    private int[] parents = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the end of the subtree of each node.
+     */
+    private int[] ends = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the index of the first token of each node.
+     */
+    private int[] fromIndexes = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the index after the last token of each node.
+     */
+    private int[] toIndexes = new int[INITIAL_CAPACITY];
+
+    /**
+     * Stores the number of nodes of the tree.
+     */
+    private int size;
+
+    /**
+     * Stores the flyweight of each node that was reached, created with the first one.
+     */
+    private AstNode[] nodes;
+
+    /**
+     * Default constructor.
+     *
+     * @param tokens the tokens of the tree.
+     */
+    private ApexCompactAst(List<Token> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Creates the tree of a parse tree, with the nodes that {@code LexerfulAstCreator} creates from it. The
+     * rules of the Apex grammar are never skipped from the tree, whereas the tokens whose type has to be
+     * skipped are.
+     *
+     * @param parseNode the root of the parse tree.
+     * @param tokens the parsed tokens.
+     * @return the tree.
+     */
+    public static ApexCompactAst create(ParseNode parseNode, List<Token> tokens) {
+        ApexCompactAst ast = new ApexCompactAst(tokens);
+        ast.add(parseNode, NONE);
+        ast.trim();
+        return ast;
+    }
+
+    /**
+     * Reads a tree written by {@link #write(ApexBinaryOutput)} over its tokens.
+     *
+     * @param input the input.
+     * @param tokens the tokens of the tree.
+     * @return the tree.
+     * @exception IllegalArgumentException when the input is not a valid tree of the tokens.
+     */
+    public static ApexCompactAst read(ApexBinaryInput input, List<Token> tokens) {
+        ApexCompactAst ast = new ApexCompactAst(tokens);
+        ast.typeCount = input.readVarInt(WRITTEN_TYPES.size() + 1);
+        ast.nodeTypes = new AstNodeType[ast.typeCount];
+        ast.nodeNames = new String[ast.typeCount];
+        for (int ordinal = 0; ordinal < ast.typeCount; ordinal++) {
+            int code = input.readVarInt(WRITTEN_TYPES.size());
+            ast.nodeTypes[ordinal] = WRITTEN_TYPES.get(code);
+            ast.nodeNames[ordinal] = WRITTEN_NAMES.get(code);
+        }
+        ast.size = input.readVarInt();
+        ast.types = new int[ast.size];
+        ast.parents = new int[ast.size];
+        ast.ends = new int[ast.size];
+        ast.fromIndexes = new int[ast.size];
+        ast.toIndexes = new int[ast.size];
+        int parent = NONE;
+        int fromIndex = 0;
+        for (int index = 0; index < ast.size; index++) {
+            while (parent != NONE && ast.ends[parent] <= index) {
+                parent = ast.parents[parent];
+            }
+            ast.types[index] = input.readVarInt(ast.typeCount);
+            ast.ends[index] = index + input.readVarInt(ast.size - index) + 1;
+            if (parent != NONE && ast.ends[index] > ast.ends[parent] || parent == NONE && index > 0) {
+                throw new IllegalArgumentException("Node outside of its parent: " + index);
+            }
+            ast.parents[index] = parent;
+            fromIndex += input.readVarInt(tokens.size() + 1);
+            ast.fromIndexes[index] = fromIndex;
+            ast.toIndexes[index] = fromIndex + input.readVarInt(tokens.size() - fromIndex + 1);
+            parent = index;
+        }
+        ast.ordinals = null;
+        return ast;
+    }
+
+    /**
+     * Writes the tree, without its tokens. Each node is written as the ordinal of its type, the size of its
+     * subtree, the delta between its first token and the first token of the previous node and its number of
+     * tokens. The parents are computed again from the sizes of the subtrees.
+     *
+     * @param output the output.
+     * @exception IllegalArgumentException when a node is not of a rule of the Apex grammar or a token type.
+     */
+    public void write(ApexBinaryOutput output) {
+        output.writeVarInt(typeCount);
+        for (int ordinal = 0; ordinal < typeCount; ordinal++) {
+            Integer code = CODES.get(nodeTypes[ordinal]);
+            if (code == null) {
+                throw new IllegalArgumentException("Type not written: " + nodeNames[ordinal]);
+            }
+            output.writeVarInt(code);
+        }
+        output.writeVarInt(size);
+        for (int index = 0; index < size; index++) {
+            output.writeVarInt(types[index]);
+            output.writeVarInt(ends[index] - index - 1);
+            output.writeVarInt(fromIndexes[index] - (index == 0 ? 0 : fromIndexes[index - 1]));
+            output.writeVarInt(toIndexes[index] - fromIndexes[index]);
+        }
+    }
+
+    /**
+     * Returns the names of the types that a written tree can have, in the order of their codes. A written
+     * tree can only be read by the same types.
+     *
+     * @return the names.
+     */
+    static List<String> getWrittenTypeNames() {
+        return Collections.unmodifiableList(WRITTEN_NAMES);
+    }
+
+    /**
+     * Returns the root node.
+     *
+     * @return the root node.
+     */
+    public AstNode getRoot() {
+        return getNode(0);
+    }
+
+    /**
+     * Returns the flyweight node of an index, which is created the first time and returned by the next calls.
+     *
+     * @param index the index of the node.
+     * @return the node, or null when the index is {@link #NONE}.
+     */
+    public AstNode getNode(int index) {
+        if (index == NONE) {
+            return null;
+        }
+        if (nodes == null) {
+            nodes = new AstNode[size];
+        }
+        AstNode node = nodes[index];
+        if (node == null) {
+            node = new ApexCompactNode(this, index);
+            nodes[index] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Returns the number of nodes.
+     *
+     * @return the number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the tokens of the tree.
+     *
+     * @return the tokens.
+     */
+    public List<Token> getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Returns the type of a node.
+     *
+     * @param index the index of the node.
+     * @return the type.
+     */
+    public AstNodeType getType(int index) {
+        return nodeTypes[types[index]];
+    }
+
+    /**
+     * Returns the name of a node.
+     *
+     * @param index the index of the node.
+     * @return the name.
+     */
+    public String getName(int index) {
+        return nodeNames[types[index]];
+    }
+
+    /**
+     * Returns the token of a node, which is its first token.
+     *
+     * @param index the index of the node.
+     * @return the token, or null when the node is at the end of the tokens.
+     */
+    public Token getToken(int index) {
+        return fromIndexes[index] < tokens.size() ? tokens.get(fromIndexes[index]) : null;
+    }
+
+    /**
+     * Returns whether a node is of one of some types.
+     *
+     * @param index the index of the node.
+     * @param nodeTypes the types.
+     * @return true when the node is of one of the types.
+     */
+    public boolean is(int index, AstNodeType... nodeTypes) {
+        AstNodeType type = getType(index);
+        for (AstNodeType nodeType : nodeTypes) {
+            if (type == nodeType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the parent of a node.
+     *
+     * @param index the index of the node.
+     * @return the index of the parent, or {@link #NONE} for the root.
+     */
+    public int getParent(int index) {
+        return parents[index];
+    }
+
+    /**
+     * Returns the first child of a node.
+     *
+     * @param index the index of the node.
+     * @return the index of the first child, or {@link #NONE} when the node has no children.
+     */
+    public int getFirstChild(int index) {
+        return index + 1 < ends[index] ? index + 1 : NONE;
+    }
+
+    /**
+     * Returns the next sibling of a node.
+     *
+     * @param index the index of the node.
+     * @return the index of the next sibling, or {@link #NONE} when the node is the last child.
+     */
+    public int getNextSibling(int index) {
+        int parent = parents[index];
+        return parent != NONE && ends[index] < ends[parent] ? ends[index] : NONE;
+    }
+
+    /**
+     * Returns the end of the subtree of a node, so its descendants are the nodes from the next index to the
+     * end.
+     *
+     * @param index the index of the node.
+     * @return the index after the last descendant.
+     */
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Returns the index of the first token of a node.
+     *
+     * @param index the index of the node.
+     * @return the token index.
+     */
+    public int getFromIndex(int index) {
+        return fromIndexes[index];
+    }
+
+    /**
+     * Returns the index after the last token of a node.
+     *
+     * @param index the index of the node.
+     * @return the token index.
+     */
+    public int getToIndex(int index) {
+        return toIndexes[index];
+    }
+
+    /**
+     * Adds the nodes of a parse node and its descendants, as {@code LexerfulAstCreator} does.
+     *
+     * @param parseNode the parse node.
+     * @param parent the index of the parent node.
+     */
+    private void add(ParseNode parseNode, int parent) {
+        Matcher matcher = parseNode.getMatcher();
+        if (matcher instanceof RuleDefinition) {
+            RuleDefinition rule = (RuleDefinition) matcher;
+            int index = addNode(rule.getRealAstNodeType(), rule.getName(), parent, parseNode);
+            for (ParseNode child : parseNode.getChildren()) {
+                add(child, index);
+            }
+            ends[index] = size;
+        } else {
+            TokenType tokenType = tokens.get(parseNode.getStartIndex()).getType();
+            if (!(matcher instanceof TokenTypeExpression) || !tokenType.hasToBeSkippedFromAst(null)) {
+                int index = addNode(tokenType, tokenType.getName(), parent, parseNode);
+                ends[index] = size;
+            }
+        }
+    }
+
+    /**
+     * Adds a node at the end of the arrays.
+     *
+     * @param type the type of the node.
+     * @param name the name of the node.
+     * @param parent the index of the parent node.
+     * @param parseNode the parse node.
+     * @return the index of the node.
+     */
+    private int addNode(AstNodeType type, String name, int parent, ParseNode parseNode) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            fromIndexes = Arrays.copyOf(fromIndexes, capacity);
+            toIndexes = Arrays.copyOf(toIndexes, capacity);
+        }
+        types[size] = getOrdinal(type, name);
+        parents[size] = parent;
+        fromIndexes[size] = parseNode.getStartIndex();
+        toIndexes[size] = parseNode.getEndIndex();
+        return size++;
+    }
+
+    /**
+     * Returns the ordinal of a type, adding the type to the table of the tree the first time.
+     *
+     * @param type the type.
+     * @param name the name of the type.
+     * @return the ordinal.
+     */
+    private int getOrdinal(AstNodeType type, String name) {
+        Integer ordinal = ordinals.get(type);
+        if (ordinal == null) {
+            if (typeCount == nodeTypes.length) {
+                nodeTypes = Arrays.copyOf(nodeTypes, typeCount * 2);
+                nodeNames = Arrays.copyOf(nodeNames, typeCount * 2);
+            }
+            nodeTypes[typeCount] = type;
+            nodeNames[typeCount] = name;
+            ordinal = typeCount++;
+            ordinals.put(type, ordinal);
+        }
+        return ordinal;
+    }
+
+    /**
+     * Trims the arrays to the number of nodes and types and releases the table of ordinals.
+     */
+    private void trim() {
+        types = Arrays.copyOf(types, size);
+        parents = Arrays.copyOf(parents, size);
+        ends = Arrays.copyOf(ends, size);
+        fromIndexes = Arrays.copyOf(fromIndexes, size);
+        toIndexes = Arrays.copyOf(toIndexes, size);
+        nodeTypes = Arrays.copyOf(nodeTypes, typeCount);
+        nodeNames = Arrays.copyOf(nodeNames, typeCount);
+        ordinals = null;
+    }
+}
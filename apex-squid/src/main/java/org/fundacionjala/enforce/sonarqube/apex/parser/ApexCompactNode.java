@@ -0,0 +1,456 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.Token;
+
+import static org.fundacionjala.enforce.sonarqube.apex.parser.ApexCompactAst.NONE;
+
+/**
+ * Flyweight node of an {@link ApexCompactAst}, which answers the navigation of an {@link AstNode} from the arrays
+ * of the tree. Each node is created once by its tree, the first time that it is navigated, and two nodes are
+ * equal when they are the same node of the same tree.
+ */
+class ApexCompactNode extends AstNode {
+
+    /**
+     * Stores the tree of the node.
+     */
+    private final ApexCompactAst ast;
+
+    /**
+     * Stores the index of the node in the tree.
+     */
+    private final int index;
+
+    /**
+     * Stores the children of the node, created the first time that they are returned.
+     */
+    private List<AstNode> children;
+
+    /**
+     * Default constructor.
+     *
+     * @param ast the tree of the node.
+     * @param index the index of the node in the tree.
+     */
+    ApexCompactNode(ApexCompactAst ast, int index) {
+        super(ast.getType(index), ast.getName(index), ast.getToken(index));
+        this.ast = ast;
+        this.index = index;
+        setFromIndex(ast.getFromIndex(index));
+        setToIndex(ast.getToIndex(index));
+    }
+
+    /**
+     * The nodes of a compact tree can not be changed.
+     *
+     * @param child the child.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void addChild(AstNode child) {
+        throw new UnsupportedOperationException("A compact syntax tree can not be changed.");
+    }
+
+    /**
+     * Returns the parent of the node.
+     *
+     * @return the parent, or null for the root.
+     */
+    @Override
+    public AstNode getParent() {
+        return ast.getNode(ast.getParent(index));
+    }
+
+    /**
+     * Returns whether the node has children.
+     *
+     * @return true when the node has children.
+     */
+    @Override
+    public boolean hasChildren() {
+        return ast.getFirstChild(index) != NONE;
+    }
+
+    /**
+     * Returns the children of the node.
+     *
+     * @return an unmodifiable list of the children, the same one on each call.
+     */
+    @Override
+    public List<AstNode> getChildren() {
+        if (children == null) {
+            List<AstNode> nodes = new ArrayList<>();
+            for (int child = ast.getFirstChild(index); child != NONE; child = ast.getNextSibling(child)) {
+                nodes.add(ast.getNode(child));
+            }
+            children = Collections.unmodifiableList(nodes);
+        }
+        return children;
+    }
+
+    /**
+     * Returns the number of children of the node.
+     *
+     * @return the number of children.
+     */
+    @Override
+    public int getNumberOfChildren() {
+        int count = 0;
+        for (int child = ast.getFirstChild(index); child != NONE; child = ast.getNextSibling(child)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a child of the node.
+     *
+     * @param childIndex the index of the child.
+     * @return the child.
+     * @throws IllegalStateException when the node has no child at the index.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public AstNode getChild(int childIndex) {
+        int child = ast.getFirstChild(index);
+        for (int count = 0; count < childIndex && child != NONE; count++) {
+            child = ast.getNextSibling(child);
+        }
+        if (childIndex < 0 || child == NONE) {
+            throw new IllegalStateException("The AstNode '" + this + "' has only " + getNumberOfChildren()
+                    + " children. Requested child index is wrong : " + childIndex);
+        }
+        return ast.getNode(child);
+    }
+
+    /**
+     * Returns the first child of the node.
+     *
+     * @return the first child, or null when the node has no children.
+     */
+    @Override
+    public AstNode getFirstChild() {
+        return ast.getNode(ast.getFirstChild(index));
+    }
+
+    /**
+     * Returns the last child of the node.
+     *
+     * @return the last child, or null when the node has no children.
+     */
+    @Override
+    public AstNode getLastChild() {
+        return ast.getNode(getLastChildIndex());
+    }
+
+    /**
+     * Returns the next sibling of the node.
+     *
+     * @return the next sibling, or null when the node is the last child.
+     */
+    @Override
+    public AstNode getNextSibling() {
+        return ast.getNode(ast.getNextSibling(index));
+    }
+
+    /**
+     * Returns the previous sibling of the node.
+     *
+     * @return the previous sibling, or null when the node is the first child.
+     */
+    @Override
+    public AstNode getPreviousSibling() {
+        int parent = ast.getParent(index);
+        if (parent == NONE) {
+            return null;
+        }
+        int previous = NONE;
+        for (int child = ast.getFirstChild(parent); child != index; child = ast.getNextSibling(child)) {
+            previous = child;
+        }
+        return ast.getNode(previous);
+    }
+
+    /**
+     * Returns the next sibling of the node, or of its nearest ancestor that has one.
+     *
+     * @return the next node, or null when there is none.
+     */
+    @Override
+    public AstNode getNextAstNode() {
+        for (int node = index; node != NONE; node = ast.getParent(node)) {
+            int sibling = ast.getNextSibling(node);
+            if (sibling != NONE) {
+                return ast.getNode(sibling);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the previous sibling of the node, or of its nearest ancestor that has one.
+     *
+     * @return the previous node, or null when there is none.
+     */
+    @Override
+    public AstNode getPreviousAstNode() {
+        AstNode previous = getPreviousSibling();
+        if (previous != null) {
+            return previous;
+        }
+        AstNode parent = getParent();
+        return parent == null ? null : parent.getPreviousAstNode();
+    }
+
+    /**
+     * Returns the first child of the node that is of one of some types.
+     *
+     * @param nodeTypes the types.
+     * @return the child, or null when there is none.
+     */
+    @Override
+    public AstNode getFirstChild(AstNodeType... nodeTypes) {
+        for (int child = ast.getFirstChild(index); child != NONE; child = ast.getNextSibling(child)) {
+            if (ast.is(child, nodeTypes)) {
+                return ast.getNode(child);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the children of the node that are of some types.
+     *
+     * @param nodeTypes the types.
+     * @return a new list of the children.
+     */
+    @Override
+    public List<AstNode> getChildren(AstNodeType... nodeTypes) {
+        List<AstNode> nodes = new ArrayList<>();
+        for (int child = ast.getFirstChild(index); child != NONE; child = ast.getNextSibling(child)) {
+            if (ast.is(child, nodeTypes)) {
+                nodes.add(ast.getNode(child));
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the last child of the node that is of one of some types.
+     *
+     * @param nodeTypes the types.
+     * @return the child, or null when there is none.
+     */
+    @Override
+    public AstNode getLastChild(AstNodeType... nodeTypes) {
+        int last = NONE;
+        for (int child = ast.getFirstChild(index); child != NONE; child = ast.getNextSibling(child)) {
+            if (ast.is(child, nodeTypes)) {
+                last = child;
+            }
+        }
+        return ast.getNode(last);
+    }
+
+    /**
+     * Returns the first descendant of the node in pre-order that is of one of some types.
+     *
+     * @param nodeTypes the types.
+     * @return the descendant, or null when there is none.
+     */
+    @Override
+    public AstNode getFirstDescendant(AstNodeType... nodeTypes) {
+        for (int node = index + 1; node < ast.getEnd(index); node++) {
+            if (ast.is(node, nodeTypes)) {
+                return ast.getNode(node);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the descendants of the node in pre-order that are of some types.
+     *
+     * @param nodeTypes the types.
+     * @return a new list of the descendants.
+     */
+    @Override
+    public List<AstNode> getDescendants(AstNodeType... nodeTypes) {
+        return findNodes(index + 1, nodeTypes);
+    }
+
+    /**
+     * Returns the node, when it is of one of some types, and its descendants that are of the types.
+     *
+     * @param nodeTypes the types.
+     * @return a new list of the nodes.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public List<AstNode> findChildren(AstNodeType... nodeTypes) {
+        return findNodes(index, nodeTypes);
+    }
+
+    /**
+     * Returns whether the parent of the node is of one of some types.
+     *
+     * @param nodeTypes the types.
+     * @return true when the parent is of one of the types.
+     */
+    @Override
+    public boolean hasParent(AstNodeType... nodeTypes) {
+        int parent = ast.getParent(index);
+        return parent != NONE && ast.is(parent, nodeTypes);
+    }
+
+    /**
+     * Returns the nearest ancestor of the node that is of a type.
+     *
+     * @param nodeType the type.
+     * @return the ancestor, or null when there is none.
+     */
+    @Override
+    public AstNode getFirstAncestor(AstNodeType nodeType) {
+        return getFirstAncestor(new AstNodeType[]{nodeType});
+    }
+
+    /**
+     * Returns the nearest ancestor of the node that is of one of some types.
+     *
+     * @param nodeTypes the types.
+     * @return the ancestor, or null when there is none.
+     */
+    @Override
+    public AstNode getFirstAncestor(AstNodeType... nodeTypes) {
+        int ancestor = ast.getParent(index);
+        while (ancestor != NONE && !ast.is(ancestor, nodeTypes)) {
+            ancestor = ast.getParent(ancestor);
+        }
+        return ast.getNode(ancestor);
+    }
+
+    /**
+     * Returns the tokens of the leaves of the node.
+     *
+     * @return a new list of the tokens.
+     */
+    @Override
+    public List<Token> getTokens() {
+        List<Token> tokens = new ArrayList<>();
+        for (int node = index; node < ast.getEnd(index); node++) {
+            Token token = ast.getToken(node);
+            if (ast.getFirstChild(node) == NONE && token != null) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the token of the node reached by descending into the last child that has a token.
+     *
+     * @return the token, or null when the node has no token.
+     */
+    @Override
+    public Token getLastToken() {
+        if (!hasToken()) {
+            return null;
+        }
+        int node = index;
+        int last = index;
+        while (last != NONE) {
+            node = last;
+            last = NONE;
+            for (int child = ast.getFirstChild(node); child != NONE; child = ast.getNextSibling(child)) {
+                if (ast.getToken(child) != null) {
+                    last = child;
+                }
+            }
+        }
+        return ast.getToken(node);
+    }
+
+    /**
+     * Returns whether an object is the same node of the same tree.
+     *
+     * @param object the object.
+     * @return true when the object is the same node.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof ApexCompactNode)) {
+            return false;
+        }
+        ApexCompactNode node = (ApexCompactNode) object;
+        return ast == node.ast && index == node.index;
+    }
+
+    /**
+     * Returns the hash code of the node.
+     *
+     * @return the hash code.
+     */
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(ast) * 31 + index;
+    }
+
+    /**
+     * Returns the last child of the node.
+     *
+     * @return the index of the last child, or {@link ApexCompactAst#NONE} when the node has no children.
+     */
+    private int getLastChildIndex() {
+        int last = NONE;
+        for (int child = ast.getFirstChild(index); child != NONE; child = ast.getNextSibling(child)) {
+            last = child;
+        }
+        return last;
+    }
+
+    /**
+     * Returns the nodes of some types from a node to the end of the subtree of this node.
+     *
+     * @param from the index of the first node.
+     * @param nodeTypes the types.
+     * @return a new list of the nodes.
+     */
+    private List<AstNode> findNodes(int from, AstNodeType... nodeTypes) {
+        List<AstNode> nodes = new ArrayList<>();
+        for (int node = from; node < ast.getEnd(index); node++) {
+            if (ast.is(node, nodeTypes)) {
+                nodes.add(ast.getNode(node));
+            }
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.AstVisitor;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.api.Token;
+
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexSinglePassLexer;
+
+/**
+ * Compiled parser that returns the root of an {@link ApexCompactAst}, whose nodes are stored in primitive arrays
+ * and navigated through flyweight nodes, instead of a tree of {@link AstNode} objects. With an
+ * {@link ApexAstCache}, the token stream and the tree of an unchanged file are read from the cache instead. The
+ * compact trees keep the wrapper rules, which take a few array slots instead of objects, so no type can be
+ * collapsed.
+ */
+public class ApexCompactParser extends ApexCompiledParser {
+
+    /**
+     * Stores an error message when some types are collapsed.
+     */
+    private static final String COLLAPSE_UNSUPPORTED = "The compact trees can not collapse the types %s.";
+
+    /**
+     * Stores the cache of the parsed files, null when there is none.
+     */
+    private ApexAstCache cache;
+
+    /**
+     * Stores the tree of the last parsed tokens.
+     */
+    private ApexCompactAst lastAst;
+
+    /**
+     * Default constructor.
+     *
+     * @param grammar grammar to be parsed.
+     * @param lexer lexer of the parser.
+     */
+    public ApexCompactParser(Grammar grammar, ApexSinglePassLexer lexer) {
+        super(grammar, lexer);
+    }
+
+    /**
+     * Sets the cache of the parsed files.
+     *
+     * @param cache the cache, null for none.
+     */
+    public void setCache(ApexAstCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Parses a file, or reads its token stream and its tree from the cache when the file is cached. The tree
+     * of a parsed file is cached, unless the file exceeded the budget; a tree that can not be cached is only
+     * parsed again by the next analysis.
+     *
+     * @param file the file.
+     * @return the root node of the compact tree.
+     * @throws RecognitionException when the file can not be lexed or parsed.
+     */
+    @Override
+    public AstNode parse(File file) {
+        ApexAstCache.Entry entry = cache == null ? null : cache.get(file);
+        if (entry != null) {
+            setTokenStream(entry.getTokenStream());
+            return entry.getAst().getRoot();
+        }
+        lastAst = null;
+        AstNode root = super.parse(file);
+        if (cache != null && lastAst != null && !isOverBudget()) {
+            cache.put(file, getTokenStream(), lastAst);
+        }
+        return root;
+    }
+
+    /**
+     * Parses a list of tokens into a compact tree.
+     *
+     * @param tokens the tokens.
+     * @return the root node of the compact tree.
+     * @throws RecognitionException when the tokens can not be parsed.
+     */
+    @Override
+    public AstNode parse(List<Token> tokens) {
+        lastAst = parseCompact(tokens);
+        return lastAst.getRoot();
+    }
+
+    /**
+     * Refuses to collapse some wrapper rules, since the compact trees keep every node.
+     *
+     * @param types the types to be collapsed, which must be empty.
+     * @param visitors the visitors of the parsed files.
+     * @exception UnsupportedOperationException when some types are collapsed.
+     */
+    @Override
+    public void setCollapsedTypes(Collection<? extends AstNodeType> types, Collection<? extends AstVisitor> visitors) {
+        if (!types.isEmpty()) {
+            throw new UnsupportedOperationException(String.format(COLLAPSE_UNSUPPORTED, types));
+        }
+        super.setCollapsedTypes(types, visitors);
+    }
+}
@@ -0,0 +1,572 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.AstVisitor;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.impl.LexerException;
+import com.sonar.sslr.impl.Parser;
+import com.sonar.sslr.impl.matcher.RuleDefinition;
+import org.sonar.sslr.grammar.GrammarRuleKey;
+import org.sonar.sslr.internal.matchers.LexerfulAstCreator;
+import org.sonar.sslr.internal.matchers.Matcher;
+import org.sonar.sslr.internal.matchers.ParseNode;
+import org.sonar.sslr.internal.vm.CompiledGrammar;
+import org.sonar.sslr.internal.vm.Instruction;
+import org.sonar.sslr.internal.vm.Machine;
+import org.sonar.sslr.internal.vm.MutableGrammarCompiler;
+
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexSinglePassLexer;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexTokenStream;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_NAME;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.FIELD_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.LITERAL_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_NAME;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TERMINAL_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TYPE;
+
+/**
+ * Parser that compiles its root rule once and reuses the compiled grammar for every parsed file, whereas
+ * the default {@link Parser} compiles it again on each call. The expressions are parsed in one pass by
+ * {@link ApexExpressionParser}, with the same nodes as the rules of the grammar, and the choices jump to the
+ * alternative predicted by {@link ApexChoicePredictor} for the next token.
+ */
+public class ApexCompiledParser extends Parser<Grammar> {
+
+    /**
+     * Stores the rules that usually wrap a single child, to be collapsed by
+     * {@link #setCollapsedTypes(Collection)}.
+     */
+    public static final List<GrammarRuleKey> WRAPPER_RULES = Collections.unmodifiableList(Arrays.asList(TYPE,
+            TERMINAL_EXPRESSION, EXPRESSION, LITERAL_EXPRESSION, STATEMENT, FIELD_DECLARATION, CLASS_NAME,
+            METHOD_NAME));
+
+    /**
+     * Stores the number of rule calls between two reads of the clock while a deadline is set.
+     */
+    private static final int CLOCK_INTERVAL = 1024;
+
+    /**
+     * Stores the lexer of the parser.
+     */
+    private final ApexSinglePassLexer lexer;
+
+    /**
+     * Stores the token stream of the last lexed source.
+     */
+    private ApexTokenStream tokenStream;
+
+    /**
+     * Stores the rule that was compiled.
+     */
+    private RuleDefinition compiledRule;
+
+    /**
+     * Stores the compiled grammar of the root rule.
+     */
+    private CompiledGrammar compiledGrammar;
+
+    /**
+     * Stores the types of the wrapper rules that are collapsed into their only child.
+     */
+    private Set<AstNodeType> collapsedTypes = Collections.emptySet();
+
+    /**
+     * Stores the visitors whose subscribed types are not collapsed.
+     */
+    private Collection<? extends AstVisitor> visitors = Collections.emptyList();
+
+    /**
+     * Stores the maximum number of tokens of a parsed file, 0 for no maximum.
+     */
+    private int maxTokens;
+
+    /**
+     * Stores the maximum milliseconds spent parsing a file, 0 for no maximum.
+     */
+    private long maxMillis;
+
+    /**
+     * Stores whether the current parse has a deadline.
+     */
+    private boolean hasDeadline;
+
+    /**
+     * Stores the value of {@link System#nanoTime()} after which the current parse is abandoned.
+     */
+    private long deadline;
+
+    /**
+     * Stores the number of rule calls since the clock was last read.
+     */
+    private int calls;
+
+    /**
+     * Stores whether the last parsed file or source code exceeded the budget.
+     */
+    private boolean overBudget;
+
+    /**
+     * Stores whether the last parsed file or source code exceeded the budget because its parse outlasted it.
+     */
+    private boolean timedOut;
+
+    /**
+     * Stores the compiled grammar whose rule calls check the deadline.
+     */
+    private CompiledGrammar checkedGrammar;
+
+    /**
+     * Default constructor.
+     *
+     * @param grammar grammar to be parsed.
+     * @param lexer lexer of the parser.
+     */
+    public ApexCompiledParser(Grammar grammar, ApexSinglePassLexer lexer) {
+        super(grammar);
+        this.lexer = lexer;
+        setRootRule(grammar.getRootRule());
+    }
+
+    /**
+     * Parses a file.
+     *
+     * @param file the file.
+     * @return the root node.
+     * @throws RecognitionException when the file can not be lexed or parsed.
+     */
+    @Override
+    public AstNode parse(File file) {
+        tokenStream = null;
+        overBudget = false;
+        timedOut = false;
+        try {
+            tokenStream = lexer.lexStream(file);
+        } catch (LexerException e) {
+            throw new RecognitionException(e);
+        }
+        return parseWithinBudget(tokenStream.toTokens());
+    }
+
+    /**
+     * Parses a source code.
+     *
+     * @param source the source code.
+     * @return the root node.
+     * @throws RecognitionException when the source can not be lexed or parsed.
+     */
+    @Override
+    public AstNode parse(String source) {
+        tokenStream = null;
+        overBudget = false;
+        timedOut = false;
+        try {
+            tokenStream = lexer.lexStream(source);
+        } catch (LexerException e) {
+            throw new RecognitionException(e);
+        }
+        return parseWithinBudget(tokenStream.toTokens());
+    }
+
+    /**
+     * Parses the tokens of a file within the budget of the parser. A file with too many tokens, or whose parse
+     * outlasts the budget, gets a tree of its tokens under the root node, which is enough for the metrics
+     * computed from the tokens, such as the lines of code and the comments.
+     *
+     * @param tokens the tokens.
+     * @return the root node.
+     * @throws RecognitionException when the tokens can not be parsed.
+     */
+    private AstNode parseWithinBudget(List<Token> tokens) {
+        if (maxTokens > 0 && tokens.size() > maxTokens) {
+            overBudget = true;
+            return createTokenTree(tokens);
+        }
+        hasDeadline = maxMillis > 0;
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        try {
+            return parse(tokens);
+        } catch (ApexBudgetException e) {
+            overBudget = true;
+            timedOut = true;
+            return createTokenTree(tokens);
+        }
+    }
+
+    /**
+     * Creates a node of the root rule whose children are the tokens.
+     *
+     * @param tokens the tokens.
+     * @return the root node.
+     */
+    private AstNode createTokenTree(List<Token> tokens) {
+        AstNode root = new AstNode(getRootRule().getRealAstNodeType(), getRootRule().getName(),
+                tokens.isEmpty() ? null : tokens.get(0));
+        root.setFromIndex(0);
+        root.setToIndex(tokens.size());
+        for (int index = 0; index < tokens.size(); index++) {
+            AstNode child = new AstNode(tokens.get(index));
+            child.setFromIndex(index);
+            child.setToIndex(index + 1);
+            root.addChild(child);
+        }
+        return root;
+    }
+
+    /**
+     * Parses a list of tokens with the compiled root rule.
+     *
+     * @param tokens the tokens.
+     * @return the root node.
+     * @throws RecognitionException when the tokens can not be parsed.
+     */
+    @Override
+    public AstNode parse(List<Token> tokens) {
+        ParseNode parseNode = Machine.parse(tokens, getCheckedGrammar());
+        Set<AstNodeType> types = getCollapsedTypes();
+        if (types.isEmpty()) {
+            return LexerfulAstCreator.create(parseNode, tokens);
+        }
+        return ApexAstCreator.create(parseNode, tokens, types);
+    }
+
+    /**
+     * Parses a list of tokens with the compiled root rule into a compact tree.
+     *
+     * @param tokens the tokens.
+     * @return the compact tree.
+     * @throws RecognitionException when the tokens can not be parsed.
+     */
+    public ApexCompactAst parseCompact(List<Token> tokens) {
+        return ApexCompactAst.create(Machine.parse(tokens, getCheckedGrammar()), tokens);
+    }
+
+    /**
+     * Sets the types of the wrapper rules, such as {@link #WRAPPER_RULES}, whose nodes are replaced by their
+     * only child while the tree is built. The child is also of the types of the collapsed wrappers, but the
+     * walkers only visit it as a node of its own type.
+     *
+     * @param types the types to be collapsed, none by default.
+     */
+    public void setCollapsedTypes(Collection<? extends AstNodeType> types) {
+        setCollapsedTypes(types, Collections.<AstVisitor>emptyList());
+    }
+
+    /**
+     * Sets the types of the wrapper rules whose nodes are replaced by their only child, except the types that
+     * the visitors subscribe to, so every visitor is notified of the nodes of its types. The subscriptions are
+     * read on each parse.
+     *
+     * @param types the types to be collapsed.
+     * @param visitors the visitors of the parsed files.
+     */
+    public void setCollapsedTypes(Collection<? extends AstNodeType> types, Collection<? extends AstVisitor> visitors) {
+        this.collapsedTypes = Collections.unmodifiableSet(new HashSet<>(types));
+        this.visitors = visitors;
+    }
+
+    /**
+     * Sets the budget of a parsed file or source code. A file with more tokens, or whose parse takes longer,
+     * is not parsed by the grammar: its tree only has the tokens under the root node. The time is checked
+     * on the calls to the rules, so it is exceeded by the time of one rule call at most.
+     *
+     * @param maxTokens maximum number of tokens, 0 for no maximum.
+     * @param maxMillis maximum milliseconds spent parsing, 0 for no maximum.
+     */
+    public void setBudget(int maxTokens, long maxMillis) {
+        this.maxTokens = maxTokens;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * Marks the last parsed file as over the budget because its visit outlasted it, and returns the tree of
+     * its tokens, which replaces its tree for the rest of the visit.
+     *
+     * @return the root node of the tokens.
+     */
+    public AstNode timeOut() {
+        overBudget = true;
+        timedOut = true;
+        return createTokenTree(tokenStream.toTokens());
+    }
+
+    /**
+     * Returns whether the last parsed file or source code exceeded the budget, so its tree only has its
+     * tokens.
+     *
+     * @return true when the file exceeded the budget.
+     */
+    public boolean isOverBudget() {
+        return overBudget;
+    }
+
+    /**
+     * Returns whether the last parsed file or source code exceeded the budget because its parse or its visit
+     * outlasted it, rather than because it had too many tokens.
+     *
+     * @return true when the parse of the file timed out.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Collapses the same wrapper rules as another parser and parses before the deadline of its current
+     * parse.
+     *
+     * @param parser the other parser.
+     */
+    void collapseLike(ApexCompiledParser parser) {
+        collapsedTypes = parser.getCollapsedTypes();
+        visitors = Collections.emptyList();
+        maxMillis = parser.maxMillis;
+        hasDeadline = parser.hasDeadline;
+        deadline = parser.deadline;
+    }
+
+    /**
+     * Checks the deadline of the current parse, reading the clock once every {@link #CLOCK_INTERVAL} calls.
+     *
+     * @throws ApexBudgetException when the deadline has passed.
+     */
+    void checkDeadline() {
+        if (hasDeadline && ++calls >= CLOCK_INTERVAL) {
+            calls = 0;
+            if (System.nanoTime() - deadline > 0) {
+                throw new ApexBudgetException(maxMillis);
+            }
+        }
+    }
+
+    /**
+     * Returns the types of the wrapper rules that are collapsed, without the types that the visitors subscribe
+     * to.
+     *
+     * @return the types.
+     */
+    Set<AstNodeType> getCollapsedTypes() {
+        if (collapsedTypes.isEmpty() || visitors.isEmpty()) {
+            return collapsedTypes;
+        }
+        Set<AstNodeType> types = new HashSet<>(collapsedTypes);
+        for (AstVisitor visitor : visitors) {
+            types.removeAll(visitor.getAstNodeTypesToVisit());
+        }
+        return types;
+    }
+
+    /**
+     * Resets the parser for a new use. The compiled grammar and the buffers of the lexer are kept.
+     */
+    public void reset() {
+        tokenStream = null;
+        lexer.reset();
+    }
+
+    /**
+     * Returns the lexer of the parser.
+     *
+     * @return the lexer.
+     */
+    public ApexSinglePassLexer getLexer() {
+        return lexer;
+    }
+
+    /**
+     * Returns the token stream of the last lexed file or source code, with its line starts.
+     *
+     * @return the stream, or null when the last source could not be lexed.
+     */
+    public ApexTokenStream getTokenStream() {
+        return tokenStream;
+    }
+
+    /**
+     * Sets the token stream of the last file, which was not lexed by this parser.
+     *
+     * @param stream the stream.
+     */
+    void setTokenStream(ApexTokenStream stream) {
+        tokenStream = stream;
+        overBudget = false;
+        timedOut = false;
+    }
+
+    /**
+     * Returns the compiled grammar of the current root rule, compiling it when the root rule changes.
+     *
+     * @return the compiled grammar.
+     */
+    protected CompiledGrammar getCompiledGrammar() {
+        RuleDefinition rootRule = getRootRule();
+        if (compiledGrammar == null || compiledRule != rootRule) {
+            compiledGrammar = MutableGrammarCompiler.compile(rootRule);
+            compiledRule = rootRule;
+            if (predictsChoices()) {
+                new ApexChoicePredictor(getGrammar(), compiledGrammar.getInstructions()).predict();
+            }
+            if (parsesExpressions()) {
+                replaceExpressions(compiledGrammar.getInstructions());
+            }
+        }
+        return compiledGrammar;
+    }
+
+    /**
+     * Returns the compiled grammar, whose rule calls check the deadline of the current parse once the parser
+     * has a time budget.
+     *
+     * @return the compiled grammar.
+     */
+    private CompiledGrammar getCheckedGrammar() {
+        CompiledGrammar compiled = getCompiledGrammar();
+        if (maxMillis > 0 && compiled != checkedGrammar) {
+            Instruction[] instructions = compiled.getInstructions();
+            for (int address = 0; address < instructions.length; address++) {
+                if (instructions[address] instanceof Instruction.CallInstruction) {
+                    instructions[address] = new CheckedCall(instructions[address], this);
+                }
+            }
+            checkedGrammar = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns whether the choices of the grammar jump to the alternative predicted by
+     * {@link ApexChoicePredictor} for the next token, instead of trying each alternative in order.
+     *
+     * @return true by default.
+     */
+    protected boolean predictsChoices() {
+        return true;
+    }
+
+    /**
+     * Returns whether the expressions are parsed by {@link ApexExpressionParser} instead of the rules of the
+     * grammar.
+     *
+     * @return true by default.
+     */
+    protected boolean parsesExpressions() {
+        return true;
+    }
+
+    /**
+     * Replaces the calls to the expression rule with an expression parser. The compiled grammar belongs to
+     * this parser, so its instructions are replaced in place.
+     *
+     * @param instructions the compiled instructions.
+     */
+    private void replaceExpressions(Instruction[] instructions) {
+        Matcher expression = (Matcher) getGrammar().rule(EXPRESSION);
+        ApexExpressionParser expressionParser = new ApexExpressionParser(getGrammar());
+        for (int address = 0; address < instructions.length; address++) {
+            if (isCall(instructions[address], expression)) {
+                instructions[address] = expressionParser;
+            }
+        }
+    }
+
+    /**
+     * Shifts the token indexes of a node parsed from a sub list of tokens to the indexes of the whole list.
+     *
+     * @param node the node.
+     * @param offset the index of the first token of the sub list.
+     */
+    static void shiftIndexes(AstNode node, int offset) {
+        node.setFromIndex(node.getFromIndex() + offset);
+        node.setToIndex(node.getToIndex() + offset);
+        for (AstNode child : node.getChildren()) {
+            shiftIndexes(child, offset);
+        }
+    }
+
+    /**
+     * Returns whether an instruction calls a rule. A call instruction only exposes its offset, as its hash
+     * code, so it is compared with a call to the rule from that offset.
+     *
+     * @param instruction the instruction.
+     * @param rule the matcher of the rule.
+     * @return true when the instruction calls the rule.
+     */
+    static boolean isCall(Instruction instruction, Matcher rule) {
+        return instruction instanceof Instruction.CallInstruction
+                && instruction.equals(Instruction.call(instruction.hashCode(), rule));
+    }
+
+    /**
+     * Call to a rule that first checks the deadline of the parser.
+     */
+    private static final class CheckedCall extends Instruction {
+
+        /**
+         * Stores the replaced call.
+         */
+        private final Instruction call;
+
+        /**
+         * Stores the parser whose deadline is checked.
+         */
+        private final ApexCompiledParser parser;
+
+        /**
+         * Default constructor.
+         *
+         * @param call the replaced call.
+         * @param parser the parser.
+         */
+        CheckedCall(Instruction call, ApexCompiledParser parser) {
+            this.call = call;
+            this.parser = parser;
+        }
+
+        /**
+         * Checks the deadline and calls the rule.
+         *
+         * @param machine the machine.
+         */
+        @Override
+        public void execute(Machine machine) {
+            parser.checkDeadline();
+            call.execute(machine);
+        }
+    }
+}
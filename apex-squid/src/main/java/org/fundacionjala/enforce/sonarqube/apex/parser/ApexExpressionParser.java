@@ -0,0 +1,548 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.TokenType;
+import org.sonar.sslr.internal.matchers.Matcher;
+import org.sonar.sslr.internal.matchers.ParseNode;
+import org.sonar.sslr.internal.vm.Instruction;
+import org.sonar.sslr.internal.vm.Machine;
+import org.sonar.sslr.internal.vm.lexerful.TokenTypeExpression;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
+
+import static com.sonar.sslr.api.GenericTokenType.IDENTIFIER;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.BOOLEAN;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.BYTE;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.CHAR;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.DOUBLE;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.FLOAT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.INT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.LONG;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.NEW;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.NULL;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.SHORT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.SUPER;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.THIS;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword.VOID;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.ASSIGN;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.COMMA;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.DIV;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.DOT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.GT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.LPAREN;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.LT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.MINUS;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.MOD;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.PLUS;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.RPAREN;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator.STAR;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexTokenType.NUMERIC;
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexTokenType.STRING;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.ARGUMENTS;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CASTING_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_NAME;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CREATING_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.DEC;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.EQUAL;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.INC;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.INVOKE_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.LITERAL_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.NUMERIC_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.NUMERIC_EXPRESSION_OPERATIONS;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.NUMERIC_EXPRESSION_OPERATIONS_SIMPLE;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TERMINAL_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TESTING_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TYPE;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TYPE_SPECIFIER;
+
+/**
+ * One-pass parser of the expression rule, executed by the parsing machine in place of the calls to that
+ * rule. The terminal expression that starts an expression is parsed once and the operator that follows
+ * it selects the rule of the expression, instead of trying each alternative of the grammar from the same
+ * token. The language and the nodes are the ones of the grammar: an operation has a terminal expression on
+ * each side of a single operator, and the nodes are created with the rules of the grammar.
+ */
+final class ApexExpressionParser extends Instruction {
+
+    /**
+     * Stores the binary operators of a numeric expression.
+     */
+    private static final TokenType[] NUMERIC_OPERATORS = {PLUS, MINUS, STAR, DIV, MOD};
+
+    /**
+     * Stores the keywords of a type specifier.
+     */
+    private static final TokenType[] TYPE_KEYWORDS = {
+        BOOLEAN, CHAR, BYTE, SHORT, INT, LONG, FLOAT, VOID, DOUBLE
+    };
+
+    /**
+     * Stores the matchers of the rules of the grammar.
+     */
+    private final Map<ApexGrammarRuleKey, Matcher> rules = new EnumMap<>(ApexGrammarRuleKey.class);
+
+    /**
+     * Stores the matchers of the tokens by type.
+     */
+    private final Map<TokenType, Matcher> terminals = new IdentityHashMap<>();
+
+    /**
+     * Stores the matcher of the expression rule.
+     */
+    private final Matcher expressionRule;
+
+    /**
+     * Stores the machine that executes the parser.
+     */
+    private Machine machine;
+
+    /**
+     * Stores the index of the token where the expression starts.
+     */
+    private int base;
+
+    /**
+     * Stores the index of the current token.
+     */
+    private int position;
+
+    /**
+     * Stores the index of the last token that did not match.
+     */
+    private int failedAt;
+
+    /**
+     * Stores the furthest index where a rule failed, or -1.
+     */
+    private int errorIndex;
+
+    /**
+     * Default constructor.
+     *
+     * @param grammar grammar whose rules are used for the nodes.
+     */
+    ApexExpressionParser(Grammar grammar) {
+        for (ApexGrammarRuleKey key : Arrays.asList(EXPRESSION, NUMERIC_EXPRESSION, NUMERIC_EXPRESSION_OPERATIONS,
+                NUMERIC_EXPRESSION_OPERATIONS_SIMPLE, INC, DEC, TESTING_EXPRESSION, EQUAL, CREATING_EXPRESSION,
+                CASTING_EXPRESSION, TYPE, TYPE_SPECIFIER, CLASS_NAME, TERMINAL_EXPRESSION, INVOKE_EXPRESSION,
+                ARGUMENTS, LITERAL_EXPRESSION)) {
+            rules.put(key, (Matcher) grammar.rule(key));
+        }
+        expressionRule = rules.get(EXPRESSION);
+    }
+
+    /**
+     * Parses an expression from the current token. When it matches, its node is added to the current node
+     * and the machine goes on with the next instruction; otherwise the machine backtracks.
+     * <p>
+     * The machine locates a parse error at the furthest token where a rule failed, and it only sees the rules
+     * that it calls. So the furthest failure of the rules parsed here is reported to it by failing a call to
+     * the expression rule at that token, under a choice when the expression matched.
+     *
+     * @param machine the parsing machine.
+     */
+    @Override
+    public void execute(Machine machine) {
+        this.machine = machine;
+        base = machine.getIndex();
+        position = base;
+        failedAt = base;
+        errorIndex = -1;
+        ParseNode node = expression();
+        this.machine = null;
+        if (node == null) {
+            reportError(machine);
+        } else {
+            machine.setIndex(node.getEndIndex());
+            if (errorIndex >= 0) {
+                machine.pushBacktrack(1);
+                reportError(machine);
+            } else {
+                machine.jump(1);
+            }
+            machine.peek().subNodes().add(node);
+        }
+    }
+
+    /**
+     * Returns the name of the instruction.
+     *
+     * @return the description.
+     */
+    @Override
+    public String toString() {
+        return "Expression";
+    }
+
+    /**
+     * Fails a call to the expression rule at the furthest token where a rule failed, so the machine records
+     * it and backtracks. The call targets the next instruction, which never starts a rule, so it is not
+     * taken for a left recursion of the rule that starts with this instruction.
+     *
+     * @param machine the parsing machine.
+     */
+    private void reportError(Machine machine) {
+        machine.pushReturn(1, expressionRule, 1);
+        machine.setIndex(errorIndex);
+        machine.backtrack();
+    }
+
+    /**
+     * Parses an expression. The terminal expression at its start is shared by the numeric and the testing
+     * expressions and by the terminal alternative.
+     *
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode expression() {
+        int start = position;
+        ParseNode terminal = terminalExpression();
+        int afterTerminal = position;
+        ParseNode child = null;
+        if (terminal != null) {
+            child = numericExpression(start, terminal, afterTerminal);
+            if (child == null) {
+                child = testingExpression(start, terminal, afterTerminal);
+            }
+        }
+        if (child == null) {
+            position = start;
+            child = creatingExpression();
+        }
+        if (child == null) {
+            child = castingExpression();
+        }
+        if (child == null && terminal != null) {
+            position = afterTerminal;
+            child = terminal;
+        }
+        return child == null ? failed(start) : rule(EXPRESSION, start, child);
+    }
+
+    /**
+     * Parses a numeric expression after its terminal expression: a binary operation or an increment or a
+     * decrement.
+     *
+     * @param start index of the first token.
+     * @param terminal the terminal expression.
+     * @param afterTerminal index of the token after the terminal expression.
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode numericExpression(int start, ParseNode terminal, int afterTerminal) {
+        position = afterTerminal;
+        ParseNode operator = token(NUMERIC_OPERATORS);
+        ParseNode right = operator == null ? null : terminalExpression();
+        if (right != null) {
+            return rule(NUMERIC_EXPRESSION, start,
+                    rule(NUMERIC_EXPRESSION_OPERATIONS, start, terminal, operator, right));
+        }
+        failed(afterTerminal);
+        ParseNode unary = pair(INC, PLUS);
+        if (unary == null) {
+            unary = pair(DEC, MINUS);
+        }
+        if (unary == null) {
+            return failed(afterTerminal);
+        }
+        return rule(NUMERIC_EXPRESSION, start, rule(NUMERIC_EXPRESSION_OPERATIONS_SIMPLE, start, terminal, unary));
+    }
+
+    /**
+     * Parses a testing expression after its terminal expression.
+     *
+     * @param start index of the first token.
+     * @param terminal the terminal expression.
+     * @param afterTerminal index of the token after the terminal expression.
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode testingExpression(int start, ParseNode terminal, int afterTerminal) {
+        position = afterTerminal;
+        ParseNode operator = pair(EQUAL, ASSIGN);
+        if (operator == null) {
+            operator = token(GT, LT);
+        }
+        ParseNode right = operator == null ? null : terminalExpression();
+        return right == null ? failed(afterTerminal) : rule(TESTING_EXPRESSION, start, terminal, operator, right);
+    }
+
+    /**
+     * Parses the creation of an object.
+     *
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode creatingExpression() {
+        int start = position;
+        List<ParseNode> children = new ArrayList<>();
+        if (!add(children, token(NEW)) || !add(children, className()) || !add(children, token(LPAREN))) {
+            return failed(start);
+        }
+        ParseNode identifier = token(IDENTIFIER);
+        if (identifier != null) {
+            children.add(identifier);
+            separatedBy(children, () -> token(IDENTIFIER));
+        }
+        if (!add(children, token(RPAREN))) {
+            return failed(start);
+        }
+        return rule(CREATING_EXPRESSION, start, children);
+    }
+
+    /**
+     * Parses the casting of a terminal expression.
+     *
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode castingExpression() {
+        int start = position;
+        List<ParseNode> children = new ArrayList<>();
+        if (!add(children, token(LPAREN)) || !add(children, type()) || !add(children, token(RPAREN))
+                || !add(children, terminalExpression())) {
+            return failed(start);
+        }
+        return rule(CASTING_EXPRESSION, start, children);
+    }
+
+    /**
+     * Parses a type.
+     *
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode type() {
+        int start = position;
+        ParseNode specifier = token(TYPE_KEYWORDS);
+        if (specifier == null) {
+            specifier = className();
+        }
+        if (specifier == null) {
+            return failed(start);
+        }
+        return rule(TYPE, start, rule(TYPE_SPECIFIER, start, specifier));
+    }
+
+    /**
+     * Parses a class name.
+     *
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode className() {
+        int start = position;
+        ParseNode identifier = token(IDENTIFIER);
+        return identifier == null ? failed(start) : rule(CLASS_NAME, start, identifier);
+    }
+
+    /**
+     * Parses a terminal expression.
+     *
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode terminalExpression() {
+        int start = position;
+        ParseNode child = invokeExpression();
+        if (child == null) {
+            ParseNode literal = token(STRING, NUMERIC);
+            child = literal == null ? failed(start) : rule(LITERAL_EXPRESSION, start, literal);
+        }
+        if (child == null) {
+            child = token(NULL, SUPER, THIS);
+        }
+        return child == null ? failed(start) : rule(TERMINAL_EXPRESSION, start, child);
+    }
+
+    /**
+     * Parses an invocation, with its arguments and the invocations chained to it.
+     *
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode invokeExpression() {
+        int start = position;
+        ParseNode identifier = token(IDENTIFIER);
+        if (identifier == null) {
+            return failed(start);
+        }
+        List<ParseNode> children = new ArrayList<>();
+        children.add(identifier);
+        int beforeLparen = position;
+        ParseNode lparen = token(LPAREN);
+        if (lparen != null) {
+            ParseNode arguments = arguments();
+            ParseNode rparen = token(RPAREN);
+            if (rparen == null) {
+                position = beforeLparen;
+            } else {
+                children.add(lparen);
+                add(children, arguments);
+                children.add(rparen);
+            }
+        }
+        while (true) {
+            int beforeDot = position;
+            ParseNode dot = token(DOT);
+            ParseNode next = dot == null ? null : invokeExpression();
+            if (next == null) {
+                position = beforeDot;
+                break;
+            }
+            children.add(dot);
+            children.add(next);
+        }
+        return rule(INVOKE_EXPRESSION, start, children);
+    }
+
+    /**
+     * Parses the arguments of an invocation.
+     *
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode arguments() {
+        int start = position;
+        ParseNode first = terminalExpression();
+        if (first == null) {
+            return failed(start);
+        }
+        List<ParseNode> children = new ArrayList<>();
+        children.add(first);
+        separatedBy(children, this::terminalExpression);
+        return rule(ARGUMENTS, start, children);
+    }
+
+    /**
+     * Parses the elements that follow a comma, as many as match.
+     *
+     * @param children the nodes where the commas and the elements are added.
+     * @param element the parser of an element.
+     */
+    private void separatedBy(List<ParseNode> children, Supplier<ParseNode> element) {
+        while (true) {
+            int beforeComma = position;
+            ParseNode comma = token(COMMA);
+            ParseNode next = comma == null ? null : element.get();
+            if (next == null) {
+                position = beforeComma;
+                return;
+            }
+            children.add(comma);
+            children.add(next);
+        }
+    }
+
+    /**
+     * Parses two tokens of the same type as a rule, such as the increment.
+     *
+     * @param key the rule.
+     * @param type the type of both tokens.
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode pair(ApexGrammarRuleKey key, TokenType type) {
+        int start = position;
+        ParseNode first = token(type);
+        ParseNode second = first == null ? null : token(type);
+        return second == null ? failed(start) : rule(key, start, first, second);
+    }
+
+    /**
+     * Parses the current token when it has one of some types, tried in order.
+     *
+     * @param types the types.
+     * @return the node, or null when it does not match.
+     */
+    private ParseNode token(TokenType... types) {
+        int offset = position - base;
+        if (offset < machine.length()) {
+            TokenType type = machine.tokenAt(offset).getType();
+            for (TokenType expected : types) {
+                if (type == expected) {
+                    ParseNode node = new ParseNode(position, position + 1,
+                            terminals.computeIfAbsent(type, TokenTypeExpression::new));
+                    position++;
+                    return node;
+                }
+            }
+        }
+        failedAt = position;
+        return null;
+    }
+
+    /**
+     * Records the failure of a rule at the last token that did not match, as the machine does when it
+     * backtracks out of a rule, and goes back to the first token of the rule.
+     *
+     * @param start index of the first token of the rule.
+     * @return null.
+     */
+    private ParseNode failed(int start) {
+        errorIndex = Math.max(errorIndex, failedAt);
+        position = start;
+        return null;
+    }
+
+    /**
+     * Adds a node to a list when it matched.
+     *
+     * @param children the list.
+     * @param node the node, or null.
+     * @return true when the node matched.
+     */
+    private static boolean add(List<ParseNode> children, ParseNode node) {
+        if (node == null) {
+            return false;
+        }
+        children.add(node);
+        return true;
+    }
+
+    /**
+     * Creates the node of a rule that ends at the current token.
+     *
+     * @param key the rule.
+     * @param start index of the first token.
+     * @param children the children.
+     * @return the node.
+     */
+    private ParseNode rule(ApexGrammarRuleKey key, int start, ParseNode... children) {
+        return rule(key, start, Arrays.asList(children));
+    }
+
+    /**
+     * Creates the node of a rule that ends at the current token.
+     *
+     * @param key the rule.
+     * @param start index of the first token.
+     * @param children the children.
+     * @return the node.
+     */
+    private ParseNode rule(ApexGrammarRuleKey key, int start, List<ParseNode> children) {
+        return new ParseNode(start, position, children, rules.get(key));
+    }
+}
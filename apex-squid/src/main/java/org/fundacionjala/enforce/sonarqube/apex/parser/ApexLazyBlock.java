@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.List;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.api.Token;
+
+/**
+ * Block of statements whose children are its tokens until its descendants are searched. The first search for
+ * a type that can be found in a block parses the tokens with the grammar and replaces the children with the
+ * statements of the block, which are kept for the later searches. A walker that only visits the tokens of the
+ * block does not parse it, since it only gets the children of the node, and the ancestors of the block, see
+ * {@link ApexLazyNode}, parse it before a search of their descendants for a type that can be found in it.
+ */
+final class ApexLazyBlock extends ApexAliasedNode {
+
+    /**
+     * Stores the parser of the blocks.
+     */
+    private final ApexLazyParser parser;
+
+    /**
+     * Stores the tokens of the parsed source.
+     */
+    private final List<Token> tokens;
+
+    /**
+     * Stores whether the block was parsed.
+     */
+    private boolean parsed;
+
+    /**
+     * Default constructor.
+     *
+     * @param block the block of tokens built by the outline grammar.
+     * @param parser the parser of the blocks.
+     * @param tokens the tokens of the parsed source.
+     */
+    ApexLazyBlock(AstNode block, ApexLazyParser parser, List<Token> tokens) {
+        super(block.getType(), block.getName(), block.getToken());
+        this.parser = parser;
+        this.tokens = tokens;
+        setFromIndex(block.getFromIndex());
+        setToIndex(block.getToIndex());
+        for (AstNode child : block.getChildren()) {
+            addChild(child);
+        }
+    }
+
+    /**
+     * Returns whether the block was parsed.
+     *
+     * @return true when the children of the block are its statements.
+     */
+    boolean isParsed() {
+        return parsed;
+    }
+
+    /**
+     * Parses the block, once. A block that the grammar can not parse keeps its tokens as children, and is
+     * counted by the parser as a failed block.
+     */
+    void parse() {
+        if (parsed) {
+            return;
+        }
+        parsed = true;
+        AstNode block;
+        try {
+            block = parser.parseBlock(tokens.subList(getFromIndex(), getToIndex()));
+        } catch (RecognitionException e) {
+            parser.blockFailed();
+            return;
+        }
+        ApexCompiledParser.shiftIndexes(block, getFromIndex());
+        getChildren().clear();
+        for (AstNode child : block.getChildren()) {
+            addChild(child);
+        }
+    }
+
+    /**
+     * Parses the block when a node of some types can be found inside it. A search for the other types finds
+     * the same nodes in the tokens of the block, which are none.
+     *
+     * @param nodeTypes the searched types.
+     */
+    private void parseFor(AstNodeType... nodeTypes) {
+        if (ApexLazyParser.isBlockType(nodeTypes)) {
+            parse();
+        }
+    }
+
+    /**
+     * Returns the first descendant of some types, after parsing the block when needed.
+     *
+     * @param nodeTypes the types.
+     * @return the descendant, or null when there is none.
+     */
+    @Override
+    public AstNode getFirstDescendant(AstNodeType... nodeTypes) {
+        parseFor(nodeTypes);
+        return super.getFirstDescendant(nodeTypes);
+    }
+
+    /**
+     * Returns the descendants of some types, after parsing the block when needed.
+     *
+     * @param nodeTypes the types.
+     * @return the descendants.
+     */
+    @Override
+    public List<AstNode> getDescendants(AstNodeType... nodeTypes) {
+        parseFor(nodeTypes);
+        return super.getDescendants(nodeTypes);
+    }
+
+    /**
+     * Returns whether the block has a descendant of some types, after parsing the block when needed.
+     *
+     * @param nodeTypes the types.
+     * @return true when there is a descendant.
+     */
+    @Override
+    public boolean hasDescendant(AstNodeType... nodeTypes) {
+        parseFor(nodeTypes);
+        return super.hasDescendant(nodeTypes);
+    }
+
+    /**
+     * Returns the first child of some types, after parsing the block when needed.
+     *
+     * @param nodeTypes the types.
+     * @return the child, or null when there is none.
+     */
+    @Override
+    public AstNode getFirstChild(AstNodeType... nodeTypes) {
+        parseFor(nodeTypes);
+        return super.getFirstChild(nodeTypes);
+    }
+
+    /**
+     * Returns the children of some types, after parsing the block when needed.
+     *
+     * @param nodeTypes the types.
+     * @return the children.
+     */
+    @Override
+    public List<AstNode> getChildren(AstNodeType... nodeTypes) {
+        parseFor(nodeTypes);
+        return super.getChildren(nodeTypes);
+    }
+
+    /**
+     * Returns the last child of some types, after parsing the block when needed.
+     *
+     * @param nodeTypes the types.
+     * @return the child, or null when there is none.
+     */
+    @Override
+    public AstNode getLastChild(AstNodeType... nodeTypes) {
+        parseFor(nodeTypes);
+        return super.getLastChild(nodeTypes);
+    }
+
+    /**
+     * Returns whether the block has a child of some types, after parsing the block when needed.
+     *
+     * @param nodeTypes the types.
+     * @return true when there is a child.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean hasChildren(AstNodeType... nodeTypes) {
+        parseFor(nodeTypes);
+        return super.hasChildren(nodeTypes);
+    }
+
+    /**
+     * Returns whether the block has a direct child of some types, after parsing the block when needed.
+     *
+     * @param nodeTypes the types.
+     * @return true when there is a child.
+     */
+    @Override
+    public boolean hasDirectChildren(AstNodeType... nodeTypes) {
+        parseFor(nodeTypes);
+        return super.hasDirectChildren(nodeTypes);
+    }
+}
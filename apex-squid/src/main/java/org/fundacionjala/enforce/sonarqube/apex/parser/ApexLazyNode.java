@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.List;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+
+/**
+ * Ancestor of a {@link ApexLazyBlock}. The search of the descendants of a node only calls the methods of the
+ * node itself, so an ancestor parses the blocks below it before a search for a type that can be found in a
+ * block, and the other searches leave the blocks unparsed.
+ */
+final class ApexLazyNode extends ApexAliasedNode {
+
+    /**
+     * Default constructor.
+     *
+     * @param node the node built by the outline grammar, whose children are not copied.
+     */
+    ApexLazyNode(AstNode node) {
+        super(node.getType(), node.getName(), node.getToken());
+        setFromIndex(node.getFromIndex());
+        setToIndex(node.getToIndex());
+        if (node instanceof ApexAliasedNode) {
+            for (AstNodeType alias : ((ApexAliasedNode) node).getAliases()) {
+                addAlias(alias);
+            }
+        }
+    }
+
+    /**
+     * Returns the descendants of some types, after parsing the blocks below the node when needed.
+     *
+     * @param nodeTypes the types.
+     * @return the descendants.
+     */
+    @Override
+    public List<AstNode> getDescendants(AstNodeType... nodeTypes) {
+        if (ApexLazyParser.isBlockType(nodeTypes)) {
+            parseBlocks(this);
+        }
+        return super.getDescendants(nodeTypes);
+    }
+
+    /**
+     * Parses the blocks below a node.
+     *
+     * @param node the node.
+     */
+    private static void parseBlocks(AstNode node) {
+        for (AstNode child : node.getChildren()) {
+            if (child instanceof ApexLazyBlock) {
+                ((ApexLazyBlock) child).parse();
+            } else if (child instanceof ApexLazyNode) {
+                parseBlocks(child);
+            }
+        }
+    }
+}
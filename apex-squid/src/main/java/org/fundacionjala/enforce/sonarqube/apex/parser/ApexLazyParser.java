@@ -0,0 +1,231 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.AstVisitor;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.impl.matcher.RuleDefinition;
+import org.sonar.sslr.internal.matchers.Matcher;
+import org.sonar.sslr.internal.vm.Instruction;
+import org.sonar.sslr.internal.vm.MutableGrammarCompiler;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexGrammar;
+import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexSinglePassLexer;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT_BLOCK;
+
+/**
+ * Compiled parser of the outline grammar whose blocks of statements are parsed the first time that their
+ * descendants are searched, see {@link ApexLazyBlock}. A visitor only visits the nodes of its subscribed
+ * types that the walker reaches, so the files are parsed with the full grammar when a visitor subscribes to
+ * a rule that can be found inside a block. The blocks that the grammar rejects when they are searched are
+ * counted for the last parsed file, see {@link #getFailedBlocks()}.
+ */
+public class ApexLazyParser extends ApexCompiledParser {
+
+    /**
+     * Stores the visitors of the parsed files.
+     */
+    private final Collection<? extends AstVisitor> visitors;
+
+    /**
+     * Stores the parser of the full grammar.
+     */
+    private final ApexCompiledParser parser;
+
+    /**
+     * Stores the parser of the blocks of statements.
+     */
+    private final ApexCompiledParser blockParser;
+
+    /**
+     * Stores the number of blocks of the last parsed file that the grammar rejected.
+     */
+    private int failedBlocks;
+
+    /**
+     * Default constructor.
+     *
+     * @param lexer lexer of the parser.
+     * @param visitors visitors of the parsed files, whose subscriptions are read on each parse.
+     */
+    public ApexLazyParser(ApexSinglePassLexer lexer, Collection<? extends AstVisitor> visitors) {
+        super(ApexGrammar.getOutlineInstance(), lexer);
+        this.visitors = visitors;
+        parser = new ApexCompiledParser(ApexGrammar.getInstance(), lexer);
+        blockParser = new ApexCompiledParser(ApexGrammar.getInstance(), lexer);
+        blockParser.setRootRule(ApexGrammar.getInstance().rule(STATEMENT_BLOCK));
+    }
+
+    /**
+     * Parses a list of tokens, leaving the blocks of statements to be parsed on demand unless a visitor
+     * subscribes to a rule of the blocks.
+     *
+     * @param tokens the tokens.
+     * @return the root node.
+     * @throws com.sonar.sslr.api.RecognitionException when the tokens can not be parsed.
+     */
+    @Override
+    public AstNode parse(List<Token> tokens) {
+        failedBlocks = 0;
+        if (visitsBlocks()) {
+            parser.collapseLike(this);
+            return parser.parse(tokens);
+        }
+        return replaceBlocks(super.parse(tokens), tokens);
+    }
+
+    /**
+     * Returns the number of blocks of the last parsed file that were searched and rejected by the grammar.
+     * The blocks that were never searched are not counted.
+     *
+     * @return the failed blocks.
+     */
+    public int getFailedBlocks() {
+        return failedBlocks;
+    }
+
+    /**
+     * Counts a block that the grammar rejected.
+     */
+    void blockFailed() {
+        failedBlocks++;
+    }
+
+    /**
+     * Parses the tokens of a block of statements with the full grammar.
+     *
+     * @param tokens the tokens of the block, from its left brace to its right brace.
+     * @return the block node, whose token indexes start from zero.
+     * @throws com.sonar.sslr.api.RecognitionException when the tokens can not be parsed.
+     */
+    AstNode parseBlock(List<Token> tokens) {
+        blockParser.collapseLike(this);
+        return blockParser.parse(tokens);
+    }
+
+    /**
+     * Returns whether a visitor subscribes to a node type that can be found inside a block of statements.
+     *
+     * @return true when the blocks must be parsed eagerly.
+     */
+    private boolean visitsBlocks() {
+        for (AstVisitor visitor : visitors) {
+            if (isBlockType(visitor.getAstNodeTypesToVisit().toArray(new AstNodeType[0]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a node of some types can be found inside a block of statements. Every token type can be
+     * found inside a block.
+     *
+     * @param types the types.
+     * @return true when a type is a token type or a rule of the blocks.
+     */
+    static boolean isBlockType(AstNodeType... types) {
+        for (AstNodeType type : types) {
+            if (!(type instanceof ApexGrammarRuleKey) || BlockRules.RULES.contains(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the blocks of statements under a node with lazy blocks, and their ancestors with lazy nodes.
+     * The other nodes are kept.
+     *
+     * @param node the node.
+     * @param tokens the parsed tokens.
+     * @return the node, or its replacement.
+     */
+    private AstNode replaceBlocks(AstNode node, List<Token> tokens) {
+        if (node.is(STATEMENT_BLOCK)) {
+            return new ApexLazyBlock(node, this, tokens);
+        }
+        List<AstNode> children = new ArrayList<>(node.getChildren());
+        boolean hasBlocks = false;
+        for (int index = 0; index < children.size(); index++) {
+            AstNode child = replaceBlocks(children.get(index), tokens);
+            hasBlocks |= child != children.get(index);
+            children.set(index, child);
+        }
+        if (!hasBlocks) {
+            return node;
+        }
+        AstNode lazyNode = new ApexLazyNode(node);
+        for (AstNode child : children) {
+            lazyNode.addChild(child);
+        }
+        return lazyNode;
+    }
+
+    /**
+     * Holder of the rules that can be found inside a block of statements of the full grammar.
+     */
+    private static class BlockRules {
+
+        /**
+         * Stores the rules of the blocks, with the block rule itself.
+         */
+        private static final Set<AstNodeType> RULES = Collections.unmodifiableSet(findRules());
+
+        /**
+         * Finds the rules called from the compiled block rule.
+         *
+         * @return the rules.
+         */
+        private static Set<AstNodeType> findRules() {
+            Grammar grammar = ApexGrammar.getInstance();
+            RuleDefinition block = (RuleDefinition) grammar.rule(STATEMENT_BLOCK);
+            Instruction[] instructions = MutableGrammarCompiler.compile(block).getInstructions();
+            Set<AstNodeType> rules = new HashSet<>();
+            rules.add(STATEMENT_BLOCK);
+            for (ApexGrammarRuleKey key : ApexGrammarRuleKey.values()) {
+                Matcher rule = (Matcher) grammar.rule(key);
+                for (Instruction instruction : instructions) {
+                    if (rule != null && isCall(instruction, rule)) {
+                        rules.add(key);
+                        break;
+                    }
+                }
+            }
+            return rules;
+        }
+    }
+}
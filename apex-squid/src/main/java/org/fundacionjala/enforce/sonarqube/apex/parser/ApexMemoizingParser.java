@@ -0,0 +1,349 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.Token;
+import org.sonar.sslr.grammar.GrammarRuleKey;
+import org.sonar.sslr.internal.matchers.Matcher;
+import org.sonar.sslr.internal.matchers.ParseNode;
+import org.sonar.sslr.internal.vm.CompiledGrammar;
+import org.sonar.sslr.internal.vm.Instruction;
+import org.sonar.sslr.internal.vm.Machine;
+import org.sonar.sslr.internal.vm.MachineStack;
+
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexSinglePassLexer;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TERMINAL_EXPRESSION;
+
+/**
+ * Compiled parser that memoizes the matches of selected rules by rule and token index, so a memoized rule
+ * is evaluated once per position even when several alternatives of an expression start with it. Every call
+ * to a memoized rule is counted as a hit or a miss.
+ */
+public class ApexMemoizingParser extends ApexCompiledParser {
+
+    /**
+     * Stores the expression rules that are re-parsed from the same token by the alternatives of an
+     * expression. The invoke and literal expressions are only called from a terminal expression at a given
+     * token, so memoizing the terminal expression is enough.
+     */
+    public static final List<GrammarRuleKey> EXPRESSION_RULES
+            = Collections.<GrammarRuleKey>singletonList(TERMINAL_EXPRESSION);
+
+    /**
+     * Stores the memoized rules.
+     */
+    private final GrammarRuleKey[] rules;
+
+    /**
+     * Stores the matchers of the memoized rules.
+     */
+    private final Matcher[] matchers;
+
+    /**
+     * Stores the hits of each memoized rule.
+     */
+    private final long[] hits;
+
+    /**
+     * Stores the misses of each memoized rule.
+     */
+    private final long[] misses;
+
+    /**
+     * Stores the matched nodes of each memoized rule by token index.
+     */
+    private final ParseNode[][] memos;
+
+    /**
+     * Stores the compiled grammar whose instructions were memoized.
+     */
+    private CompiledGrammar memoizedGrammar;
+
+    /**
+     * Default constructor.
+     *
+     * @param grammar grammar to be parsed.
+     * @param lexer lexer of the parser.
+     * @param rules rules to be memoized.
+     */
+    public ApexMemoizingParser(Grammar grammar, ApexSinglePassLexer lexer, List<GrammarRuleKey> rules) {
+        super(grammar, lexer);
+        this.rules = rules.toArray(new GrammarRuleKey[rules.size()]);
+        matchers = new Matcher[this.rules.length];
+        for (int rule = 0; rule < matchers.length; rule++) {
+            matchers[rule] = (Matcher) grammar.rule(this.rules[rule]);
+        }
+        hits = new long[matchers.length];
+        misses = new long[matchers.length];
+        memos = new ParseNode[matchers.length][];
+    }
+
+    /**
+     * Parses a list of tokens with the compiled root rule, memoizing the selected rules.
+     *
+     * @param tokens the tokens.
+     * @return the root node.
+     */
+    @Override
+    public AstNode parse(List<Token> tokens) {
+        int positions = tokens.size() + 1;
+        for (int rule = 0; rule < memos.length; rule++) {
+            if (memos[rule] == null || memos[rule].length < positions) {
+                memos[rule] = new ParseNode[positions];
+            }
+        }
+        try {
+            return super.parse(tokens);
+        } finally {
+            for (ParseNode[] nodes : memos) {
+                Arrays.fill(nodes, 0, positions, null);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of calls to a memoized rule that reused a previous match.
+     *
+     * @param rule the rule.
+     * @return the hits, or 0 when the rule is not memoized.
+     */
+    public long getHits(GrammarRuleKey rule) {
+        int index = indexOf(rule);
+        return index < 0 ? 0 : hits[index];
+    }
+
+    /**
+     * Returns the number of calls to a memoized rule that evaluated the rule.
+     *
+     * @param rule the rule.
+     * @return the misses, or 0 when the rule is not memoized.
+     */
+    public long getMisses(GrammarRuleKey rule) {
+        int index = indexOf(rule);
+        return index < 0 ? 0 : misses[index];
+    }
+
+    /**
+     * Clears the hits and misses of every memoized rule.
+     */
+    public void clearCounters() {
+        Arrays.fill(hits, 0);
+        Arrays.fill(misses, 0);
+    }
+
+    /**
+     * Returns false, so the expressions are parsed by the rules of the grammar, which are the ones memoized.
+     *
+     * @return false.
+     */
+    @Override
+    protected boolean parsesExpressions() {
+        return false;
+    }
+
+    /**
+     * Returns the compiled grammar of the current root rule, replacing the calls and the returns of the
+     * memoized rules with memoizing instructions. The compiled grammar belongs to this parser, so its
+     * instructions are replaced in place.
+     *
+     * @return the compiled grammar.
+     */
+    @Override
+    protected CompiledGrammar getCompiledGrammar() {
+        CompiledGrammar compiled = super.getCompiledGrammar();
+        if (compiled != memoizedGrammar) {
+            memoize(compiled.getInstructions());
+            memoizedGrammar = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * Replaces the calls to the memoized rules and the returns of their bodies. The body of a rule starts at
+     * the target of its calls and ends with its first return instruction, which is replaced once.
+     *
+     * @param instructions the compiled instructions.
+     */
+    private void memoize(Instruction[] instructions) {
+        for (int address = 0; address < instructions.length; address++) {
+            Instruction instruction = instructions[address];
+            int rule = calledRule(instruction);
+            if (rule >= 0) {
+                instructions[address] = new MemoCallInstruction(instruction, rule);
+                int end = address + instruction.hashCode();
+                while (!(instructions[end] instanceof Instruction.RetInstruction)
+                        && !(instructions[end] instanceof MemoRetInstruction)) {
+                    end++;
+                }
+                if (instructions[end] instanceof Instruction.RetInstruction) {
+                    instructions[end] = new MemoRetInstruction(instructions[end], rule);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the memoized rule called by an instruction.
+     *
+     * @param instruction the instruction.
+     * @return the index of the rule, or -1 when the instruction is not a call to a memoized rule.
+     */
+    private int calledRule(Instruction instruction) {
+        for (int rule = 0; rule < matchers.length; rule++) {
+            if (isCall(instruction, matchers[rule])) {
+                return rule;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of a memoized rule.
+     *
+     * @param rule the rule.
+     * @return the index, or -1 when the rule is not memoized.
+     */
+    private int indexOf(GrammarRuleKey rule) {
+        for (int index = 0; index < rules.length; index++) {
+            if (rules[index] == rule) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Call to a memoized rule that reuses the node matched at the current token when there is one.
+     */
+    private final class MemoCallInstruction extends Instruction {
+
+        /**
+         * Stores the replaced call.
+         */
+        private final Instruction call;
+
+        /**
+         * Stores the index of the called rule.
+         */
+        private final int rule;
+
+        /**
+         * Default constructor.
+         *
+         * @param call the replaced call.
+         * @param rule the index of the called rule.
+         */
+        MemoCallInstruction(Instruction call, int rule) {
+            this.call = call;
+            this.rule = rule;
+        }
+
+        /**
+         * Adds the memoized node to the current node and skips the call, or makes the call when the rule was
+         * not matched at the current token yet.
+         *
+         * @param machine the parsing machine.
+         */
+        @Override
+        public void execute(Machine machine) {
+            ParseNode node = memos[rule][machine.getIndex()];
+            if (node == null) {
+                misses[rule]++;
+                call.execute(machine);
+            } else {
+                hits[rule]++;
+                machine.peek().subNodes().add(node);
+                machine.setIndex(node.getEndIndex());
+                machine.jump(1);
+            }
+        }
+
+        /**
+         * Returns the replaced call.
+         *
+         * @return the description.
+         */
+        @Override
+        public String toString() {
+            return "Memo" + call;
+        }
+    }
+
+    /**
+     * Return of a memoized rule that records its matched node by the token where it started.
+     */
+    private final class MemoRetInstruction extends Instruction {
+
+        /**
+         * Stores the replaced return.
+         */
+        private final Instruction ret;
+
+        /**
+         * Stores the index of the returning rule.
+         */
+        private final int rule;
+
+        /**
+         * Default constructor.
+         *
+         * @param ret the replaced return.
+         * @param rule the index of the returning rule.
+         */
+        MemoRetInstruction(Instruction ret, int rule) {
+            this.ret = ret;
+            this.rule = rule;
+        }
+
+        /**
+         * Returns from the rule and records the node that the return added to the calling node.
+         *
+         * @param machine the parsing machine.
+         */
+        @Override
+        public void execute(Machine machine) {
+            int start = machine.peek().index();
+            ret.execute(machine);
+            List<ParseNode> nodes = machine.peek().subNodes();
+            memos[rule][start] = nodes.get(nodes.size() - 1);
+        }
+
+        /**
+         * Returns the replaced return.
+         *
+         * @return the description.
+         */
+        @Override
+        public String toString() {
+            return "Memo" + ret;
+        }
+    }
+}
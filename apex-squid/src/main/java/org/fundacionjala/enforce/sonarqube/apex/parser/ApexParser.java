@@ -23,12 +23,22 @@
  */
 package org.fundacionjala.enforce.sonarqube.apex.parser;
 
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import com.sonar.sslr.api.AstVisitor;
 import com.sonar.sslr.api.Grammar;
 import com.sonar.sslr.impl.Parser;
+import org.sonar.sslr.grammar.GrammarRuleKey;
 
 import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
 import org.fundacionjala.enforce.sonarqube.apex.api.ApexGrammar;
 import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexLexer;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexSinglePassLexer;
 
 /**
  * Builds a {@link Parser} instance for Apex. Required an configuration.
@@ -40,6 +50,28 @@ public class ApexParser {
      */
     private static final String ERROR_MESSAGE = "ApexConfiguration can't be null";
 
+    /**
+     * Stores the name of the grammar in the keys of the cached trees.
+     */
+    private static final String DEFAULT_GRAMMAR = "default";
+
+    /**
+     * Stores the name of the error recovering grammar in the keys of the cached trees.
+     */
+    private static final String RECOVERING_GRAMMAR = "recovering";
+
+    /**
+     * Stores the compiled parsers of each thread by charset.
+     */
+    private static final ThreadLocal<Map<Charset, ApexCompiledParser>> COMPILED_PARSERS
+            = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Stores the error recovering compiled parsers of each thread by charset.
+     */
+    private static final ThreadLocal<Map<Charset, ApexCompiledParser>> RECOVERING_PARSERS
+            = ThreadLocal.withInitial(HashMap::new);
+
     /**
      * Default constructor.
      */
@@ -47,17 +79,146 @@ public class ApexParser {
     }
 
     /**
-     * Creates a Parser integrated with Grammar and Lexer.
+     * Creates a Parser integrated with Grammar and Lexer. The grammar is shared by all the parsers.
      *
      * @param config apex configuration.
      * @return a parser
      * @throws IllegalArgumentException when configuration is null.
      */
     public static Parser<Grammar> create(ApexConfiguration config) {
+        checkConfiguration(config);
+        return Parser.builder(getGrammar(config))
+                .withLexer(ApexLexer.create(config)).build();
+    }
+
+    /**
+     * Creates a Parser that shares the grammar and compiles it once for all the parsed files. Its source is
+     * lexed by {@link ApexSinglePassLexer}.
+     *
+     * @param config apex configuration.
+     * @return a parser
+     * @throws IllegalArgumentException when configuration is null.
+     */
+    public static ApexCompiledParser createCompiled(ApexConfiguration config) {
+        checkConfiguration(config);
+        return new ApexCompiledParser(getGrammar(config), new ApexSinglePassLexer(config));
+    }
+
+    /**
+     * Creates a compiled Parser of the outline grammar, which parses the declarations and skips each block of
+     * statements by matching its braces.
+     *
+     * @param config apex configuration.
+     * @return a parser
+     * @throws IllegalArgumentException when configuration is null.
+     * @see ApexGrammar#createOutline()
+     */
+    public static ApexCompiledParser createOutline(ApexConfiguration config) {
+        checkConfiguration(config);
+        return new ApexCompiledParser(ApexGrammar.getOutlineInstance(), new ApexSinglePassLexer(config));
+    }
+
+    /**
+     * Creates a compiled Parser that stores the tree of each file in the primitive arrays of an
+     * {@link ApexCompactAst}, and caches the trees in the AST cache directory of the configuration when it
+     * has one.
+     *
+     * @param config apex configuration.
+     * @return a parser
+     * @throws IllegalArgumentException when configuration is null.
+     * @see ApexCompactParser
+     */
+    public static ApexCompactParser createCompact(ApexConfiguration config) {
+        checkConfiguration(config);
+        ApexCompactParser parser = new ApexCompactParser(getGrammar(config), new ApexSinglePassLexer(config));
+        if (config.getAstCacheDirectory() != null) {
+            parser.setCache(new ApexAstCache(config.getAstCacheDirectory(), config.getCharset(),
+                    config.getErrorRecovery() ? RECOVERING_GRAMMAR : DEFAULT_GRAMMAR));
+        }
+        return parser;
+    }
+
+    /**
+     * Creates a compiled Parser that parses each top level declaration of a large file on a task of the
+     * common fork join pool.
+     *
+     * @param config apex configuration.
+     * @return a parser
+     * @throws IllegalArgumentException when configuration is null.
+     * @see ApexSplitParser
+     */
+    public static ApexSplitParser createSplit(ApexConfiguration config) {
+        checkConfiguration(config);
+        return new ApexSplitParser(getGrammar(config), new ApexSinglePassLexer(config), ForkJoinPool.commonPool(),
+                ApexSplitParser.DEFAULT_MIN_TOKENS);
+    }
+
+    /**
+     * Creates a compiled Parser of the outline grammar that parses each block of statements the first time
+     * that its descendants are searched, unless a visitor subscribes to a rule of the blocks.
+     *
+     * @param config apex configuration.
+     * @param visitors visitors of the parsed files.
+     * @return a parser
+     * @throws IllegalArgumentException when configuration is null.
+     * @see ApexLazyParser
+     */
+    public static ApexLazyParser createLazy(ApexConfiguration config, Collection<? extends AstVisitor> visitors) {
+        checkConfiguration(config);
+        return new ApexLazyParser(new ApexSinglePassLexer(config), visitors);
+    }
+
+    /**
+     * Creates a compiled Parser that memoizes the matches of some rules by token index, so each of them is
+     * evaluated once per position.
+     *
+     * @param config apex configuration.
+     * @param rules rules to be memoized, such as {@link ApexMemoizingParser#EXPRESSION_RULES}.
+     * @return a parser
+     * @throws IllegalArgumentException when configuration is null.
+     */
+    public static ApexMemoizingParser createMemoizing(ApexConfiguration config, List<GrammarRuleKey> rules) {
+        checkConfiguration(config);
+        return new ApexMemoizingParser(getGrammar(config), new ApexSinglePassLexer(config), rules);
+    }
+
+    /**
+     * Returns the compiled parser of the current thread for the charset of a configuration, reset for a new
+     * use. The parser is created on the first call and then reused with its compiled grammar and buffers, so
+     * it must not be shared with other threads.
+     *
+     * @param config apex configuration.
+     * @return a parser
+     * @throws IllegalArgumentException when configuration is null.
+     */
+    public static ApexCompiledParser getCompiled(ApexConfiguration config) {
+        checkConfiguration(config);
+        ApexCompiledParser parser = (config.getErrorRecovery() ? RECOVERING_PARSERS : COMPILED_PARSERS).get()
+                .computeIfAbsent(config.getCharset(), charset -> createCompiled(config));
+        parser.reset();
+        return parser;
+    }
+
+    /**
+     * Returns the grammar of a configuration, which is the error recovering grammar when the configuration
+     * recovers from the errors.
+     *
+     * @param config apex configuration.
+     * @return the shared grammar.
+     */
+    private static Grammar getGrammar(ApexConfiguration config) {
+        return config.getErrorRecovery() ? ApexGrammar.getRecoveringInstance() : ApexGrammar.getInstance();
+    }
+
+    /**
+     * Verifies the configuration.
+     *
+     * @param config apex configuration.
+     * @throws IllegalArgumentException when configuration is null.
+     */
+    private static void checkConfiguration(ApexConfiguration config) {
         if (config == null) {
             throw new IllegalArgumentException(ERROR_MESSAGE);
         }
-        return Parser.builder(ApexGrammar.create())
-                .withLexer(ApexLexer.create(config)).build();
     }
 }
@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.TokenType;
+import com.sonar.sslr.impl.matcher.RuleDefinition;
+import org.sonar.sslr.grammar.GrammarRuleKey;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexSinglePassLexer;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.APEX_GRAMMAR;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TYPE_DECLARATION;
+
+/**
+ * Compiled parser that splits a file with several top level types at the braces that close them, and parses
+ * each type declaration on a task of a fork join pool. The declarations are added under one root as the
+ * grammar does. A file that can not be split, or a declaration that can not be parsed alone, is parsed again
+ * as a whole, so the result and the parse errors are the same as the compiled parser.
+ */
+public class ApexSplitParser extends ApexCompiledParser {
+
+    /**
+     * Stores the minimum number of tokens of a file to be split.
+     */
+    public static final int DEFAULT_MIN_TOKENS = 4096;
+
+    /**
+     * Stores the pool of the tasks that parse the declarations.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Stores the minimum number of tokens of a file to be split.
+     */
+    private final int minTokens;
+
+    /**
+     * Stores the lexer of the parser.
+     */
+    private final ApexSinglePassLexer lexer;
+
+    /**
+     * Stores the declaration parsers that no task is using, which are released with the parser instead of
+     * being kept by the threads of the pool.
+     */
+    private final Queue<ApexCompiledParser> declarationParsers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Default constructor.
+     *
+     * @param grammar grammar to be parsed.
+     * @param lexer lexer of the parser.
+     * @param pool pool of the tasks that parse the declarations.
+     * @param minTokens minimum number of tokens of a file to be split.
+     */
+    public ApexSplitParser(Grammar grammar, ApexSinglePassLexer lexer, ForkJoinPool pool, int minTokens) {
+        super(grammar, lexer);
+        this.pool = pool;
+        this.minTokens = minTokens;
+        this.lexer = lexer;
+    }
+
+    /**
+     * Parses a list of tokens, parsing each top level declaration on a task when the file is large enough
+     * and has several declarations.
+     *
+     * @param tokens the tokens.
+     * @return the root node.
+     * @throws RecognitionException when the tokens can not be parsed.
+     */
+    @Override
+    public AstNode parse(List<Token> tokens) {
+        List<Integer> ends = tokens.size() < minTokens ? null : findDeclarationEnds(tokens);
+        if (ends == null || ends.size() < 2) {
+            return super.parse(tokens);
+        }
+        List<ForkJoinTask<AstNode>> tasks = new ArrayList<>();
+        int start = 0;
+        for (int end : ends) {
+            int from = start;
+            tasks.add(pool.submit(() -> parseDeclaration(tokens, from, end)));
+            start = end;
+        }
+        List<AstNode> declarations = new ArrayList<>();
+        for (ForkJoinTask<AstNode> task : tasks) {
+            declarations.add(task.join());
+        }
+        if (declarations.contains(null)) {
+            return super.parse(tokens);
+        }
+        return createRoot(tokens, declarations);
+    }
+
+    /**
+     * Returns the indexes after the braces that close each top level declaration, which must be followed
+     * by the end of file.
+     *
+     * @param tokens the tokens.
+     * @return the end indexes, or null when the braces are not balanced.
+     */
+    private static List<Integer> findDeclarationEnds(List<Token> tokens) {
+        int last = tokens.size() - 1;
+        if (last < 0 || tokens.get(last).getType() != GenericTokenType.EOF) {
+            return null;
+        }
+        List<Integer> ends = new ArrayList<>();
+        int depth = 0;
+        for (int index = 0; index < last; index++) {
+            TokenType type = tokens.get(index).getType();
+            if (type == ApexPunctuator.LBRACE) {
+                depth++;
+            } else if (type == ApexPunctuator.RBRACE) {
+                depth--;
+                if (depth < 0) {
+                    return null;
+                }
+                if (depth == 0) {
+                    ends.add(index + 1);
+                }
+            }
+        }
+        boolean closed = depth == 0 && !ends.isEmpty() && ends.get(ends.size() - 1) == last;
+        return closed ? ends : null;
+    }
+
+    /**
+     * Parses a top level declaration with the declaration parser of the current thread.
+     *
+     * @param tokens the tokens of the file.
+     * @param from index of the first token of the declaration.
+     * @param to index after the last token of the declaration.
+     * @return the declaration node, or null when the tokens are not one declaration.
+     * @throws ApexBudgetException when the parse of the file outlasts its budget.
+     */
+    private AstNode parseDeclaration(List<Token> tokens, int from, int to) {
+        AstNode declaration;
+        ApexCompiledParser declarationParser = declarationParsers.poll();
+        if (declarationParser == null) {
+            declarationParser = new ApexCompiledParser(getGrammar(), lexer);
+            declarationParser.setRootRule(getGrammar().rule(CLASS_DECLARATION));
+        }
+        try {
+            declarationParser.collapseLike(this);
+            declaration = declarationParser.parse(tokens.subList(from, to));
+        } catch (ApexBudgetException e) {
+            throw e;
+        } catch (RecognitionException e) {
+            return null;
+        } finally {
+            declarationParsers.offer(declarationParser);
+        }
+        if (declaration.getToIndex() != to - from) {
+            return null;
+        }
+        shiftIndexes(declaration, from);
+        return declaration;
+    }
+
+    /**
+     * Creates the root node of the file over its declarations and its end of file, as the grammar does.
+     *
+     * @param tokens the tokens of the file.
+     * @param declarations the declaration nodes.
+     * @return the root node.
+     */
+    private AstNode createRoot(List<Token> tokens, List<AstNode> declarations) {
+        int last = tokens.size() - 1;
+        AstNode types = createRuleNode(TYPE_DECLARATION, tokens.get(0), 0, last);
+        declarations.forEach(types::addChild);
+        AstNode endOfFile = new AstNode(tokens.get(last));
+        endOfFile.setFromIndex(last);
+        endOfFile.setToIndex(last + 1);
+        AstNode root = createRuleNode(APEX_GRAMMAR, tokens.get(0), 0, last + 1);
+        root.addChild(types);
+        root.addChild(endOfFile);
+        return root;
+    }
+
+    /**
+     * Creates the node of a rule of the grammar.
+     *
+     * @param key the rule.
+     * @param token the first token of the node.
+     * @param from index of the first token of the node.
+     * @param to index after the last token of the node.
+     * @return the node.
+     */
+    private AstNode createRuleNode(GrammarRuleKey key, Token token, int from, int to) {
+        RuleDefinition rule = (RuleDefinition) getGrammar().rule(key);
+        AstNode node = new AstNode(rule.getRealAstNodeType(), rule.getName(), token);
+        node.setFromIndex(from);
+        node.setToIndex(to);
+        return node;
+    }
+}
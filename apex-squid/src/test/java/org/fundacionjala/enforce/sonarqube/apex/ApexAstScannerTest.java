@@ -25,13 +25,26 @@ package org.fundacionjala.enforce.sonarqube.apex;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.Grammar;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
+import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.SquidAstVisitor;
 import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceFunction;
 import org.sonar.squidbridge.api.SourceProject;
 import org.sonar.squidbridge.indexer.QueryByType;
 
@@ -39,6 +52,9 @@ import static org.fest.assertions.Assertions.assertThat;
 
 public class ApexAstScannerTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private ApexConfiguration apexConfiguration;
     private SourceFile sourceFile;
 
@@ -93,6 +109,280 @@ public class ApexAstScannerTest {
         assertThat(sourceFile.getInt(ApexMetric.COMPLEXITY)).isEqualTo(3);
     }
 
+    @Test
+    public void testTheNumberOfParseErrors() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setErrorRecovery(true);
+        AstScanner<Grammar> scanner = ApexAstScanner.create(configuration);
+        scanner.scanFile(new File("src/test/resources/metrics/errors.cls"));
+        SourceProject project = buildProject(scanner);
+        assertThat(project.getInt(ApexMetric.PARSE_ERRORS)).isEqualTo(2);
+        assertThat(project.getInt(ApexMetric.METHODS)).isEqualTo(2);
+        assertThat(project.getInt(ApexMetric.STATEMENTS)).isEqualTo(1);
+    }
+
+    @Test
+    public void testTheMetricsOfACompactScan() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setCompactAst(true);
+        AstScanner<Grammar> scanner = ApexAstScanner.create(configuration);
+        scanner.scanFiles(ImmutableList.of(
+                new File("src/test/resources/metrics/complexity.cls"),
+                new File("src/test/resources/metrics/methods.cls"),
+                new File("src/test/resources/metrics/comments.cls")));
+        AstScanner<Grammar> defaultScanner = ApexAstScanner.create(apexConfiguration);
+        defaultScanner.scanFiles(ImmutableList.of(
+                new File("src/test/resources/metrics/complexity.cls"),
+                new File("src/test/resources/metrics/methods.cls"),
+                new File("src/test/resources/metrics/comments.cls")));
+        SourceProject project = buildProject(scanner);
+        SourceProject defaultProject = buildProject(defaultScanner);
+        for (ApexMetric metric : ApexMetric.values()) {
+            assertThat(project.getInt(metric)).as(metric.name()).isEqualTo(defaultProject.getInt(metric));
+        }
+        assertThat(project.getInt(ApexMetric.COMPLEXITY)).isGreaterThan(0);
+    }
+
+    @Test
+    public void testTheMetricsOfACachedScan() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setAstCacheDirectory(folder.getRoot());
+        List<File> files = ImmutableList.of(
+                new File("src/test/resources/metrics/complexity.cls"),
+                new File("src/test/resources/metrics/methods.cls"),
+                new File("src/test/resources/metrics/comments.cls"));
+        AstScanner<Grammar> scanner = ApexAstScanner.create(configuration);
+        scanner.scanFiles(files);
+        assertThat(folder.getRoot().list()).hasSize(3);
+        AstScanner<Grammar> cachedScanner = ApexAstScanner.create(configuration);
+        cachedScanner.scanFiles(files);
+        AstScanner<Grammar> defaultScanner = ApexAstScanner.create(apexConfiguration);
+        defaultScanner.scanFiles(files);
+        SourceProject project = buildProject(cachedScanner);
+        SourceProject defaultProject = buildProject(defaultScanner);
+        for (ApexMetric metric : ApexMetric.values()) {
+            assertThat(project.getInt(metric)).as(metric.name()).isEqualTo(defaultProject.getInt(metric));
+        }
+        assertThat(project.getInt(ApexMetric.COMMENT_LINES)).isGreaterThan(0);
+    }
+
+    @Test
+    public void testTheVisitorsOfACollapsingScanAreNotifiedOfTheirTypes() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setCollapseWrappers(true);
+        List<AstNode> statements = Lists.newArrayList();
+        AstScanner<Grammar> scanner = ApexAstScanner.create(configuration, new SquidAstVisitor<Grammar>() {
+            @Override
+            public void init() {
+                subscribeTo(ApexGrammarRuleKey.STATEMENT);
+            }
+
+            @Override
+            public void visitNode(AstNode astNode) {
+                statements.add(astNode);
+            }
+        });
+        scanner.scanFile(new File("src/test/resources/metrics/complexity.cls"));
+        sourceFile = ApexAstScanner.scanFile(new File("src/test/resources/metrics/complexity.cls"));
+        SourceProject project = buildProject(scanner);
+        assertThat(statements).isNotEmpty();
+        assertThat(project.getInt(ApexMetric.STATEMENTS)).isEqualTo(sourceFile.getInt(ApexMetric.STATEMENTS));
+        assertThat(project.getInt(ApexMetric.COMPLEXITY)).isEqualTo(sourceFile.getInt(ApexMetric.COMPLEXITY));
+        assertThat(project.getInt(ApexMetric.METHODS)).isEqualTo(sourceFile.getInt(ApexMetric.METHODS));
+    }
+
+    @Test
+    public void testACompactScanKeepsTheWrappers() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setCompactAst(true);
+        configuration.setCollapseWrappers(true);
+        AstScanner<Grammar> scanner = ApexAstScanner.create(configuration);
+        scanner.scanFile(new File("src/test/resources/metrics/complexity.cls"));
+        sourceFile = ApexAstScanner.scanFile(new File("src/test/resources/metrics/complexity.cls"));
+        SourceProject project = buildProject(scanner);
+        assertThat(project.getInt(ApexMetric.STATEMENTS)).isEqualTo(sourceFile.getInt(ApexMetric.STATEMENTS));
+        assertThat(project.getInt(ApexMetric.COMPLEXITY)).isEqualTo(sourceFile.getInt(ApexMetric.COMPLEXITY));
+    }
+
+    @Test
+    public void testTheFilesAboveTheTokenBudgetAreMeasuredFromTheirTokens() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setMaxFileTokens(5);
+        List<File> files = ImmutableList.of(
+                new File("src/test/resources/metrics/lines.cls"),
+                new File("src/test/resources/metrics/comments.cls"),
+                new File("src/test/resources/metrics/methods.cls"));
+        AstScanner<Grammar> scanner = ApexAstScanner.create(configuration);
+        scanner.scanFiles(files);
+        AstScanner<Grammar> defaultScanner = ApexAstScanner.create(apexConfiguration);
+        defaultScanner.scanFiles(files);
+        verifyTheTokenMetrics(buildProject(scanner), buildProject(defaultScanner));
+        assertThat(buildProject(scanner).getInt(ApexMetric.SKIPPED_FILES)).isEqualTo(3);
+        assertThat(buildProject(scanner).getInt(ApexMetric.TIMED_OUT_FILES)).isEqualTo(0);
+        assertThat(buildProject(scanner).getInt(ApexMetric.METHODS)).isEqualTo(0);
+        assertThat(buildProject(defaultScanner).getInt(ApexMetric.SKIPPED_FILES)).isEqualTo(0);
+    }
+
+    @Test
+    public void testTheFilesAboveTheTimeBudgetAreMeasuredFromTheirTokens() throws IOException {
+        File file = folder.newFile("Large.cls");
+        StringBuilder source = new StringBuilder();
+        for (int type = 0; type < 2; type++) {
+            source.append("public class Large").append(type).append(" {\n");
+            for (int method = 0; method < 2000; method++) {
+                source.append("    // Method ").append(method).append('\n')
+                        .append("    public Integer run").append(method).append("(Integer value) {\n")
+                        .append("        if (value > ").append(method).append(") {\n")
+                        .append("            return value + ").append(method).append(";\n")
+                        .append("        }\n        return value;\n    }\n");
+            }
+            source.append("}\n");
+        }
+        Files.write(file.toPath(), source.toString().getBytes(StandardCharsets.UTF_8));
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setMaxFileMillis(1);
+        AstScanner<Grammar> scanner = ApexAstScanner.create(configuration);
+        scanner.scanFile(file);
+        AstScanner<Grammar> defaultScanner = ApexAstScanner.create(apexConfiguration);
+        defaultScanner.scanFile(file);
+        verifyTheTokenMetrics(buildProject(scanner), buildProject(defaultScanner));
+        assertThat(buildProject(scanner).getInt(ApexMetric.SKIPPED_FILES)).isEqualTo(1);
+        assertThat(buildProject(scanner).getInt(ApexMetric.TIMED_OUT_FILES)).isEqualTo(1);
+        assertThat(buildProject(scanner).getInt(ApexMetric.METHODS)).isEqualTo(0);
+        assertThat(buildProject(defaultScanner).getInt(ApexMetric.METHODS)).isEqualTo(4000);
+    }
+
+    @Test
+    public void testTheFilesWhoseVisitIsAboveTheTimeBudgetAreMeasuredFromTheirTokens() throws IOException {
+        File file = folder.newFile("Slow.cls");
+        StringBuilder source = new StringBuilder("public class Slow {\n");
+        for (int method = 0; method < 100; method++) {
+            source.append("    public Integer run").append(method).append("(Integer value) {\n")
+                    .append("        return value + ").append(method).append(";\n    }\n");
+        }
+        source.append("}\n");
+        Files.write(file.toPath(), source.toString().getBytes(StandardCharsets.UTF_8));
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setMaxFileMillis(200);
+        List<AstNode> methods = Lists.newArrayList();
+        AstScanner<Grammar> scanner = ApexAstScanner.create(configuration, new SquidAstVisitor<Grammar>() {
+            @Override
+            public void init() {
+                subscribeTo(ApexGrammarRuleKey.METHOD_DECLARATION);
+            }
+
+            @Override
+            public void visitNode(AstNode astNode) {
+                methods.add(astNode);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        scanner.scanFile(file);
+        AstScanner<Grammar> defaultScanner = ApexAstScanner.create(apexConfiguration);
+        defaultScanner.scanFile(file);
+        verifyTheTokenMetrics(buildProject(scanner), buildProject(defaultScanner));
+        assertThat(methods).isNotEmpty();
+        assertThat(buildProject(scanner).getInt(ApexMetric.SKIPPED_FILES)).isEqualTo(1);
+        assertThat(buildProject(scanner).getInt(ApexMetric.TIMED_OUT_FILES)).isEqualTo(1);
+        assertThat(buildProject(scanner).getInt(ApexMetric.METHODS)).isEqualTo(0);
+        assertThat(scanner.getIndex().search(new QueryByType(SourceFunction.class))).isEmpty();
+        assertThat(buildProject(defaultScanner).getInt(ApexMetric.METHODS)).isEqualTo(100);
+    }
+
+    private void verifyTheTokenMetrics(SourceProject project, SourceProject defaultProject) {
+        assertThat(project.getInt(ApexMetric.FILES)).isEqualTo(defaultProject.getInt(ApexMetric.FILES));
+        assertThat(project.getInt(ApexMetric.LINES)).isEqualTo(defaultProject.getInt(ApexMetric.LINES));
+        assertThat(project.getInt(ApexMetric.LINES_OF_CODE))
+                .isEqualTo(defaultProject.getInt(ApexMetric.LINES_OF_CODE));
+        assertThat(project.getInt(ApexMetric.COMMENT_LINES))
+                .isEqualTo(defaultProject.getInt(ApexMetric.COMMENT_LINES));
+        assertThat(project.getInt(ApexMetric.LINES_OF_CODE)).isGreaterThan(0);
+    }
+
+    @Test
+    public void testTheNumberOfScannedCommentLines() {
+        sourceFile = ApexAstScanner.scanFile(new File("src/test/resources/metrics/comments.cls"));
+        assertThat(sourceFile.getInt(ApexMetric.COMMENT_LINES)).isEqualTo(2);
+        assertThat(sourceFile.getNoSonarTagLines()).containsOnly(8);
+    }
+
+    @Test
+    public void testTheVisitorsGetTheTokenStreamOfTheFile() {
+        List<Integer> lineCounts = Lists.newArrayList();
+        ApexAstScanner.scanFile(new File("src/test/resources/metrics/lines.cls"), new SquidAstVisitor<Grammar>() {
+            @Override
+            public void visitFile(AstNode astNode) {
+                lineCounts.add(((ApexVisitorContext) getContext()).getTokenStream().getLineCount());
+            }
+        });
+        assertThat(lineCounts).containsExactly(12);
+    }
+
+    @Test
+    public void testTheOutlineScanComputesTheDeclarationMetrics() {
+        Set<ApexMetric> metrics = EnumSet.of(ApexMetric.LINES, ApexMetric.LINES_OF_CODE,
+                ApexMetric.COMMENT_LINES, ApexMetric.CLASSES, ApexMetric.METHODS);
+        String[] paths = {
+            "src/test/resources/metrics/methods.cls", "src/test/resources/metrics/comments.cls",
+            "src/test/resources/metrics/classes.cls", "src/test/resources/metrics/complexity.cls",
+            "src/test/resources/parser/Article.cls"
+        };
+        for (String path : paths) {
+            AstScanner<Grammar> scanner = ApexAstScanner.create(apexConfiguration, metrics);
+            scanner.scanFile(new File(path));
+            SourceFile outline = (SourceFile) scanner.getIndex().search(new QueryByType(SourceFile.class))
+                    .iterator().next();
+            SourceFile full = ApexAstScanner.scanFile(new File(path));
+            for (ApexMetric metric : metrics) {
+                assertThat(outline.getInt(metric)).as(path + " " + metric).isEqualTo(full.getInt(metric));
+            }
+            assertThat(outline.getInt(ApexMetric.COMPLEXITY)).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testTheOutlineModeIsUsedWhenNoVisitorOrMetricNeedsTheBodies() {
+        assertThat(countStatements(new OutlineStatementCounter(), EnumSet.of(ApexMetric.METHODS))).isEqualTo(0);
+        assertThat(countStatements(new OutlineStatementCounter(), EnumSet.of(ApexMetric.STATEMENTS))).isEqualTo(2);
+        assertThat(countStatements(new StatementCounter(), EnumSet.of(ApexMetric.METHODS))).isEqualTo(2);
+    }
+
+    @Test
+    public void testARejectedLazyBlockIsAParseError() throws IOException {
+        File file = folder.newFile("Broken.cls");
+        Files.write(file.toPath(), "public class Test { public void run() { if if } }".getBytes(StandardCharsets.UTF_8));
+        AstScanner<Grammar> scanner = ApexAstScanner.create(apexConfiguration, EnumSet.of(ApexMetric.METHODS),
+                new StatementCounter());
+        scanner.scanFile(file);
+        SourceFile broken = (SourceFile) scanner.getIndex().search(new QueryByType(SourceFile.class))
+                .iterator().next();
+        assertThat(broken.getInt(ApexMetric.PARSE_ERRORS)).isEqualTo(1);
+        assertThat(broken.getInt(ApexMetric.METHODS)).isEqualTo(1);
+    }
+
+    private int countStatements(StatementCounter counter, Set<ApexMetric> metrics) {
+        ApexAstScanner.create(apexConfiguration, metrics, counter)
+                .scanFile(new File("src/test/resources/metrics/statements.cls"));
+        return counter.statements;
+    }
+
+    private static class StatementCounter extends SquidAstVisitor<Grammar> {
+
+        private int statements;
+
+        @Override
+        public void visitFile(AstNode astNode) {
+            statements += astNode.getDescendants(ApexGrammarRuleKey.TERMINAL_STATEMENT).size();
+        }
+    }
+
+    private static class OutlineStatementCounter extends StatementCounter implements ApexOutlineVisitor {
+    }
+
     private SourceProject buildProject(AstScanner<Grammar> scanner) {
         return (SourceProject) scanner.getIndex().search(new QueryByType(SourceProject.class)).iterator().next();
     }
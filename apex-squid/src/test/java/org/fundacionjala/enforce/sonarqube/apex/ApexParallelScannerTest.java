@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.Grammar;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceFunction;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.squidbridge.indexer.QueryByParent;
+import org.sonar.squidbridge.indexer.QueryByType;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ApexParallelScannerTest {
+
+    private static final List<File> FILES = ImmutableList.of(
+            new File("src/test/resources/metrics/classes.cls"),
+            new File("src/test/resources/metrics/complexity.cls"),
+            new File("src/test/resources/metrics/lines.cls"),
+            new File("src/test/resources/metrics/methods.cls"),
+            new File("src/test/resources/metrics/statements.cls"),
+            new File("src/test/resources/parser/Article.cls"),
+            new File("src/test/resources/parser/DraftArticle.cls"));
+
+    private ApexConfiguration apexConfiguration;
+
+    @Before
+    public void setup() {
+        apexConfiguration = new ApexConfiguration(Charsets.UTF_8);
+    }
+
+    @Test
+    public void testTheResultsMatchASerialScan() {
+        AstScanner<Grammar> serialScanner = ApexAstScanner.create(apexConfiguration);
+        serialScanner.scanFiles(FILES);
+        ApexParallelScanner parallelScanner = new ApexParallelScanner(apexConfiguration, 3, Lists::newArrayList);
+        parallelScanner.scanFiles(FILES);
+
+        for (File file : FILES) {
+            SourceCode serialFile = serialScanner.getIndex().search(file.getAbsolutePath());
+            SourceCode parallelFile = parallelScanner.getIndex().search(file.getAbsolutePath());
+            assertThat(parallelFile).isInstanceOf(SourceFile.class);
+            for (ApexMetric metric : ApexMetric.values()) {
+                assertThat(parallelFile.getDouble(metric)).isEqualTo(serialFile.getDouble(metric));
+            }
+            Collection<SourceCode> serialFunctions = serialScanner.getIndex().search(
+                    new QueryByParent(serialFile), new QueryByType(SourceFunction.class));
+            Collection<SourceCode> parallelFunctions = parallelScanner.getIndex().search(
+                    new QueryByParent(parallelFile), new QueryByType(SourceFunction.class));
+            assertThat(parallelFunctions).hasSize(serialFunctions.size());
+        }
+    }
+
+    @Test
+    public void testTheMergedProjectMetrics() {
+        ApexParallelScanner scanner = new ApexParallelScanner(apexConfiguration, 4, Lists::newArrayList);
+        scanner.scanFiles(FILES);
+        Collection<SourceCode> projects = scanner.getIndex().search(new QueryByType(SourceProject.class));
+        assertThat(projects).hasSize(1);
+        SourceProject project = (SourceProject) projects.iterator().next();
+        assertThat(project.getInt(ApexMetric.FILES)).isEqualTo(FILES.size());
+        assertThat(project.getChildren()).hasSize(FILES.size());
+    }
+
+    @Test
+    public void testTheStreamedResultsMatchASerialScan() {
+        AstScanner<Grammar> serialScanner = ApexAstScanner.create(apexConfiguration);
+        serialScanner.scanFiles(FILES);
+        List<SourceFile> streamed = Lists.newArrayList();
+        ApexParallelScanner parallelScanner = new ApexParallelScanner(apexConfiguration, 3, Lists::newArrayList);
+        parallelScanner.scanFiles(FILES, streamed::add);
+
+        assertThat(streamed).hasSize(FILES.size());
+        for (SourceFile parallelFile : streamed) {
+            SourceCode serialFile = serialScanner.getIndex().search(parallelFile.getKey());
+            for (ApexMetric metric : ApexMetric.values()) {
+                assertThat(parallelFile.getDouble(metric)).isEqualTo(serialFile.getDouble(metric));
+            }
+        }
+        assertThat(parallelScanner.getIndex().search(new QueryByType(SourceFile.class))).isEmpty();
+    }
+
+    @Test
+    public void testMoreWorkersThanFiles() {
+        ApexParallelScanner scanner = new ApexParallelScanner(apexConfiguration, 8, Lists::newArrayList);
+        scanner.scanFiles(ImmutableList.of(new File("src/test/resources/metrics/lines.cls")));
+        Collection<SourceCode> sources = scanner.getIndex().search(new QueryByType(SourceFile.class));
+        assertThat(sources).hasSize(1);
+        assertThat(sources.iterator().next().getInt(ApexMetric.LINES)).isEqualTo(12);
+    }
+
+    @Test
+    public void testTheWorkersDoNotSplitTheFilesOfTheCaller() {
+        ApexParallelScanner scanner = new ApexParallelScanner(apexConfiguration, 2, Lists::newArrayList);
+        scanner.scanFiles(FILES);
+        assertThat(apexConfiguration.getSplitFiles()).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNumberOfWorkers() {
+        new ApexParallelScanner(apexConfiguration, 0, Lists::newArrayList);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import java.io.File;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.sonar.sslr.api.Grammar;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.api.SourceClass;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceFunction;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.squidbridge.indexer.QueryByParent;
+import org.sonar.squidbridge.indexer.QueryByType;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ApexSourceIndexTest {
+
+    private ApexSourceIndex index;
+    private SourceProject project;
+
+    @Before
+    public void setup() {
+        index = new ApexSourceIndex();
+        project = new SourceProject("project");
+        index.index(project);
+    }
+
+    @Test
+    public void testTheDescendantsOfEachFile() {
+        SourceFile book = new SourceFile("Book.cls");
+        SourceFile article = new SourceFile("Article.cls");
+        project.addChild(book);
+        project.addChild(article);
+        SourceClass bookClass = new SourceClass("Book:1");
+        book.addChild(bookClass);
+        SourceFunction bookFunction = new SourceFunction("read:3");
+        bookClass.addChild(bookFunction);
+        SourceFunction articleFunction = new SourceFunction("read:3");
+        article.addChild(articleFunction);
+
+        assertThat(index.getDescendants(book)).containsExactly(bookClass, bookFunction);
+        assertThat(index.getDescendants(book, SourceFunction.class)).hasSize(1);
+        assertThat(index.getDescendants(book, SourceFunction.class).get(0)).isSameAs(bookFunction);
+        assertThat(index.getDescendants(article, SourceFunction.class).get(0)).isSameAs(articleFunction);
+        assertThat(index.getDescendants(new SourceFile("Unknown.cls"))).isEmpty();
+    }
+
+    @Test
+    public void testTheSearchByKeyAndQuery() {
+        SourceFile book = new SourceFile("Book.cls");
+        project.addChild(book);
+        SourceFunction function = new SourceFunction("read:3");
+        book.addChild(function);
+
+        assertThat(index.search("Book.cls")).isSameAs(book);
+        assertThat(index.search(new QueryByParent(book), new QueryByType(SourceFunction.class)))
+                .containsOnly(function);
+    }
+
+    @Test
+    public void testTheScannerUsesTheIndex() {
+        AstScanner<Grammar> scanner = ApexAstScanner.create(new ApexConfiguration(Charsets.UTF_8));
+        scanner.scanFiles(ImmutableList.of(new File("src/test/resources/metrics/methods.cls")));
+        assertThat(scanner.getIndex()).isInstanceOf(ApexSourceIndex.class);
+
+        ApexSourceIndex scannerIndex = (ApexSourceIndex) scanner.getIndex();
+        SourceCode sourceFile = scannerIndex.search(new File("src/test/resources/metrics/methods.cls")
+                .getAbsolutePath());
+        assertThat(scannerIndex.getDescendants(sourceFile)).isNotEmpty();
+        assertThat(scannerIndex.getDescendants(sourceFile))
+                .containsOnly(scannerIndex.search(new QueryByParent(sourceFile)).toArray());
+    }
+}
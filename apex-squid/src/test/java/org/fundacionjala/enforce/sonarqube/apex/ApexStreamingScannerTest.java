@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import java.io.File;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.Grammar;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.squidbridge.AstScanner;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ApexStreamingScannerTest {
+
+    private static final List<File> FILES = ImmutableList.of(
+            new File("src/test/resources/metrics/classes.cls"),
+            new File("src/test/resources/metrics/complexity.cls"),
+            new File("src/test/resources/metrics/lines.cls"),
+            new File("src/test/resources/metrics/methods.cls"),
+            new File("src/test/resources/parser/Article.cls"));
+
+    private ApexConfiguration apexConfiguration;
+
+    @Before
+    public void setup() {
+        apexConfiguration = new ApexConfiguration(Charsets.UTF_8);
+    }
+
+    @Test
+    public void testTheFilesAreStreamedInOrder() {
+        List<String> keys = Lists.newArrayList();
+        new ApexStreamingScanner(apexConfiguration, sourceFile -> keys.add(sourceFile.getKey()))
+                .scanFiles(FILES);
+        List<String> expected = Lists.newArrayList();
+        FILES.forEach(file -> expected.add(file.getAbsolutePath()));
+        assertThat(keys).isEqualTo(expected);
+    }
+
+    @Test
+    public void testTheResultsMatchAFullScan() {
+        AstScanner<Grammar> scanner = ApexAstScanner.create(apexConfiguration);
+        scanner.scanFiles(FILES);
+        List<SourceFile> streamed = Lists.newArrayList();
+        new ApexStreamingScanner(apexConfiguration, streamed::add).scanFiles(FILES);
+
+        assertThat(streamed).hasSize(FILES.size());
+        for (SourceFile sourceFile : streamed) {
+            SourceCode expected = scanner.getIndex().search(sourceFile.getKey());
+            for (ApexMetric metric : ApexMetric.values()) {
+                assertThat(sourceFile.getDouble(metric)).isEqualTo(expected.getDouble(metric));
+            }
+        }
+    }
+
+    @Test
+    public void testTheFileIsReleasedAfterTheListener() {
+        List<SourceFile> streamed = Lists.newArrayList();
+        new ApexStreamingScanner(apexConfiguration, streamed::add).scanFiles(FILES);
+        for (SourceFile sourceFile : streamed) {
+            assertThat(sourceFile.getParent().hasChildren()).isFalse();
+        }
+    }
+}
@@ -42,7 +42,7 @@ public class ApexMetricTest {
 
     @Test
     public void testNumberOfApexMetricTypes() {
-        assertThat(metrics).hasSize(8);
+        assertThat(metrics).hasSize(11);
     }
 
     @Test
@@ -0,0 +1,51 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ApexKeywordTableTest {
+
+    @Test
+    public void testFindsEveryKeyword() {
+        for (ApexKeyword keyword : ApexKeyword.values()) {
+            char[] buffer = (" " + keyword.getValue() + "(").toCharArray();
+            assertThat(ApexKeywordTable.find(buffer, 1, buffer.length - 1)).isSameAs(keyword);
+        }
+    }
+
+    @Test
+    public void testDoesNotFindIdentifiers() {
+        char[] buffer = "classes clas Class IsTest isTest".toCharArray();
+        assertThat(ApexKeywordTable.find(buffer, 0, 7)).isNull();
+        assertThat(ApexKeywordTable.find(buffer, 8, 12)).isNull();
+        assertThat(ApexKeywordTable.find(buffer, 13, 18)).isNull();
+        assertThat(ApexKeywordTable.find(buffer, 19, 25)).isNull();
+        assertThat(ApexKeywordTable.find(buffer, 26, 32)).isSameAs(ApexKeyword.IS_TEST);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.impl.Lexer;
+import com.sonar.sslr.impl.LexerException;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ApexSinglePassLexerTest {
+
+    private Lexer expectedLexer;
+    private ApexSinglePassLexer lexer;
+
+    @Before
+    public void setup() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        expectedLexer = ApexLexer.create(configuration);
+        lexer = new ApexSinglePassLexer(configuration);
+    }
+
+    @Test
+    public void testLexesTheTestFilesAsTheRegexpLexer() {
+        Collection<File> files = FileUtils.listFiles(new File("src/test/resources"), new String[]{"cls"}, true);
+        assertThat(files).isNotEmpty();
+        for (File file : files) {
+            assertSameTokens(expectedLexer.lex(file), lexer.lex(file));
+        }
+    }
+
+    @Test
+    public void testLexesEdgeCasesAsTheRegexpLexer() {
+        String[] sources = {
+            "", "007 10 0", "___a __a _a a_1 a__b a___b _", "'it\\'s' 'a\\\\' ''",
+            "'line\nbreak'", "x /= y / z -= w - v", "a\r\nb\rc\nd", "\ta\t b", "public Class1 isTest IsTest",
+            "  trailing  \n", "a // line\nb", "a // line\r\n// other\rb", "/* block\n * comment */ a",
+            "/** doc */ /* two */ a /* end */", "a /* unterminated", "a/b", "//", "/*/ a */ b", "/**/"
+        };
+        for (String source : sources) {
+            assertSameTokens(expectedLexer.lex(source), lexer.lex(source));
+        }
+    }
+
+    @Test
+    public void testLexesTheEndOfFile() {
+        List<Token> tokens = lexer.lex("a\n  ");
+        Token eof = tokens.get(tokens.size() - 1);
+        assertThat(eof.getType()).isEqualTo(GenericTokenType.EOF);
+        assertThat(eof.getLine()).isEqualTo(2);
+        assertThat(eof.getColumn()).isEqualTo(2);
+    }
+
+    @Test(expected = LexerException.class)
+    public void testFailsOnAnUnterminatedString() {
+        lexer.lex("a = 'unterminated");
+    }
+
+    @Test
+    public void testFailsWithTheMessageOfTheRegexpLexer() {
+        assertThat(lexFailure(lexer, "a\n b # c")).isEqualTo(lexFailure(expectedLexer, "a\n b # c"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailsOnADirectory() {
+        lexer.lex(new File("src/test/resources"));
+    }
+
+    private void assertSameTokens(List<Token> expected, List<Token> actual) {
+        assertThat(actual).hasSize(expected.size());
+        for (int index = 0; index < expected.size(); index++) {
+            Token expectedToken = expected.get(index);
+            Token actualToken = actual.get(index);
+            assertThat(actualToken.getType()).isEqualTo(expectedToken.getType());
+            assertThat(actualToken.getValue()).isEqualTo(expectedToken.getValue());
+            assertThat(actualToken.getOriginalValue()).isEqualTo(expectedToken.getOriginalValue());
+            assertThat(actualToken.getLine()).isEqualTo(expectedToken.getLine());
+            assertThat(actualToken.getColumn()).isEqualTo(expectedToken.getColumn());
+            assertThat(actualToken.getURI()).isEqualTo(expectedToken.getURI());
+            assertThat(actualToken.getTrivia()).hasSize(expectedToken.getTrivia().size());
+            for (int trivia = 0; trivia < expectedToken.getTrivia().size(); trivia++) {
+                Token expectedComment = expectedToken.getTrivia().get(trivia).getToken();
+                Token actualComment = actualToken.getTrivia().get(trivia).getToken();
+                assertThat(actualToken.getTrivia().get(trivia).isComment()).isTrue();
+                assertThat(actualComment.getType()).isEqualTo(expectedComment.getType());
+                assertThat(actualComment.getValue()).isEqualTo(expectedComment.getValue());
+                assertThat(actualComment.getLine()).isEqualTo(expectedComment.getLine());
+                assertThat(actualComment.getColumn()).isEqualTo(expectedComment.getColumn());
+            }
+        }
+    }
+
+    private static String lexFailure(Object lexerInstance, String source) {
+        try {
+            if (lexerInstance instanceof Lexer) {
+                ((Lexer) lexerInstance).lex(source);
+            } else {
+                ((ApexSinglePassLexer) lexerInstance).lex(source);
+            }
+        } catch (LexerException e) {
+            return e.getMessage() + " / " + e.getCause().getMessage() + " / " + e.getCause().getCause().getMessage();
+        }
+        return null;
+    }
+}
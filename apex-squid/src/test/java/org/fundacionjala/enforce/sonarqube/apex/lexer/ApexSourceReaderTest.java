@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ApexSourceReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadsAsciiFiles() throws IOException {
+        ApexSourceReader reader = new ApexSourceReader(Charsets.UTF_8);
+        assertThat(reader.read(write("public class A {}", Charsets.UTF_8)).toString()).isEqualTo("public class A {}");
+        assertThat(reader.read(write("", Charsets.UTF_8)).toString()).isEmpty();
+    }
+
+    @Test
+    public void testReusesTheBuffersForSmallerFiles() throws IOException {
+        ApexSourceReader reader = new ApexSourceReader(Charsets.UTF_8);
+        String large = FileUtils.readFileToString(new File("src/test/resources/parser/Article.cls"));
+        assertThat(reader.read(write(large + large, Charsets.UTF_8)).toString()).isEqualTo(large + large);
+        assertThat(reader.read(write("a", Charsets.UTF_8)).toString()).isEqualTo("a");
+    }
+
+    @Test
+    public void testReadsAfterAResetThatReleasedTheBuffers() throws IOException {
+        ApexSourceReader reader = new ApexSourceReader(Charsets.UTF_8);
+        char[] large = new char[(1 << 20) + 1];
+        Arrays.fill(large, 'a');
+        assertThat(reader.read(write(new String(large), Charsets.UTF_8)).remaining()).isEqualTo(large.length);
+        reader.reset();
+        assertThat(reader.read(write("b", Charsets.UTF_8)).toString()).isEqualTo("b");
+    }
+
+    @Test
+    public void testDecodesNonAsciiFiles() throws IOException {
+        String source = "String s = 'caf\u00e9 \u20ac';";
+        assertThat(new ApexSourceReader(Charsets.UTF_8).read(write(source, Charsets.UTF_8)).toString())
+                .isEqualTo(source);
+        assertThat(new ApexSourceReader(Charsets.UTF_16).read(write(source, Charsets.UTF_16)).toString())
+                .isEqualTo(source);
+        assertThat(new ApexSourceReader(Charsets.ISO_8859_1).read(write("caf\u00e9", Charsets.ISO_8859_1))
+                .toString()).isEqualTo("caf\u00e9");
+    }
+
+    @Test
+    public void testReplacesMalformedInputAsAStreamReader() throws IOException {
+        File file = folder.newFile();
+        byte[] bytes = {'a', (byte) 0xC3, 'b'};
+        Files.write(file.toPath(), bytes);
+        assertThat(new ApexSourceReader(Charsets.UTF_8).read(file).toString())
+                .isEqualTo(new String(bytes, Charsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailsOnAMissingFile() throws IOException {
+        new ApexSourceReader(Charsets.UTF_8).read(new File(folder.getRoot(), "Missing.cls"));
+    }
+
+    private File write(String source, Charset charset) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), source.getBytes(charset));
+        return file;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.lexer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import com.sonar.sslr.impl.LexerException;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexKeyword;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexPunctuator;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexTokenType;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ApexTokenStreamTest {
+
+    private ApexSinglePassLexer lexer;
+
+    @Before
+    public void setup() {
+        lexer = new ApexSinglePassLexer(new ApexConfiguration(Charsets.UTF_8));
+    }
+
+    @Test
+    public void testStoresTheTokensOfASource() {
+        ApexTokenStream stream = lexer.lexStream("public Integer x = 'a\nb';");
+        assertThat(stream.size()).isEqualTo(7);
+        assertThat(stream.getType(0)).isEqualTo(ApexKeyword.PUBLIC);
+        assertThat(stream.getType(1)).isEqualTo(GenericTokenType.IDENTIFIER);
+        assertThat(stream.getValue(1)).isEqualTo("Integer");
+        assertThat(stream.getOffset(1)).isEqualTo(7);
+        assertThat(stream.getLength(1)).isEqualTo(7);
+        assertThat(stream.getType(4)).isEqualTo(ApexTokenType.STRING);
+        assertThat(stream.getText(4).toString()).isEqualTo("'a\nb'");
+        assertThat(stream.getType(5)).isEqualTo(ApexPunctuator.SEMICOLON);
+        assertThat(stream.getLine(5)).isEqualTo(2);
+        assertThat(stream.getColumn(5)).isEqualTo(2);
+        assertThat(stream.getType(6)).isEqualTo(GenericTokenType.EOF);
+        assertThat(stream.getValue(6)).isEqualTo("EOF");
+    }
+
+    @Test
+    public void testBuildsTheTokensOfTheLexer() {
+        File file = new File("src/test/resources/parser/Article.cls");
+        ApexTokenStream stream = lexer.lexStream(file);
+        List<Token> tokens = lexer.lex(file);
+        assertThat(stream.size()).isEqualTo(tokens.size());
+        assertThat(stream.getURI()).isEqualTo(file.toURI());
+        for (int index = 0; index < tokens.size(); index++) {
+            Token token = stream.getToken(index);
+            assertThat(token.getType()).isEqualTo(tokens.get(index).getType());
+            assertThat(token.getValue()).isEqualTo(tokens.get(index).getValue());
+            assertThat(token.getLine()).isEqualTo(tokens.get(index).getLine());
+            assertThat(token.getColumn()).isEqualTo(tokens.get(index).getColumn());
+        }
+    }
+
+    @Test
+    public void testStoresTheCommentsBeforeEachToken() {
+        ApexTokenStream stream = lexer.lexStream("/* a */ // b\nx /* c */");
+        assertThat(stream.getCommentCount()).isEqualTo(3);
+        assertThat(stream.getFirstComment(0)).isEqualTo(0);
+        assertThat(stream.getCommentEnd(0)).isEqualTo(2);
+        assertThat(stream.getCommentText(1).toString()).isEqualTo("// b");
+        assertThat(stream.getCommentLine(1)).isEqualTo(1);
+        assertThat(stream.getCommentColumn(1)).isEqualTo(8);
+        assertThat(stream.getFirstComment(1)).isEqualTo(2);
+        assertThat(stream.getCommentEnd(1)).isEqualTo(3);
+        assertThat(stream.getToken(0).getTrivia()).hasSize(2);
+        assertThat(stream.getToken(1).getTrivia().get(0).getToken().getValue()).isEqualTo("/* c */");
+    }
+
+    @Test
+    public void testRelexesOnlyTheTokensAroundAnEdit() {
+        ApexTokenStream previous = lexer.lexStream("public class A {\n    Integer count;\n    String name;\n}");
+        ApexTokenStreamChange change = lexer.relex(previous, 29, 5, "total");
+        ApexTokenStream stream = change.getStream();
+        assertThat(change.getStart()).isEqualTo(4);
+        assertThat(change.getPreviousEnd()).isEqualTo(6);
+        assertThat(change.getEnd()).isEqualTo(6);
+        assertThat(stream.getValue(5)).isEqualTo("total");
+        assertThat(stream.getValue(8)).isEqualTo("name");
+        assertThat(stream.getLine(8)).isEqualTo(3);
+    }
+
+    @Test
+    public void testRelexesTheTokensOfAnEditLikeTheWholeSource() {
+        String[] sources = {
+            "public class A {\n    Integer count = 10; // total\n    String name = 'a\\'b';\n}",
+            "/* header\n */ a__b / c /= d\r\ne_f /** doc */ 'x'\r\n",
+            "a / * b * / c"
+        };
+        String[] insertions = {"", "x", "_", "__", "1", " ", "\n", "/*", "*/", "//", "'", "''", "/", "*"};
+        Random random = new Random(1);
+        for (int iteration = 0; iteration < 2000; iteration++) {
+            String source = sources[random.nextInt(sources.length)];
+            int offset = random.nextInt(source.length() + 1);
+            int removed = random.nextInt(Math.min(3, source.length() - offset) + 1);
+            String inserted = insertions[random.nextInt(insertions.length)];
+            String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+            ApexTokenStream expected;
+            try {
+                expected = lexer.lexStream(edited);
+            } catch (LexerException e) {
+                expected = null;
+            }
+            ApexTokenStream previous = lexer.lexStream(source);
+            try {
+                ApexTokenStreamChange change = lexer.relex(previous, offset, removed, inserted);
+                assertThat(expected).isNotNull();
+                assertSameStream(expected, change.getStream());
+                assertThat(change.getEnd() - change.getPreviousEnd())
+                        .isEqualTo(change.getStream().size() - previous.size());
+            } catch (LexerException e) {
+                assertThat(expected).isNull();
+            }
+        }
+    }
+
+    @Test
+    public void testStoresTheStartOfEachLine() {
+        ApexTokenStream stream = lexer.lexStream("a\r\n  'b\nc'\rd /* e\n */\n");
+        assertThat(stream.getLineCount()).isEqualTo(6);
+        assertThat(stream.getLineStart(2)).isEqualTo(3);
+        assertThat(stream.getLineLength(1)).isEqualTo(1);
+        assertThat(stream.getLineLength(2)).isEqualTo(4);
+        assertThat(stream.getLineLength(3)).isEqualTo(2);
+        assertThat(stream.getLineLength(6)).isEqualTo(0);
+        for (int index = 0; index < stream.size(); index++) {
+            assertThat(stream.getLineAt(stream.getOffset(index))).isEqualTo(stream.getLine(index));
+            assertThat(stream.getColumnAt(stream.getOffset(index))).isEqualTo(stream.getColumn(index));
+        }
+    }
+
+    @Test
+    public void testReadsAWrittenStream() throws IOException {
+        ApexTokenStream[] streams = {
+            lexer.lexStream(new File("src/test/resources/parser/Article.cls")),
+            lexer.lexStream("/* \u00e1 */ public class A {\r\n    String name = '\u20ac\uD83D\uDE00'; // b\n}\n"),
+            lexer.lexStream("")
+        };
+        for (ApexTokenStream stream : streams) {
+            ApexBinaryOutput output = new ApexBinaryOutput();
+            stream.write(output);
+            ApexBinaryInput input = toInput(output);
+            assertSameStream(stream, ApexTokenStream.read(input, stream.getURI()));
+            assertThat(input.isAtEnd()).isTrue();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailsOnAWrittenTokenOutOfTheSource() throws IOException {
+        ApexBinaryOutput output = new ApexBinaryOutput();
+        output.writeVarInt(1);
+        output.writeChar('a');
+        output.writeVarInt(1);
+        output.writeVarInt(1);
+        output.writeVarInt(0);
+        output.writeVarInt(2);
+        ApexTokenStream.read(toInput(output), null);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testFailsOnALineAfterTheEndOfFile() {
+        ApexTokenStream stream = lexer.lexStream("a\n");
+        stream.getLineStart(stream.getLineCount() + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailsOnAnEditOutOfTheSource() {
+        lexer.relex(lexer.lexStream("a"), 1, 1, "b");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testFailsOnAnIndexAfterTheEndOfFile() {
+        ApexTokenStream stream = lexer.lexStream("a");
+        stream.getType(stream.size());
+    }
+
+    private static ApexBinaryInput toInput(ApexBinaryOutput output) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        output.writeTo(bytes);
+        assertThat(bytes.size()).isEqualTo(output.size());
+        return new ApexBinaryInput(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private void assertSameStream(ApexTokenStream expected, ApexTokenStream actual) {
+        List<Token> expectedTokens = expected.toTokens();
+        List<Token> actualTokens = actual.toTokens();
+        assertThat(actualTokens).hasSize(expectedTokens.size());
+        for (int index = 0; index < expectedTokens.size(); index++) {
+            assertThat(describe(actualTokens.get(index))).isEqualTo(describe(expectedTokens.get(index)));
+            assertThat(actual.getOffset(index)).isEqualTo(expected.getOffset(index));
+        }
+        assertThat(actual.getLineCount()).isEqualTo(expected.getLineCount());
+        for (int line = 1; line <= expected.getLineCount(); line++) {
+            assertThat(actual.getLineStart(line)).isEqualTo(expected.getLineStart(line));
+        }
+    }
+
+    private String describe(Token token) {
+        StringBuilder builder = new StringBuilder();
+        for (Trivia trivia : token.getTrivia()) {
+            builder.append(describe(trivia.getToken())).append(' ');
+        }
+        return builder.append(token.getType()).append(':').append(token.getValue()).append('@')
+                .append(token.getLine()).append(':').append(token.getColumn()).toString();
+    }
+}
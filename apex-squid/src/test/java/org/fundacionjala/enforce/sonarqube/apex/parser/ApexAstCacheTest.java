@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.AstNode;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.parser.ApexTreeDescription.describe;
+
+public class ApexAstCacheTest {
+
+    private static final String[] SOURCES = {
+        "src/test/resources/parser/Article.cls", "src/test/resources/parser/Chains.cls",
+        "src/test/resources/parser/DraftArticle.cls", "src/test/resources/metrics/complexity.cls",
+        "src/test/resources/metrics/comments.cls"
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private ApexCompactParser parser;
+    private ApexAstCache cache;
+
+    @Before
+    public void setup() {
+        directory = new File(folder.getRoot(), "cache");
+        parser = ApexParser.createCompact(new ApexConfiguration(Charsets.UTF_8));
+        cache = new ApexAstCache(directory, Charsets.UTF_8, "default");
+    }
+
+    @Test
+    public void testACachedTreeIsTheParsedTree() {
+        for (String source : SOURCES) {
+            File file = new File(source);
+            assertThat(cache.get(file)).isNull();
+            ApexCompactAst ast = parse(file);
+            AstNode root = ast.getRoot();
+            cache.put(file, parser.getTokenStream(), ast);
+            ApexAstCache.Entry entry = cache.get(file);
+            assertThat(entry).isNotNull();
+            assertThat(entry.getTokenStream().getURI()).isEqualTo(file.toURI());
+            assertThat(entry.getTokenStream().getLineCount()).isEqualTo(parser.getTokenStream().getLineCount());
+            assertThat(describe(entry.getAst().getRoot())).as(source).isEqualTo(describe(root));
+        }
+    }
+
+    @Test
+    public void testTheParserReadsTheCachedTrees() {
+        parser.setCache(cache);
+        File file = new File("src/test/resources/parser/Article.cls");
+        AstNode parsed = parser.parse(file);
+        assertThat(directory.list()).hasSize(1);
+        AstNode cached = parser.parse(file);
+        assertThat(cached).isNotSameAs(parsed);
+        assertThat(describe(cached)).isEqualTo(describe(parsed));
+        assertThat(cached.getDescendants(METHOD_DECLARATION))
+                .hasSize(parsed.getDescendants(METHOD_DECLARATION).size());
+        assertThat(parser.getTokenStream().getURI()).isEqualTo(file.toURI());
+    }
+
+    @Test
+    public void testTheEntriesOfAChangedFileOrAnotherGrammarAreNotRead() throws IOException {
+        File file = folder.newFile("Test.cls");
+        Files.write(file.toPath(), "public class Test { }".getBytes(StandardCharsets.UTF_8));
+        ApexCompactAst ast = parse(file);
+        cache.put(file, parser.getTokenStream(), ast);
+        assertThat(cache.get(file)).isNotNull();
+        assertThat(new ApexAstCache(directory, Charsets.UTF_8, "recovering").get(file)).isNull();
+        assertThat(new ApexAstCache(directory, Charsets.ISO_8859_1, "default").get(file)).isNull();
+        Files.write(file.toPath(), "public class Test { Integer count; }".getBytes(StandardCharsets.UTF_8));
+        assertThat(cache.get(file)).isNull();
+    }
+
+    @Test
+    public void testAnEntryThatCanNotBeWrittenIsSkipped() throws IOException {
+        File file = new File("src/test/resources/metrics/methods.cls");
+        ApexCompactAst ast = parse(file);
+        directory.mkdirs();
+        ApexAstCache blocked = new ApexAstCache(directory, Charsets.UTF_8, "default");
+        blocked.put(file, parser.getTokenStream(), ast);
+        File entry = directory.listFiles()[0];
+        entry.delete();
+        entry.mkdir();
+        new File(entry, "child").createNewFile();
+        blocked.put(file, parser.getTokenStream(), ast);
+        assertThat(directory.list()).containsOnly(entry.getName());
+        assertThat(blocked.get(file)).isNull();
+    }
+
+    @Test
+    public void testAnInvalidEntryIsDeleted() throws IOException {
+        File file = new File("src/test/resources/metrics/methods.cls");
+        ApexCompactAst ast = parse(file);
+        cache.put(file, parser.getTokenStream(), ast);
+        File entry = directory.listFiles()[0];
+        byte[] bytes = Files.readAllBytes(entry.toPath());
+        Files.write(entry.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        assertThat(cache.get(file)).isNull();
+        assertThat(entry.exists()).isFalse();
+    }
+
+    private ApexCompactAst parse(File file) {
+        parser.parse(file);
+        return parser.parseCompact(parser.getTokenStream().toTokens());
+    }
+}
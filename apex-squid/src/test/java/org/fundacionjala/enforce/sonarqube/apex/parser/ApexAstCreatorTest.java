@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.AstNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.ApexTokenType.NUMERIC;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_NAME;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.FIELD_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.LITERAL_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TERMINAL_EXPRESSION;
+
+public class ApexAstCreatorTest {
+
+    private static final String[] SOURCES = {
+        "src/test/resources/parser/Article.cls", "src/test/resources/parser/Chains.cls",
+        "src/test/resources/parser/DraftArticle.cls", "src/test/resources/metrics/complexity.cls",
+        "src/test/resources/metrics/methods.cls"
+    };
+
+    private ApexConfiguration configuration;
+    private ApexCompiledParser parser;
+    private ApexCompiledParser collapsingParser;
+
+    @Before
+    public void setup() {
+        configuration = new ApexConfiguration(Charsets.UTF_8);
+        parser = ApexParser.createCompiled(configuration);
+        collapsingParser = ApexParser.createCompiled(configuration);
+        collapsingParser.setCollapsedTypes(ApexCompiledParser.WRAPPER_RULES);
+    }
+
+    @Test
+    public void testTheWrappersAreCollapsedIntoTheirChild() {
+        AstNode root = collapsingParser.parse("public class Test { public Integer run() { return 10; } }");
+        AstNode literal = root.getFirstDescendant(NUMERIC);
+        assertThat(literal.is(LITERAL_EXPRESSION, TERMINAL_EXPRESSION, EXPRESSION)).isTrue();
+        assertThat(literal.is(LITERAL_EXPRESSION)).isTrue();
+        assertThat(literal.is(STATEMENT)).isFalse();
+        assertThat(root.getFirstDescendant(EXPRESSION)).isSameAs(literal);
+        assertThat(root.getFirstDescendant(CLASS_NAME).getTokenValue()).isEqualTo("Test");
+        assertThat(root.getFirstDescendant(CLASS_NAME).hasChildren()).isFalse();
+        AstNode declaration = root.getFirstDescendant(CLASS_DECLARATION);
+        assertThat(declaration.getChildren(FIELD_DECLARATION)).hasSize(1);
+        assertThat(declaration.getFirstChild(FIELD_DECLARATION).is(METHOD_DECLARATION)).isTrue();
+        assertThat(declaration.getLastChild(FIELD_DECLARATION)).isSameAs(declaration.getFirstChild(METHOD_DECLARATION));
+    }
+
+    @Test
+    public void testTheCollapsedTreeHasFewerNodes() {
+        for (String source : SOURCES) {
+            int count = count(parser.parse(new File(source)));
+            assertThat(count(collapsingParser.parse(new File(source)))).as(source).isLessThan(count);
+        }
+    }
+
+    @Test
+    public void testTheNodesOfEachTypeSpanTheSameTokens() {
+        for (String source : SOURCES) {
+            AstNode root = collapsingParser.parse(new File(source));
+            AstNode fullRoot = parser.parse(new File(source));
+            for (ApexGrammarRuleKey type : ApexGrammarRuleKey.values()) {
+                assertThat(spans(root.getDescendants(type))).as(source + type)
+                        .isEqualTo(spans(fullRoot.getDescendants(type)));
+            }
+            assertThat(root.getTokens()).hasSize(fullRoot.getTokens().size());
+        }
+    }
+
+    @Test
+    public void testTheDeclarationsOfASplitFileAreCollapsed() {
+        ApexSplitParser splitParser = new ApexSplitParser(collapsingParser.getGrammar(),
+                collapsingParser.getLexer(), ForkJoinPool.commonPool(), 0);
+        splitParser.setCollapsedTypes(ApexCompiledParser.WRAPPER_RULES);
+        String source = "public class First { Integer a = 1; }\npublic class Second { Integer b = 2; }\n";
+        assertThat(spans(splitParser.parse(source).getDescendants(LITERAL_EXPRESSION)))
+                .isEqualTo(spans(parser.parse(source).getDescendants(LITERAL_EXPRESSION)));
+        assertThat(count(splitParser.parse(source))).isEqualTo(count(collapsingParser.parse(source)));
+    }
+
+    private static int count(AstNode node) {
+        int count = 1;
+        for (AstNode child : node.getChildren()) {
+            count += count(child);
+        }
+        return count;
+    }
+
+    private static List<String> spans(List<AstNode> nodes) {
+        return nodes.stream().map(node -> node.getFromIndex() + "-" + node.getToIndex()).collect(Collectors.toList());
+    }
+}
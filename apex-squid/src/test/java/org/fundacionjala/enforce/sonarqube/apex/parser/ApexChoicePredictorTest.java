@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.impl.Parser;
+import com.sonar.sslr.impl.matcher.RuleDefinition;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.sslr.internal.vm.Instruction;
+import org.sonar.sslr.internal.vm.MutableGrammarCompiler;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexGrammar;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.parser.ApexTreeDescription.describe;
+
+public class ApexChoicePredictorTest {
+
+    private static final String[] SOURCES = {
+        "src/test/resources/parser/Article.cls", "src/test/resources/parser/ArticleControllerTest.cls",
+        "src/test/resources/parser/Chains.cls", "src/test/resources/parser/DraftArticle.cls",
+        "src/test/resources/metrics/complexity.cls", "src/test/resources/metrics/methods.cls"
+    };
+
+    private static final String[] TOKENS = {
+        "if", "else", "while", "for", "try", "catch", "finally", "return", "insert", "delete", "{", "}", "(", ")",
+        ";", ":", "=", "Integer", "int", "x", "a.b()", "1", "'s'", "new", "public", "static", "@isTest", "class"
+    };
+
+    private Parser<Grammar> grammarParser;
+    private ApexCompiledParser parser;
+
+    @Before
+    public void setup() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        grammarParser = ApexParser.create(configuration);
+        parser = ApexParser.createCompiled(configuration);
+    }
+
+    @Test
+    public void testTheSourcesAreParsedAsTheGrammarDoes() throws IOException {
+        for (String source : SOURCES) {
+            String text = Files.toString(new File(source), Charsets.UTF_8);
+            assertThat(parse(parser, text)).as(source).isEqualTo(parse(grammarParser, text));
+        }
+    }
+
+    @Test
+    public void testRandomStatementsAreParsedAsTheGrammarDoes() {
+        Random random = new Random(16);
+        for (int iteration = 0; iteration < 2000; iteration++) {
+            StringBuilder statements = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int token = 0; token < length; token++) {
+                statements.append(TOKENS[random.nextInt(TOKENS.length)]).append(' ');
+            }
+            String[] sources = {
+                "public class Test { public void run() { %s } }", "public class Test { %s }", "%s class Test { }"
+            };
+            String source = String.format(sources[random.nextInt(sources.length)], statements);
+            assertThat(parse(parser, source)).as(source).isEqualTo(parse(grammarParser, source));
+        }
+    }
+
+    @Test
+    public void testTheChoicesOfTheStatementsArePredicted() {
+        Grammar grammar = ApexGrammar.getInstance();
+        Instruction[] instructions = MutableGrammarCompiler.compile((RuleDefinition) grammar.rule(STATEMENT))
+                .getInstructions();
+        Instruction[] original = instructions.clone();
+        assertThat(new ApexChoicePredictor(grammar, instructions).predict()).isGreaterThan(0);
+        for (int address = 0; address < instructions.length; address++) {
+            if (instructions[address] != original[address]) {
+                assertThat(original[address]).isInstanceOf(Instruction.ChoiceInstruction.class);
+            }
+        }
+    }
+
+    private static String parse(Parser<Grammar> parser, String source) {
+        try {
+            return describe(parser.parse(source));
+        } catch (RecognitionException e) {
+            return e.getLine() + ": " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Token;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT_BLOCK;
+import static org.fundacionjala.enforce.sonarqube.apex.parser.ApexTreeDescription.describe;
+
+public class ApexCompactAstTest {
+
+    private static final String[] SOURCES = {
+        "src/test/resources/parser/Article.cls", "src/test/resources/parser/Chains.cls",
+        "src/test/resources/parser/DraftArticle.cls", "src/test/resources/metrics/complexity.cls",
+        "src/test/resources/metrics/methods.cls"
+    };
+
+    private ApexCompiledParser parser;
+    private ApexCompactParser compactParser;
+
+    @Before
+    public void setup() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        parser = ApexParser.createCompiled(configuration);
+        compactParser = ApexParser.createCompact(configuration);
+    }
+
+    @Test
+    public void testTheCompactTreeHasTheNodesOfTheGrammar() {
+        for (String source : SOURCES) {
+            AstNode root = compactParser.parse(new File(source));
+            assertThat(describe(root)).as(source).isEqualTo(describe(parser.parse(new File(source))));
+        }
+    }
+
+    @Test
+    public void testTheQueriesOfTheCompactTreeMatchTheGrammar() {
+        for (String source : SOURCES) {
+            AstNode root = compactParser.parse(new File(source));
+            AstNode fullRoot = parser.parse(new File(source));
+            for (ApexGrammarRuleKey type : ApexGrammarRuleKey.values()) {
+                assertThat(describeAll(root.getDescendants(type))).as(source + type)
+                        .isEqualTo(describeAll(fullRoot.getDescendants(type)));
+                assertThat(root.hasDescendant(type)).isEqualTo(fullRoot.hasDescendant(type));
+                assertThat(root.hasDirectChildren(type)).isEqualTo(fullRoot.hasDirectChildren(type));
+            }
+            assertThat(tokenValues(root.getTokens())).isEqualTo(tokenValues(fullRoot.getTokens()));
+            assertThat(root.getFirstChild().getLastToken().getLine())
+                    .isEqualTo(fullRoot.getFirstChild().getLastToken().getLine());
+        }
+    }
+
+    @Test
+    public void testTheNavigationOfACompactNode() {
+        AstNode root = compactParser.parse(new File("src/test/resources/metrics/methods.cls"));
+        AstNode method = root.getFirstDescendant(METHOD_DECLARATION);
+        AstNode block = method.getFirstDescendant(STATEMENT_BLOCK);
+        AstNode statement = block.getFirstDescendant(STATEMENT);
+        assertThat(statement.getFirstAncestor(METHOD_DECLARATION)).isEqualTo(method);
+        assertThat(statement.hasAncestor(CLASS_DECLARATION)).isTrue();
+        assertThat(block.getFirstChild().getNextSibling().getPreviousSibling()).isEqualTo(block.getFirstChild());
+        assertThat(block.getLastChild().getNextSibling()).isNull();
+        assertThat(block.getChildren().get(block.getNumberOfChildren() - 1)).isEqualTo(block.getLastChild());
+        assertThat(block.getChildren()).hasSize(block.getNumberOfChildren());
+        assertThat(root.getParent()).isNull();
+        assertThat(root.getFirstDescendant(EXPRESSION).getTokenValue()).isNotEmpty();
+    }
+
+    @Test
+    public void testTheNodesOfACompactTreeAreCreatedOnce() {
+        AstNode root = compactParser.parse(new File("src/test/resources/metrics/methods.cls"));
+        AstNode method = root.getFirstDescendant(METHOD_DECLARATION);
+        assertThat(root.getFirstDescendant(METHOD_DECLARATION)).isSameAs(method);
+        assertThat(method.getChildren()).isSameAs(method.getChildren());
+        assertThat(method.getFirstChild().getParent()).isSameAs(method);
+        assertThat(method.getFirstChild().getNextSibling()).isSameAs(method.getChildren().get(1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testACompactNodeCanNotBeChanged() {
+        compactParser.parse("public class Test { }").addChild(compactParser.parse("public class Other { }"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTheCompactParserRefusesToCollapseTheWrappers() {
+        compactParser.setCollapsedTypes(ApexCompiledParser.WRAPPER_RULES);
+    }
+
+    @Test
+    public void testTheCompactParserAcceptsNoCollapsedTypes() {
+        compactParser.setCollapsedTypes(Collections.emptySet());
+        assertThat(describe(compactParser.parse("public class Test { }")))
+                .isEqualTo(describe(parser.parse("public class Test { }")));
+    }
+
+    private static List<String> describeAll(List<AstNode> nodes) {
+        return nodes.stream().map(ApexTreeDescription::describe).collect(Collectors.toList());
+    }
+
+    private static List<String> tokenValues(List<Token> tokens) {
+        return tokens.stream().map(Token::getOriginalValue).collect(Collectors.toList());
+    }
+}
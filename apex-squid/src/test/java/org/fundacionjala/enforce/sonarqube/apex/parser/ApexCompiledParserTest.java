@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.impl.Parser;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TYPE;
+import static org.fundacionjala.enforce.sonarqube.apex.parser.ApexTreeDescription.describe;
+
+public class ApexCompiledParserTest {
+
+    private static final File ARTICLE = new File("src/test/resources/parser/Article.cls");
+    private static final File DRAFT_ARTICLE = new File("src/test/resources/parser/DraftArticle.cls");
+
+    private ApexConfiguration configuration;
+    private Parser<Grammar> parser;
+
+    @Before
+    public void setup() {
+        configuration = new ApexConfiguration(Charsets.UTF_8);
+        parser = ApexParser.createCompiled(configuration);
+    }
+
+    @Test
+    public void testTheTreeIsTheSameAsTheDefaultParser() {
+        Parser<Grammar> defaultParser = ApexParser.create(configuration);
+        for (File file : Lists.newArrayList(ARTICLE, DRAFT_ARTICLE, ARTICLE)) {
+            assertThat(describe(parser.parse(file))).isEqualTo(describe(defaultParser.parse(file)));
+        }
+    }
+
+    @Test
+    public void testTheRootRuleCanBeChanged() {
+        parser.setRootRule(parser.getGrammar().rule(TYPE));
+        assertThat(parser.parse("Integer").getType()).isEqualTo(TYPE);
+        parser.setRootRule(parser.getGrammar().rule(METHOD_DECLARATION));
+        assertThat(parser.parse("public void run(){}").getType()).isEqualTo(METHOD_DECLARATION);
+    }
+
+    @Test(expected = RecognitionException.class)
+    public void testThrowingAnExceptionWhenTheSourceIsNotValid() {
+        parser.parse("public class {");
+    }
+
+    @Test
+    public void testParsersOnSeveralThreads() throws Exception {
+        String expected = describe(parser.parse(ARTICLE));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<String>> tasks = Lists.newArrayList();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(() -> describe(ApexParser.createCompiled(configuration).parse(ARTICLE)));
+            }
+            for (Future<String> result : executor.invokeAll(tasks)) {
+                assertThat(result.get()).isEqualTo(expected);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
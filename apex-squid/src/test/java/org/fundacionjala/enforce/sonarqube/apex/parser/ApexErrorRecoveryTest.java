@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+import java.util.Random;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.impl.Parser;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.ERROR_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.ERROR_STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.RETURN_STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.parser.ApexTreeDescription.describe;
+
+public class ApexErrorRecoveryTest {
+
+    private static final String[] SOURCES = {
+        "src/test/resources/parser/Article.cls", "src/test/resources/parser/Chains.cls",
+        "src/test/resources/parser/DraftArticle.cls", "src/test/resources/metrics/complexity.cls",
+        "src/test/resources/metrics/methods.cls"
+    };
+
+    private static final String[] TOKENS = {
+        "if", "else", "while", "for", "try", "catch", "return", "insert", "{", "}", "(", ")", ";", "=", "Integer",
+        "x", "a.b()", "1", "'s'", "new", "public", "static", "@isTest", "class", "enum", "switch", "get", "set"
+    };
+
+    private ApexCompiledParser compiledParser;
+    private ApexCompiledParser recoveringParser;
+    private Parser<Grammar> grammarParser;
+
+    @Before
+    public void setup() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        compiledParser = ApexParser.createCompiled(configuration);
+        configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setErrorRecovery(true);
+        recoveringParser = ApexParser.createCompiled(configuration);
+        grammarParser = ApexParser.create(configuration);
+    }
+
+    @Test
+    public void testTheValidSourcesAreParsedAsWithoutRecovery() {
+        for (String source : SOURCES) {
+            AstNode root = recoveringParser.parse(new File(source));
+            assertThat(root.hasDescendant(ERROR_DECLARATION, ERROR_STATEMENT)).as(source).isFalse();
+            assertThat(root.getDescendants(METHOD_DECLARATION).size()).as(source)
+                    .isEqualTo(compiledParser.parse(new File(source)).getDescendants(METHOD_DECLARATION).size());
+        }
+    }
+
+    @Test
+    public void testTheParsingContinuesAfterAnError() {
+        AstNode root = recoveringParser.parse("public class Test {\n"
+                + "    public Integer count { get; set; }\n"
+                + "    public void run() { x = 1; if (y) { return 1; } z = 2; }\n"
+                + "    public int size() { return 1; }\n"
+                + "}\n");
+        assertThat(root.getDescendants(ERROR_DECLARATION)).hasSize(1);
+        assertThat(root.getDescendants(ERROR_STATEMENT)).hasSize(2);
+        assertThat(root.getDescendants(METHOD_DECLARATION)).hasSize(2);
+        assertThat(root.getDescendants(RETURN_STATEMENT)).hasSize(2);
+        assertThat(root.getFirstDescendant(ERROR_STATEMENT).getTokenLine()).isEqualTo(3);
+    }
+
+    @Test
+    public void testRandomSourcesAreParsedAsTheGrammarDoes() {
+        Random random = new Random(20);
+        for (int iteration = 0; iteration < 2000; iteration++) {
+            StringBuilder tokens = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int token = 0; token < length; token++) {
+                tokens.append(TOKENS[random.nextInt(TOKENS.length)]).append(' ');
+            }
+            String[] sources = {"public class Test { public void run() { %s } }", "public class Test { %s }"};
+            String source = String.format(sources[random.nextInt(sources.length)], tokens);
+            assertThat(parse(recoveringParser, source)).as(source).isEqualTo(parse(grammarParser, source));
+        }
+    }
+
+    private static String parse(Parser<Grammar> parser, String source) {
+        try {
+            return describe(parser.parse(source));
+        } catch (RecognitionException e) {
+            return e.getLine() + ": " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.Random;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.impl.Parser;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.EXPRESSION_FINAL;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.NUMERIC_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.NUMERIC_EXPRESSION_OPERATIONS;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.RETURN_STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TERMINAL_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.parser.ApexTreeDescription.describe;
+
+public class ApexExpressionParserTest {
+
+    private static final String[] EXPRESSIONS = {
+        "a", "a.b().c(d, 'e', 1).f", "a + b", "a(1) * b.c()", "a % 2", "a++", "a--", "a == b", "a > b.c()",
+        "a < 1", "new Account()", "new Account(a, b)", "(Integer) a.b()", "(int) 1", "null", "this", "super",
+        "'text'", "a + + b", "a + +", "a = = b", "a + b + c", "a.", "a(", "a(b", "a(b,)", "new Account(a,)",
+        "(Integer) + a", "(a)", "a ==", "", "a b"
+    };
+
+    private static final String[] TOKENS = {
+        "a", "b", "c(", "d()", "(", ")", ".", ",", "+", "-", "*", "/", "%", "=", ">", "<", "new", "Integer",
+        "int", "'s'", "1", "null", "this", "super"
+    };
+
+    private Parser<Grammar> grammarParser;
+    private ApexCompiledParser parser;
+
+    @Before
+    public void setup() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        grammarParser = ApexParser.create(configuration);
+        parser = ApexParser.createCompiled(configuration);
+    }
+
+    @Test
+    public void testTheExpressionsAreParsedAsTheGrammarDoes() {
+        for (String expression : EXPRESSIONS) {
+            assertSameResult("x = " + expression + ";");
+            assertSameResult("Integer x = " + expression + ";");
+            assertSameResult("if (" + expression + ") { return " + expression + "; }");
+            assertSameResult("while (" + expression + ") insert " + expression + ";");
+        }
+    }
+
+    @Test
+    public void testRandomTokensAreParsedAsTheGrammarDoes() {
+        Random random = new Random(15);
+        for (int iteration = 0; iteration < 2000; iteration++) {
+            StringBuilder expression = new StringBuilder();
+            int length = 1 + random.nextInt(6);
+            for (int token = 0; token < length; token++) {
+                expression.append(TOKENS[random.nextInt(TOKENS.length)]).append(' ');
+            }
+            String[] statements = {"x = %s;", "Integer x = %s;", "if (%s) return a;", "return %s;"};
+            assertSameResult(String.format(statements[random.nextInt(statements.length)], expression));
+        }
+    }
+
+    @Test
+    public void testTheNodesHaveTheRulesOfTheGrammar() {
+        parser.setRootRule(parser.getGrammar().rule(RETURN_STATEMENT));
+        AstNode expression = parser.parse("return a.b() + c;").getFirstChild(EXPRESSION_FINAL).getFirstChild();
+        assertThat(expression.getType()).isEqualTo(EXPRESSION);
+        AstNode operation = expression.getFirstChild(NUMERIC_EXPRESSION).getFirstChild();
+        assertThat(operation.getType()).isEqualTo(NUMERIC_EXPRESSION_OPERATIONS);
+        assertThat(operation.getChildren(TERMINAL_EXPRESSION)).hasSize(2);
+        assertThat(operation.getToken().getValue()).isEqualTo("a");
+        assertThat(operation.getLastToken().getValue()).isEqualTo("c");
+    }
+
+    private void assertSameResult(String statements) {
+        String source = "public class Test { public void run() { " + statements + " } }";
+        assertThat(parse(parser, source)).as(source).isEqualTo(parse(grammarParser, source));
+    }
+
+    private static String parse(Parser<Grammar> parser, String source) {
+        try {
+            return describe(parser.parse(source));
+        } catch (RecognitionException e) {
+            return e.getLine() + ": " + e.getMessage();
+        }
+    }
+}
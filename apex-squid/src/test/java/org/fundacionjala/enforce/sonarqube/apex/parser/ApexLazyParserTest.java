@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.squidbridge.SquidAstVisitor;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_NAME;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT_BLOCK;
+import static org.fundacionjala.enforce.sonarqube.apex.parser.ApexTreeDescription.describe;
+
+public class ApexLazyParserTest {
+
+    private static final String[] SOURCES = {
+        "src/test/resources/parser/Article.cls", "src/test/resources/parser/Chains.cls",
+        "src/test/resources/parser/DraftArticle.cls", "src/test/resources/metrics/complexity.cls",
+        "src/test/resources/metrics/methods.cls"
+    };
+
+    private ApexConfiguration configuration;
+    private ApexCompiledParser fullParser;
+
+    @Before
+    public void setup() {
+        configuration = new ApexConfiguration(Charsets.UTF_8);
+        fullParser = ApexParser.createCompiled(configuration);
+    }
+
+    @Test
+    public void testTheBlocksAreNotParsedUntilSearched() {
+        ApexLazyParser parser = ApexParser.createLazy(configuration, Collections.emptyList());
+        AstNode root = parser.parse(new File("src/test/resources/metrics/methods.cls"));
+        List<ApexLazyBlock> blocks = findLazyBlocks(root);
+        assertThat(blocks).isNotEmpty();
+        for (ApexLazyBlock block : blocks) {
+            assertThat(block.isParsed()).isFalse();
+        }
+        AstNode method = root.getFirstDescendant(METHOD_DECLARATION);
+        assertThat(method.getFirstDescendant(METHOD_NAME)).isNotNull();
+        assertThat(blocks.get(1).isParsed()).isFalse();
+        assertThat(method.getDescendants(STATEMENT)).isNotEmpty();
+        assertThat(blocks.get(0).isParsed()).isFalse();
+        assertThat(blocks.get(1).isParsed()).isTrue();
+        assertThat(blocks.get(2).isParsed()).isFalse();
+    }
+
+    @Test
+    public void testASearchForOutlineTypesDoesNotParseTheBlocks() {
+        ApexLazyParser parser = ApexParser.createLazy(configuration, Collections.emptyList());
+        AstNode root = parser.parse(new File("src/test/resources/metrics/methods.cls"));
+        assertThat(root.getFirstDescendant(CLASS_DECLARATION).getDescendants(METHOD_DECLARATION)).isNotEmpty();
+        assertThat(root.getDescendants(METHOD_NAME)).isNotEmpty();
+        for (ApexLazyBlock block : findLazyBlocks(root)) {
+            assertThat(block.isParsed()).isFalse();
+        }
+        assertThat(root.getDescendants(STATEMENT)).isNotEmpty();
+        for (ApexLazyBlock block : findLazyBlocks(root)) {
+            assertThat(block.isParsed()).isTrue();
+        }
+    }
+
+    @Test
+    public void testTheParsedBlocksAreCached() {
+        ApexLazyParser parser = ApexParser.createLazy(configuration, Collections.emptyList());
+        AstNode block = parser.parse(new File("src/test/resources/metrics/methods.cls"))
+                .getFirstDescendant(STATEMENT_BLOCK);
+        AstNode statement = block.getFirstDescendant(STATEMENT);
+        assertThat(statement).isNotNull();
+        assertThat(block.getFirstDescendant(STATEMENT)).isSameAs(statement);
+        assertThat(statement.getParent()).isSameAs(block);
+    }
+
+    @Test
+    public void testTheSearchedBlocksAreParsedAsTheFullGrammarDoes() {
+        ApexLazyParser parser = ApexParser.createLazy(configuration, Collections.emptyList());
+        for (String source : SOURCES) {
+            AstNode root = parser.parse(new File(source));
+            AstNode fullRoot = fullParser.parse(new File(source));
+            assertThat(root.getDescendants(STATEMENT)).hasSize(fullRoot.getDescendants(STATEMENT).size());
+            assertThat(describe(root)).as(source).isEqualTo(describe(fullRoot));
+        }
+    }
+
+    @Test
+    public void testTheFilesAreParsedFullyForAVisitorOfStatements() {
+        SquidAstVisitor<Grammar> visitor = new SquidAstVisitor<Grammar>() {
+            @Override
+            public void init() {
+                subscribeTo(STATEMENT);
+            }
+        };
+        visitor.init();
+        ApexLazyParser parser = ApexParser.createLazy(configuration, Collections.singletonList(visitor));
+        AstNode root = parser.parse(new File("src/test/resources/metrics/methods.cls"));
+        assertThat(findLazyBlocks(root)).isEmpty();
+        assertThat(root.getDescendants(STATEMENT)).isNotEmpty();
+    }
+
+    @Test
+    public void testABlockThatCanNotBeParsedKeepsItsTokens() {
+        ApexLazyParser parser = ApexParser.createLazy(configuration, Collections.emptyList());
+        AstNode block = parser.parse("public class Test { public void run() { if if } }")
+                .getFirstDescendant(STATEMENT_BLOCK);
+        assertThat(block.getDescendants(STATEMENT)).isEmpty();
+        assertThat(block.getNumberOfChildren()).isEqualTo(4);
+        assertThat(parser.getFailedBlocks()).isEqualTo(1);
+        parser.parse("public class Test { public void run() { } }");
+        assertThat(parser.getFailedBlocks()).isEqualTo(0);
+    }
+
+    private static List<ApexLazyBlock> findLazyBlocks(AstNode node) {
+        List<ApexLazyBlock> blocks = new ArrayList<>();
+        if (node instanceof ApexLazyBlock) {
+            blocks.add((ApexLazyBlock) node);
+        }
+        for (AstNode child : node.getChildren()) {
+            blocks.addAll(findLazyBlocks(child));
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import org.sonar.sslr.grammar.GrammarRuleKey;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+
+/**
+ * Compares the parse time of the compiled and the memoizing parsers and prints the hits and misses of the memoized
+ * rules. It is not run by the build, run it from this module with:
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.fundacionjala.enforce.sonarqube.apex.parser.ApexMemoizingParserBenchmark
+ * -Dexec.args="src/test/resources/parser/Chains.cls 50"}
+ */
+public final class ApexMemoizingParserBenchmark {
+
+    private static final String DEFAULT_FILE = "src/test/resources/parser/Chains.cls";
+    private static final int DEFAULT_ITERATIONS = 50;
+
+    private ApexMemoizingParserBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        File file = new File(args.length > 0 ? args[0] : DEFAULT_FILE);
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        ApexCompiledParser compiledParser = ApexParser.createCompiled(configuration);
+        ApexMemoizingParser memoizingParser = ApexParser.createMemoizing(configuration,
+                ApexMemoizingParser.EXPRESSION_RULES);
+
+        time(compiledParser, file, iterations);
+        time(memoizingParser, file, iterations);
+        memoizingParser.clearCounters();
+        System.out.printf("%s, %d iterations%n", file, iterations);
+        System.out.printf("compiled:  %.3f ms per parse%n", time(compiledParser, file, iterations));
+        System.out.printf("memoizing: %.3f ms per parse%n", time(memoizingParser, file, iterations));
+        for (GrammarRuleKey rule : ApexMemoizingParser.EXPRESSION_RULES) {
+            System.out.printf("%s: %d hits, %d misses per parse%n", rule,
+                    memoizingParser.getHits(rule) / iterations, memoizingParser.getMisses(rule) / iterations);
+        }
+    }
+
+    private static double time(ApexCompiledParser parser, File file, int iterations) {
+        long start = System.nanoTime();
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            parser.parse(file);
+        }
+        return (double) (System.nanoTime() - start) / TimeUnit.MILLISECONDS.toNanos(1) / iterations;
+    }
+}
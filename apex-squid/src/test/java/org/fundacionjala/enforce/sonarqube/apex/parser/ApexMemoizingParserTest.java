@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.io.File;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.RecognitionException;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TERMINAL_EXPRESSION;
+import static org.fundacionjala.enforce.sonarqube.apex.parser.ApexTreeDescription.describe;
+
+public class ApexMemoizingParserTest {
+
+    private static final File ARTICLE = new File("src/test/resources/parser/Article.cls");
+    private static final File CHAINS = new File("src/test/resources/parser/Chains.cls");
+    private static final File DRAFT_ARTICLE = new File("src/test/resources/parser/DraftArticle.cls");
+
+    private ApexConfiguration configuration;
+    private ApexMemoizingParser parser;
+
+    @Before
+    public void setup() {
+        configuration = new ApexConfiguration(Charsets.UTF_8);
+        parser = ApexParser.createMemoizing(configuration, ApexMemoizingParser.EXPRESSION_RULES);
+    }
+
+    @Test
+    public void testTheTreeIsTheSameAsTheCompiledParser() {
+        ApexCompiledParser compiledParser = ApexParser.createCompiled(configuration);
+        for (File file : Lists.newArrayList(CHAINS, ARTICLE, DRAFT_ARTICLE, CHAINS)) {
+            assertThat(describe(parser.parse(file))).isEqualTo(describe(compiledParser.parse(file)));
+        }
+    }
+
+    @Test
+    public void testTheTerminalExpressionsOfTheChainsAreReused() {
+        parser.parse(CHAINS);
+        long hits = parser.getHits(TERMINAL_EXPRESSION);
+        assertThat(hits).isGreaterThan(0);
+        assertThat(parser.getMisses(TERMINAL_EXPRESSION)).isGreaterThan(0);
+        parser.parse(CHAINS);
+        assertThat(parser.getHits(TERMINAL_EXPRESSION)).isEqualTo(2 * hits);
+        parser.clearCounters();
+        assertThat(parser.getHits(TERMINAL_EXPRESSION)).isEqualTo(0);
+        assertThat(parser.getMisses(TERMINAL_EXPRESSION)).isEqualTo(0);
+    }
+
+    @Test
+    public void testTheRulesThatAreNotMemoizedHaveNoCounters() {
+        parser.parse(CHAINS);
+        assertThat(parser.getHits(EXPRESSION)).isEqualTo(0);
+        assertThat(parser.getMisses(EXPRESSION)).isEqualTo(0);
+    }
+
+    @Test
+    public void testTheRootRuleCanBeChanged() {
+        parser.setRootRule(parser.getGrammar().rule(EXPRESSION));
+        assertThat(parser.parse("first.getName().trim()").getType()).isEqualTo(EXPRESSION);
+        assertThat(parser.getHits(TERMINAL_EXPRESSION)).isGreaterThan(0);
+    }
+
+    @Test(expected = RecognitionException.class)
+    public void testThrowingAnExceptionWhenTheSourceIsNotValid() {
+        parser.parse("public class {");
+    }
+}
@@ -27,9 +27,12 @@ import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 
 import com.google.common.base.Charsets;
+import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.impl.Parser;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,6 +40,18 @@ import org.sonar.sslr.tests.ParserAssert;
 import org.sonar.sslr.tests.ParsingResultComparisonFailure;
 
 import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexGrammar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.METHOD_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT_BLOCK;
 
 public class ApexParserTest {
 
@@ -59,6 +74,64 @@ public class ApexParserTest {
         ApexParser.create(null);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowingAnExceptionWhenCreateCompiledParserWithNullConfiguration() {
+        ApexParser.createCompiled(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowingAnExceptionWhenGettingCompiledParserWithNullConfiguration() {
+        ApexParser.getCompiled(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowingAnExceptionWhenCreateMemoizingParserWithNullConfiguration() {
+        ApexParser.createMemoizing(null, ApexMemoizingParser.EXPRESSION_RULES);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowingAnExceptionWhenCreateOutlineParserWithNullConfiguration() {
+        ApexParser.createOutline(null);
+    }
+
+    @Test
+    public void testTheOutlineParserSkipsTheStatementBlocks() {
+        String source = "public class Test { public void run() { x = = 1; if { while } } }";
+        new ParserAssert(parser).notMatches(source);
+        ApexCompiledParser outlineParser = ApexParser.createOutline(new ApexConfiguration(Charsets.UTF_8));
+        assertSame(ApexGrammar.getOutlineInstance(), outlineParser.getGrammar());
+        AstNode block = outlineParser.parse(source).getFirstDescendant(METHOD_DECLARATION)
+                .getFirstChild(STATEMENT_BLOCK);
+        assertFalse(block.hasDescendant(STATEMENT));
+        assertEquals(11, block.getNumberOfChildren());
+        assertEquals("}", block.getLastChild().getTokenValue());
+    }
+
+    @Test
+    public void testTheCompiledParserIsReusedByTheThread() throws Exception {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        ApexCompiledParser compiledParser = ApexParser.getCompiled(configuration);
+        compiledParser.parse(articleSource);
+        assertNotNull(compiledParser.getTokenStream());
+        assertSame(compiledParser, ApexParser.getCompiled(new ApexConfiguration(Charsets.UTF_8)));
+        assertNull(compiledParser.getTokenStream());
+        assertNotSame(compiledParser, ApexParser.getCompiled(new ApexConfiguration(Charsets.ISO_8859_1)));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertNotSame(compiledParser, executor.submit(() -> ApexParser.getCompiled(configuration)).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTheGrammarIsSharedByTheParsers() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        assertSame(ApexGrammar.getInstance(), parser.getGrammar());
+        assertSame(ApexGrammar.getInstance(), ApexParser.create(configuration).getGrammar());
+        assertSame(ApexGrammar.getInstance(), ApexParser.createCompiled(configuration).getGrammar());
+    }
+
     @Test
     public void testVerifiesIfApexClassesAreParsed() {
         new ParserAssert(parser)
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import java.util.concurrent.ForkJoinPool;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.RecognitionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexGrammar;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexSinglePassLexer;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.APEX_GRAMMAR;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.CLASS_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.TYPE_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.parser.ApexTreeDescription.describe;
+
+public class ApexSplitParserTest {
+
+    private static final String CLASS = "@isTest public with sharing class Test%d extends Base {\n"
+            + "    public Test%1$d() { String title = 'Article'; }\n"
+            + "    public int run(int number) { if (number > 0) { return 10 * number; } return 0; }\n"
+            + "}\n";
+
+    private ForkJoinPool pool;
+    private ApexCompiledParser compiledParser;
+    private ApexSplitParser parser;
+
+    @Before
+    public void setup() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        pool = new ForkJoinPool(4);
+        compiledParser = ApexParser.createCompiled(configuration);
+        parser = new ApexSplitParser(ApexGrammar.getInstance(), new ApexSinglePassLexer(configuration), pool, 0);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testTheDeclarationsAreParsedAsTheGrammarDoes() {
+        String source = classes(12);
+        AstNode root = parser.parse(source);
+        assertThat(root.is(APEX_GRAMMAR)).isTrue();
+        assertThat(root.getFirstChild().is(TYPE_DECLARATION)).isTrue();
+        assertThat(root.getDescendants(CLASS_DECLARATION)).hasSize(12);
+        assertThat(describe(root)).isEqualTo(describe(compiledParser.parse(source)));
+        assertThat(root.getLastToken().getLine()).isEqualTo(49);
+    }
+
+    @Test
+    public void testASingleDeclarationIsParsedAsTheGrammarDoes() {
+        String source = classes(1);
+        assertThat(describe(parser.parse(source))).isEqualTo(describe(compiledParser.parse(source)));
+    }
+
+    @Test
+    public void testASmallFileIsNotSplit() {
+        ApexSplitParser smallParser = ApexParser.createSplit(new ApexConfiguration(Charsets.UTF_8));
+        String source = classes(3);
+        assertThat(describe(smallParser.parse(source))).isEqualTo(describe(compiledParser.parse(source)));
+    }
+
+    @Test
+    public void testAnErrorIsReportedAsTheGrammarDoes() {
+        String source = classes(3) + "public class Broken { public void run() { if if } }\n" + classes(2);
+        assertThat(parseError(parser, source)).isNotNull().isEqualTo(parseError(compiledParser, source));
+        source = classes(3) + "}\n";
+        assertThat(parseError(parser, source)).isNotNull().isEqualTo(parseError(compiledParser, source));
+    }
+
+    private static String classes(int count) {
+        StringBuilder source = new StringBuilder();
+        for (int index = 0; index < count; index++) {
+            source.append(String.format(CLASS, index));
+        }
+        return source.toString();
+    }
+
+    private static String parseError(ApexCompiledParser parser, String source) {
+        try {
+            parser.parse(source);
+        } catch (RecognitionException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+}
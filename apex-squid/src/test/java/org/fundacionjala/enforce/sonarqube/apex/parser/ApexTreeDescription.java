@@ -0,0 +1,55 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+
+final class ApexTreeDescription {
+
+    private ApexTreeDescription() {
+    }
+
+    static String describe(AstNode node) {
+        StringBuilder description = new StringBuilder(node.getName()).append(typeName(node.getType()))
+                .append('[').append(node.getFromIndex()).append(',').append(node.getToIndex()).append(']');
+        if (node.hasToken()) {
+            Token token = node.getToken();
+            description.append(token.getValue()).append(token.getLine()).append(':').append(token.getColumn());
+            for (Trivia trivia : token.getTrivia()) {
+                description.append(trivia.getToken().getValue()).append(trivia.getToken().getLine());
+            }
+        }
+        for (AstNode child : node.getChildren()) {
+            description.append('(').append(describe(child)).append(')');
+        }
+        return description.toString();
+    }
+
+    private static String typeName(AstNodeType type) {
+        return type == null ? "" : type.getClass().getSimpleName() + ':' + type;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.parser.grammar;
+
+import com.google.common.base.Charsets;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.parser.ApexParser;
+import org.fundacionjala.enforce.sonarqube.apex.parser.ApexRuleTest;
+
+import static org.sonar.sslr.tests.Assertions.assertThat;
+
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.ERROR_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.ERROR_STATEMENT;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.FIELD_DECLARATION;
+import static org.fundacionjala.enforce.sonarqube.apex.api.grammar.ApexGrammarRuleKey.STATEMENT;
+
+public class ApexGrammarErrorStatementTest extends ApexRuleTest {
+
+    @Before
+    public void init() {
+        ApexConfiguration configuration = new ApexConfiguration(Charsets.UTF_8);
+        configuration.setErrorRecovery(true);
+        parser = ApexParser.create(configuration);
+    }
+
+    @Test
+    public void positiveRules() {
+        setRootRule(ERROR_STATEMENT);
+        assertThat(parser)
+                .matches("x = 1;")
+                .matches(";")
+                .matches("switch on x { when 1 { y(); } }")
+                .matches("{ }")
+                .matches("x = 1");
+    }
+
+    @Test
+    public void negativeRules() {
+        setRootRule(ERROR_STATEMENT);
+        assertThat(parser)
+                .notMatches("")
+                .notMatches("}")
+                .notMatches("x = 1; y = 2;")
+                .notMatches("x = 1 }");
+    }
+
+    @Test
+    public void rulesOfTheDeclarations() {
+        setRootRule(ERROR_DECLARATION);
+        assertThat(parser)
+                .matches("public enum Season { WINTER, SUMMER }")
+                .matches("public Integer count { get; set; }")
+                .notMatches("}");
+        setRootRule(FIELD_DECLARATION);
+        assertThat(parser)
+                .matches("public void run() { }")
+                .matches("public enum Season { WINTER, SUMMER }");
+    }
+
+    @Test
+    public void statementsThatCanNotBeParsed() {
+        setRootRule(STATEMENT);
+        assertThat(parser)
+                .matches("x = 1;")
+                .matches("return 1;")
+                .notMatches("}");
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import org.sonar.api.rule.RuleKey;
+
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
+
+/**
+ * Stores the measures, the complexity of the functions and the issues found in a file, detached from
+ * the squid objects of the scanner that produced them.
+ */
+public class ApexFileResult {
+
+    /**
+     * Stores the value of each metric.
+     */
+    private final Map<ApexMetric, Double> measures = new EnumMap<>(ApexMetric.class);
+
+    /**
+     * Stores the complexity of each function of the file.
+     */
+    private final List<Double> functionComplexities = Lists.newArrayList();
+
+    /**
+     * Stores the issues of the file.
+     */
+    private final List<Message> messages = Lists.newArrayList();
+
+    /**
+     * Returns the value of a metric, zero when it was not measured.
+     *
+     * @param metric the metric.
+     * @return the value.
+     */
+    public double getMeasure(ApexMetric metric) {
+        Double value = measures.get(metric);
+        return value == null ? 0.0 : value;
+    }
+
+    /**
+     * Sets the value of a metric.
+     *
+     * @param metric the metric.
+     * @param value the value.
+     */
+    public void setMeasure(ApexMetric metric, double value) {
+        measures.put(metric, value);
+    }
+
+    /**
+     * Returns the complexity of each function.
+     *
+     * @return an unmodifiable list of complexities.
+     */
+    public List<Double> getFunctionComplexities() {
+        return Collections.unmodifiableList(functionComplexities);
+    }
+
+    /**
+     * Adds the complexity of a function.
+     *
+     * @param complexity the complexity.
+     */
+    public void addFunctionComplexity(double complexity) {
+        functionComplexities.add(complexity);
+    }
+
+    /**
+     * Returns the issues of the file.
+     *
+     * @return an unmodifiable list of issues.
+     */
+    public List<Message> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * Adds an issue.
+     *
+     * @param ruleKey key of the violated rule.
+     * @param line line of the issue, it can be null.
+     * @param text formatted message.
+     */
+    public void addMessage(RuleKey ruleKey, Integer line, String text) {
+        messages.add(new Message(ruleKey, line, text));
+    }
+
+    /**
+     * An issue detected by a check.
+     */
+    public static class Message {
+
+        /**
+         * Stores the key of the violated rule.
+         */
+        private final RuleKey ruleKey;
+
+        /**
+         * Stores the line of the issue.
+         */
+        private final Integer line;
+
+        /**
+         * Stores the formatted message.
+         */
+        private final String text;
+
+        /**
+         * Default constructor.
+         *
+         * @param ruleKey key of the violated rule.
+         * @param line line of the issue, it can be null.
+         * @param text formatted message.
+         */
+        Message(RuleKey ruleKey, Integer line, String text) {
+            this.ruleKey = ruleKey;
+            this.line = line;
+            this.text = text;
+        }
+
+        /**
+         * Returns the key of the violated rule.
+         *
+         * @return the rule key.
+         */
+        public RuleKey getRuleKey() {
+            return ruleKey;
+        }
+
+        /**
+         * Returns the line of the issue.
+         *
+         * @return the line, it can be null.
+         */
+        public Integer getLine() {
+            return line;
+        }
+
+        /**
+         * Returns the formatted message.
+         *
+         * @return the message.
+         */
+        public String getText() {
+            return text;
+        }
+    }
+}
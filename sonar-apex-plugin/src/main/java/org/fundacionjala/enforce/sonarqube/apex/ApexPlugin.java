@@ -26,6 +26,9 @@ package org.fundacionjala.enforce.sonarqube.apex;
 import java.util.List;
 
 import com.google.common.collect.ImmutableList;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
 import org.sonar.api.SonarPlugin;
 
 import org.fundacionjala.enforce.sonarqube.apex.cpd.ApexCpdMapping;
@@ -36,6 +39,74 @@ import org.fundacionjala.enforce.sonarqube.apex.rules.ApexRulesDefinition;
 /**
  * It's an entry-point to declare its extensions.
  */
+@Properties({
+    @Property(
+            key = ApexSquidSensor.THREADS_KEY,
+            defaultValue = "" + ApexSquidSensor.DEFAULT_THREADS,
+            name = "Scanner threads",
+            description = "Number of threads used to scan the Apex files, 1 scans them serially.",
+            project = true,
+            type = PropertyType.INTEGER),
+    @Property(
+            key = ApexSquidSensor.CACHE_KEY,
+            defaultValue = "false",
+            name = "Result cache",
+            description = "Reuses the measures and issues of the files unchanged since the previous analysis.",
+            project = true,
+            type = PropertyType.BOOLEAN),
+    @Property(
+            key = ApexSquidSensor.STREAMING_KEY,
+            defaultValue = "false",
+            name = "Streaming analysis",
+            description = "Saves the measures and issues of each file as soon as it is scanned and releases it.",
+            project = true,
+            type = PropertyType.BOOLEAN),
+    @Property(
+            key = ApexSquidSensor.ERROR_RECOVERY_KEY,
+            defaultValue = "false",
+            name = "Error recovery",
+            description = "Skips the declarations and statements that can not be parsed instead of the whole file.",
+            project = true,
+            type = PropertyType.BOOLEAN),
+    @Property(
+            key = ApexSquidSensor.COMPACT_AST_KEY,
+            defaultValue = "false",
+            name = "Compact syntax trees",
+            description = "Stores the syntax tree of each file in primitive arrays, which retain less memory.",
+            project = true,
+            type = PropertyType.BOOLEAN),
+    @Property(
+            key = ApexSquidSensor.COLLAPSE_WRAPPERS_KEY,
+            defaultValue = "false",
+            name = "Collapse wrapper nodes",
+            description = "Replaces the nodes of the rules that only wrap one child, such as statements, by the child.",
+            project = true,
+            type = PropertyType.BOOLEAN),
+    @Property(
+            key = ApexSquidSensor.MAX_FILE_TOKENS_KEY,
+            defaultValue = "0",
+            name = "Maximum tokens per file",
+            description = "Files with more tokens are only measured from their tokens and reported as skipped, "
+                    + "0 for no maximum.",
+            project = true,
+            type = PropertyType.INTEGER),
+    @Property(
+            key = ApexSquidSensor.MAX_FILE_MILLIS_KEY,
+            defaultValue = "0",
+            name = "Maximum analysis time per file",
+            description = "Milliseconds after which the parse or the visit of a file is abandoned, the file is only "
+                    + "measured from its tokens and reported as skipped, 0 for no maximum.",
+            project = true,
+            type = PropertyType.INTEGER),
+    @Property(
+            key = ApexSquidSensor.AST_CACHE_KEY,
+            defaultValue = "false",
+            name = "Syntax tree cache",
+            description = "Reuses the syntax trees of the files unchanged since the previous analysis, whatever its "
+                    + "rules.",
+            project = true,
+            type = PropertyType.BOOLEAN)
+})
 public class ApexPlugin extends SonarPlugin {
 
     /**
@@ -27,9 +27,12 @@ import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Consumer;
 
 import com.google.common.collect.Lists;
 import com.sonar.sslr.api.Grammar;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.fs.FilePredicate;
@@ -39,6 +42,7 @@ import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.rule.CheckFactory;
 import org.sonar.api.batch.rule.Checks;
 import org.sonar.api.component.ResourcePerspectives;
+import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issuable;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.measures.CoreMetrics;
@@ -50,21 +54,110 @@ import org.sonar.api.resources.Project;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.squidbridge.AstScanner;
 import org.sonar.squidbridge.SquidAstVisitor;
-import org.sonar.squidbridge.api.CheckMessage;
 import org.sonar.squidbridge.api.SourceCode;
 import org.sonar.squidbridge.api.SourceFile;
 import org.sonar.squidbridge.api.SourceFunction;
-import org.sonar.squidbridge.indexer.QueryByParent;
 import org.sonar.squidbridge.indexer.QueryByType;
 
-import org.fundacionjala.enforce.sonarqube.apex.checks.CheckList;
 import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
+import org.fundacionjala.enforce.sonarqube.apex.cache.ApexResultCache;
+import org.fundacionjala.enforce.sonarqube.apex.checks.CheckList;
 
 /**
  * Parses a flat file, connect to a web server and save measures on the whole tree of resources.
  */
 public class ApexSquidSensor implements Sensor {
 
+    /**
+     * Stores the logger of the sensor.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ApexSquidSensor.class);
+
+    /**
+     * Stores the key of the property with the number of threads used to scan the files.
+     */
+    public static final String THREADS_KEY = "sonar.apex.threads";
+
+    /**
+     * Stores the default number of threads, scanning the files serially.
+     */
+    public static final int DEFAULT_THREADS = 1;
+
+    /**
+     * Stores the key of the property that enables the cache of the results of unchanged files.
+     */
+    public static final String CACHE_KEY = "sonar.apex.cache";
+
+    /**
+     * Stores the key of the property that saves the measures and issues of each file as soon as it is scanned.
+     */
+    public static final String STREAMING_KEY = "sonar.apex.streaming";
+
+    /**
+     * Stores the key of the property that skips the declarations and statements that can not be parsed.
+     */
+    public static final String ERROR_RECOVERY_KEY = "sonar.apex.errorRecovery";
+
+    /**
+     * Stores the key of the property that stores the trees of the parsed files in primitive arrays.
+     */
+    public static final String COMPACT_AST_KEY = "sonar.apex.compactAst";
+
+    /**
+     * Stores the key of the property that collapses the wrapper rules into their only child.
+     */
+    public static final String COLLAPSE_WRAPPERS_KEY = "sonar.apex.collapseWrappers";
+
+    /**
+     * Stores the key of the property with the maximum number of tokens of a fully analyzed file.
+     */
+    public static final String MAX_FILE_TOKENS_KEY = "sonar.apex.maxFileTokens";
+
+    /**
+     * Stores the key of the property with the maximum milliseconds spent parsing a fully analyzed file.
+     */
+    public static final String MAX_FILE_MILLIS_KEY = "sonar.apex.maxFileMillis";
+
+    /**
+     * Stores the key of the property that caches the token streams and syntax trees of the parsed files.
+     */
+    public static final String AST_CACHE_KEY = "sonar.apex.astCache";
+
+    /**
+     * Stores the name of the directory of the cached syntax trees, in the working directory.
+     */
+    private static final String AST_CACHE_DIRECTORY = "apex-ast-cache";
+
+    /**
+     * Stores a message for a file with parse errors.
+     */
+    private static final String FILE_PARSE_ERRORS = "Skipped {} declarations or statements that could not be parsed"
+            + " in the file {}.";
+
+    /**
+     * Stores a message for the parse errors of the analysis.
+     */
+    private static final String PARSE_ERRORS = "Skipped {} declarations or statements that could not be parsed"
+            + " in {} files.";
+
+    /**
+     * Stores a message for a file with more tokens than the budget.
+     */
+    private static final String FILE_TOO_MANY_TOKENS = "Skipped the parse of the file {}, which has more than {}"
+            + " tokens, only its lines and comments were measured.";
+
+    /**
+     * Stores a message for a file whose parse or visit outlasted the budget.
+     */
+    private static final String FILE_TIMED_OUT = "Skipped the analysis of the file {}, whose parse and visit took"
+            + " more than {} ms, only its lines and comments were measured.";
+
+    /**
+     * Stores a message for the skipped files of the analysis.
+     */
+    private static final String SKIPPED_FILES = "Skipped the parse of {} files above the budget of {} tokens"
+            + " and {} ms.";
+
     /**
      * Stores an array with a limits of the function.
      */
@@ -76,9 +169,35 @@ public class ApexSquidSensor implements Sensor {
     private static final Number[] FILES_DISTRIB_BOTTOM_LIMITS = {0, 5, 10, 20, 30, 60, 90};
 
     /**
-     * Stores a {@link Checks} of the visitors.
+     * Stores a factory to create the checks.
      */
-    private final Checks<SquidAstVisitor<Grammar>> checks;
+    private final CheckFactory checkFactory;
+
+    /**
+     * Stores the {@link Checks} of the visitors, one for each scanner.
+     */
+    private final List<Checks<SquidAstVisitor<Grammar>>> checks = Lists.newArrayList();
+
+    /**
+     * Stores the number of files of the last analysis that exceeded the budget, which were only measured from
+     * their tokens.
+     */
+    private int skippedFiles;
+
+    /**
+     * Stores the number of declarations and statements of the last analysis that could not be parsed.
+     */
+    private int parseErrors;
+
+    /**
+     * Stores the number of files of the last analysis with parse errors.
+     */
+    private int filesWithParseErrors;
+
+    /**
+     * Stores the settings of the project.
+     */
+    private final Settings settings;
 
     /**
      * Stores a perspective from resources.
@@ -96,14 +215,14 @@ public class ApexSquidSensor implements Sensor {
     private final FileSystem fileSystem;
 
     /**
-     * Stores an abstract static tree scanner.
+     * Stores a sensor context.
      */
-    private AstScanner<Grammar> scanner;
+    private SensorContext context;
 
     /**
-     * Stores a sensor context.
+     * Stores the apex configuration of the last analysis.
      */
-    private SensorContext context;
+    private ApexConfiguration configuration;
 
     /**
      * Default construct to initialize the variables.
@@ -111,11 +230,12 @@ public class ApexSquidSensor implements Sensor {
      * @param fileSystem source files.
      * @param perspectives perspective from resources.
      * @param checkFactory factory to create a check.
+     * @param settings settings of the project.
      */
-    public ApexSquidSensor(FileSystem fileSystem, ResourcePerspectives perspectives, CheckFactory checkFactory) {
-        this.checks = checkFactory
-                .<SquidAstVisitor<Grammar>>create(CheckList.REPOSITORY_KEY)
-                .addAnnotatedChecks(CheckList.getChecks());
+    public ApexSquidSensor(FileSystem fileSystem, ResourcePerspectives perspectives, CheckFactory checkFactory,
+            Settings settings) {
+        this.checkFactory = checkFactory;
+        this.settings = settings;
         this.fileSystem = fileSystem;
         this.resourcePerspectives = perspectives;
 
@@ -145,15 +265,44 @@ public class ApexSquidSensor implements Sensor {
     @Override
     public void analyse(Project project, SensorContext context) {
         this.context = context;
+        checks.clear();
+        skippedFiles = 0;
+        parseErrors = 0;
+        filesWithParseErrors = 0;
 
-        List<SquidAstVisitor<Grammar>> visitors = Lists.newArrayList(checks.all());
-        scanner = ApexAstScanner.create(createConfiguration(),
-                visitors.toArray(new SquidAstVisitor[visitors.size()]));
-        scanner.scanFiles(Lists.newArrayList(fileSystem.files(filePredicate)));
-
-        Collection<SourceCode> squidSourceFiles = scanner.getIndex()
-                .search(new QueryByType(SourceFile.class));
-        save(squidSourceFiles);
+        List<File> files = Lists.newArrayList();
+        configuration = createConfiguration();
+        ApexResultCache cache = settings.getBoolean(CACHE_KEY) ? createCache(configuration) : null;
+        for (File file : fileSystem.files(filePredicate)) {
+            ApexFileResult result = cache == null ? null : cache.get(file);
+            if (result == null) {
+                files.add(file);
+            } else {
+                save(file, result);
+            }
+        }
+        int threads = getThreads();
+        if (settings.getBoolean(STREAMING_KEY)) {
+            Consumer<SourceFile> listener = squidFile -> save(squidFile, findFunctions(squidFile), cache);
+            if (threads > DEFAULT_THREADS) {
+                new ApexParallelScanner(configuration, threads, this::createChecks).scanFiles(files, listener);
+            } else {
+                Collection<SquidAstVisitor<Grammar>> visitors = createChecks();
+                new ApexStreamingScanner(configuration, listener,
+                        visitors.toArray(new SquidAstVisitor[visitors.size()])).scanFiles(files);
+            }
+        } else {
+            ApexSourceIndex index = scan(configuration, threads, files);
+            index.search(new QueryByType(SourceFile.class)).forEach(squidFile ->
+                save((SourceFile) squidFile, index.getDescendants(squidFile, SourceFunction.class), cache)
+            );
+        }
+        if (parseErrors > 0) {
+            LOG.warn(PARSE_ERRORS, parseErrors, filesWithParseErrors);
+        }
+        if (skippedFiles > 0) {
+            LOG.warn(SKIPPED_FILES, skippedFiles, configuration.getMaxFileTokens(), configuration.getMaxFileMillis());
+        }
     }
 
     /**
@@ -166,67 +315,223 @@ public class ApexSquidSensor implements Sensor {
         return getClass().getSimpleName();
     }
 
+    /**
+     * Scans the files and returns the index of the whole project.
+     *
+     * @param configuration apex configuration.
+     * @param threads number of threads.
+     * @param files files to be scanned.
+     * @return the index.
+     */
+    private ApexSourceIndex scan(ApexConfiguration configuration, int threads, List<File> files) {
+        if (threads > DEFAULT_THREADS) {
+            ApexParallelScanner scanner = new ApexParallelScanner(configuration, threads, this::createChecks);
+            scanner.scanFiles(files);
+            return scanner.getIndex();
+        }
+        Collection<SquidAstVisitor<Grammar>> visitors = createChecks();
+        AstScanner<Grammar> scanner = ApexAstScanner.create(configuration,
+                visitors.toArray(new SquidAstVisitor[visitors.size()]));
+        scanner.scanFiles(files);
+        return (ApexSourceIndex) scanner.getIndex();
+    }
+
+    /**
+     * Returns the number of threads used to scan the files, defaults to a serial scan.
+     *
+     * @return the number of threads.
+     */
+    private int getThreads() {
+        int threads = settings.hasKey(THREADS_KEY) ? settings.getInt(THREADS_KEY) : DEFAULT_THREADS;
+        return Math.max(DEFAULT_THREADS, threads);
+    }
+
+    /**
+     * Creates a new instance of each active check for a scanner.
+     *
+     * @return the checks.
+     */
+    private Collection<SquidAstVisitor<Grammar>> createChecks() {
+        Checks<SquidAstVisitor<Grammar>> scannerChecks = checkFactory
+                .<SquidAstVisitor<Grammar>>create(CheckList.REPOSITORY_KEY)
+                .addAnnotatedChecks(CheckList.getChecks());
+        checks.add(scannerChecks);
+        return Lists.newArrayList(scannerChecks.all());
+    }
+
+    /**
+     * Returns a cache keyed by the configuration, the active checks and their parameters.
+     *
+     * @param configuration apex configuration.
+     * @return the cache.
+     */
+    private ApexResultCache createCache(ApexConfiguration configuration) {
+        Checks<SquidAstVisitor<Grammar>> activeChecks = checkFactory
+                .<SquidAstVisitor<Grammar>>create(CheckList.REPOSITORY_KEY)
+                .addAnnotatedChecks(CheckList.getChecks());
+        return new ApexResultCache(fileSystem.workDir(),
+                ApexResultCache.fingerprint(activeChecks, configuration));
+    }
+
+    /**
+     * Returns the rule key of a check created for any scanner.
+     *
+     * @param check check that reported an issue.
+     * @return the rule key.
+     */
+    private RuleKey ruleKey(SquidAstVisitor<Grammar> check) {
+        for (Checks<SquidAstVisitor<Grammar>> scannerChecks : checks) {
+            RuleKey ruleKey = scannerChecks.ruleKey(check);
+            if (ruleKey != null) {
+                return ruleKey;
+            }
+        }
+        return null;
+    }
+
     /**
      * Returns the apex configuration.
      *
      * @return the configuration.
      */
     private ApexConfiguration createConfiguration() {
-        return new ApexConfiguration(fileSystem.encoding());
+        ApexConfiguration configuration = new ApexConfiguration(fileSystem.encoding());
+        configuration.setErrorRecovery(settings.getBoolean(ERROR_RECOVERY_KEY));
+        configuration.setCompactAst(settings.getBoolean(COMPACT_AST_KEY));
+        configuration.setCollapseWrappers(settings.getBoolean(COLLAPSE_WRAPPERS_KEY));
+        configuration.setMaxFileTokens(Math.max(0, settings.getInt(MAX_FILE_TOKENS_KEY)));
+        configuration.setMaxFileMillis(Math.max(0, settings.getLong(MAX_FILE_MILLIS_KEY)));
+        if (settings.getBoolean(AST_CACHE_KEY)) {
+            configuration.setAstCacheDirectory(new File(fileSystem.workDir(), AST_CACHE_DIRECTORY));
+        }
+        return configuration;
     }
 
     /**
-     * Saves issues form collection of the source code.
+     * Saves the measures and issues of a source file. A file that exceeded the budget is reported as skipped
+     * and its partial result is not cached.
      *
-     * @param squidSourceFiles collection of the source code.
+     * @param squidFile source file.
+     * @param squidFunctionsInFile functions of the source file.
+     * @param cache cache of the results, it can be null.
      */
-    private void save(Collection<SourceCode> squidSourceFiles) {
-        squidSourceFiles.forEach(squidSourceFile -> {
-            SourceFile squidFile = (SourceFile) squidSourceFile;
+    private void save(SourceFile squidFile, Collection<? extends SourceCode> squidFunctionsInFile, ApexResultCache cache) {
+        File file = new File(squidFile.getKey());
+        ApexFileResult result = createResult(squidFile, squidFunctionsInFile);
+        save(file, result);
+        if (result.getMeasure(ApexMetric.SKIPPED_FILES) > 0) {
+            reportSkippedFile(file, result);
+        } else if (cache != null) {
+            cache.put(file, result);
+        }
+    }
 
-            File file = new File(squidFile.getKey());
-            InputFile inputFile = fileSystem.inputFile(fileSystem.predicates().is(file));
+    /**
+     * Reports a file that exceeded the budget of the configuration of the analysis. Its lines, lines of code and
+     * comments were measured from its tokens, but its other measures and its issues are missing.
+     *
+     * @param file skipped file.
+     * @param result result of the analysis.
+     */
+    private void reportSkippedFile(File file, ApexFileResult result) {
+        if (result.getMeasure(ApexMetric.TIMED_OUT_FILES) > 0) {
+            LOG.warn(FILE_TIMED_OUT, file, configuration.getMaxFileMillis());
+        } else {
+            LOG.warn(FILE_TOO_MANY_TOKENS, file, configuration.getMaxFileTokens());
+        }
+        skippedFiles++;
+    }
 
-            saveFilesComplexityDistribution(inputFile, squidFile);
-            saveFunctionsComplexityDistribution(inputFile, squidFile);
-            saveMeasures(inputFile, squidFile);
-            saveIssues(inputFile, squidFile);
-        });
+    /**
+     * Returns the functions among the descendants of a source code.
+     *
+     * @param sourceCode the source code.
+     * @return the functions.
+     */
+    private static Collection<SourceCode> findFunctions(SourceCode sourceCode) {
+        List<SourceCode> functions = Lists.newArrayList();
+        if (sourceCode.hasChildren()) {
+            for (SourceCode child : sourceCode.getChildren()) {
+                if (child instanceof SourceFunction) {
+                    functions.add(child);
+                }
+                functions.addAll(findFunctions(child));
+            }
+        }
+        return functions;
     }
 
     /**
-     * Saves measures from an input file and source file.
+     * Saves the measures and issues of a file, and reports its parse errors.
+     *
+     * @param file analyzed file.
+     * @param result result of the analysis.
+     */
+    private void save(File file, ApexFileResult result) {
+        InputFile inputFile = fileSystem.inputFile(fileSystem.predicates().is(file));
+        int fileParseErrors = (int) result.getMeasure(ApexMetric.PARSE_ERRORS);
+        if (fileParseErrors > 0) {
+            LOG.warn(FILE_PARSE_ERRORS, fileParseErrors, file);
+            parseErrors += fileParseErrors;
+            filesWithParseErrors++;
+        }
+
+        saveFilesComplexityDistribution(inputFile, result);
+        saveFunctionsComplexityDistribution(inputFile, result);
+        saveMeasures(inputFile, result);
+        saveIssues(inputFile, result);
+    }
+
+    /**
+     * Returns the measures, function complexities and issues of a source file.
      *
-     * @param sonarFile input file.
      * @param squidFile source file.
+     * @param squidFunctionsInFile functions of the source file.
+     * @return the result.
      */
-    private void saveMeasures(InputFile sonarFile, SourceFile squidFile) {
-        context.saveMeasure(sonarFile, CoreMetrics.FILES, squidFile.getDouble(ApexMetric.FILES));
-        context.saveMeasure(sonarFile, CoreMetrics.LINES, squidFile.getDouble(ApexMetric.LINES));
-        context.saveMeasure(sonarFile, CoreMetrics.NCLOC, squidFile.getDouble(ApexMetric.LINES_OF_CODE));
-        context.saveMeasure(sonarFile, CoreMetrics.STATEMENTS, squidFile.getDouble(ApexMetric.STATEMENTS));
-        context.saveMeasure(sonarFile, CoreMetrics.FUNCTIONS, squidFile.getDouble(ApexMetric.METHODS));
-        context.saveMeasure(sonarFile, CoreMetrics.CLASSES, squidFile.getDouble(ApexMetric.CLASSES));
-        context.saveMeasure(sonarFile, CoreMetrics.COMPLEXITY, squidFile.getDouble(ApexMetric.COMPLEXITY));
-        context.saveMeasure(sonarFile, CoreMetrics.COMMENT_LINES, squidFile.getDouble(ApexMetric.COMMENT_LINES));
+    private ApexFileResult createResult(SourceFile squidFile, Collection<? extends SourceCode> squidFunctionsInFile) {
+        ApexFileResult result = new ApexFileResult();
+        for (ApexMetric metric : ApexMetric.values()) {
+            result.setMeasure(metric, squidFile.getDouble(metric));
+        }
+        squidFunctionsInFile.forEach(squidFunction ->
+            result.addFunctionComplexity(squidFunction.getDouble(ApexMetric.COMPLEXITY))
+        );
+        squidFile.getCheckMessages().forEach(message ->
+            result.addMessage(ruleKey((SquidAstVisitor<Grammar>) message.getCheck()),
+                    message.getLine(), message.getText(Locale.ENGLISH))
+        );
+        return result;
+    }
+
+    /**
+     * Saves measures from an input file and the result of its analysis.
+     *
+     * @param sonarFile input file.
+     * @param result result of the analysis.
+     */
+    private void saveMeasures(InputFile sonarFile, ApexFileResult result) {
+        context.saveMeasure(sonarFile, CoreMetrics.FILES, result.getMeasure(ApexMetric.FILES));
+        context.saveMeasure(sonarFile, CoreMetrics.LINES, result.getMeasure(ApexMetric.LINES));
+        context.saveMeasure(sonarFile, CoreMetrics.NCLOC, result.getMeasure(ApexMetric.LINES_OF_CODE));
+        context.saveMeasure(sonarFile, CoreMetrics.STATEMENTS, result.getMeasure(ApexMetric.STATEMENTS));
+        context.saveMeasure(sonarFile, CoreMetrics.FUNCTIONS, result.getMeasure(ApexMetric.METHODS));
+        context.saveMeasure(sonarFile, CoreMetrics.CLASSES, result.getMeasure(ApexMetric.CLASSES));
+        context.saveMeasure(sonarFile, CoreMetrics.COMPLEXITY, result.getMeasure(ApexMetric.COMPLEXITY));
+        context.saveMeasure(sonarFile, CoreMetrics.COMMENT_LINES, result.getMeasure(ApexMetric.COMMENT_LINES));
     }
 
     /**
      * Saves a measure with the limits of the function.
      *
      * @param sonarFile input file.
-     * @param squidFile source file.
+     * @param result result of the analysis.
      */
-    private void saveFunctionsComplexityDistribution(InputFile sonarFile, SourceFile squidFile) {
-        Collection<SourceCode> squidFunctionsInFile = scanner.getIndex().search(
-                new QueryByParent(squidFile),
-                new QueryByType(SourceFunction.class));
+    private void saveFunctionsComplexityDistribution(InputFile sonarFile, ApexFileResult result) {
         RangeDistributionBuilder complexityDistribution = new RangeDistributionBuilder(
                 CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION,
                 FUNCTIONS_DISTRIB_BOTTOM_LIMITS);
-        squidFunctionsInFile.forEach(squidFunction ->
-            complexityDistribution.add(squidFunction.getDouble(ApexMetric.COMPLEXITY))
-        );
+        result.getFunctionComplexities().forEach(complexityDistribution::add);
         context.saveMeasure(sonarFile, buildMeasure(complexityDistribution));
     }
 
@@ -234,33 +539,31 @@ public class ApexSquidSensor implements Sensor {
      * Saves a measure with the limits of the file.
      *
      * @param sonarFile input file.
-     * @param squidFile source file.
+     * @param result result of the analysis.
      */
-    private void saveFilesComplexityDistribution(InputFile sonarFile, SourceFile squidFile) {
+    private void saveFilesComplexityDistribution(InputFile sonarFile, ApexFileResult result) {
         RangeDistributionBuilder complexityDistribution = new RangeDistributionBuilder(
                 CoreMetrics.FILE_COMPLEXITY_DISTRIBUTION,
                 FILES_DISTRIB_BOTTOM_LIMITS);
-        complexityDistribution.add(squidFile.getDouble(ApexMetric.COMPLEXITY));
+        complexityDistribution.add(result.getMeasure(ApexMetric.COMPLEXITY));
         context.saveMeasure(sonarFile, buildMeasure(complexityDistribution));
     }
 
     /**
-     * Saves issues form input file and source file.
+     * Saves issues form input file and the result of its analysis.
      *
      * @param sonarFile input file.
-     * @param squidFile source file.
+     * @param result result of the analysis.
      */
-    private void saveIssues(InputFile sonarFile, SourceFile squidFile) {
-        Collection<CheckMessage> messages = squidFile.getCheckMessages();
-        messages.forEach(message -> {
-            RuleKey ruleKey = checks.ruleKey((SquidAstVisitor<Grammar>) message.getCheck());
+    private void saveIssues(InputFile sonarFile, ApexFileResult result) {
+        result.getMessages().forEach(message -> {
             Issuable issuable = resourcePerspectives.as(Issuable.class, sonarFile);
 
             if (issuable != null) {
                 Issue issue = issuable.newIssueBuilder()
-                        .ruleKey(ruleKey)
+                        .ruleKey(message.getRuleKey())
                         .line(message.getLine())
-                        .message(message.getText(Locale.ENGLISH))
+                        .message(message.getText())
                         .build();
                 issuable.addIssue(issue);
             }
@@ -0,0 +1,293 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.sonar.api.batch.rule.Checks;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.check.RuleProperty;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexCodeDigest;
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.ApexFileResult;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
+
+/**
+ * Persistent cache of the results of the analyzed files. An entry is keyed by the content of the file and
+ * by a fingerprint of the analyzer, the settings that change the results, the active rules and their
+ * parameters, so an unchanged file analyzed with the same rules and settings can skip the scanner entirely. A
+ * cache that can not be read or written only misses.
+ */
+public class ApexResultCache {
+
+    /**
+     * Stores the version of the format of the entries, it must be increased when the format or the
+     * analysis changes.
+     */
+    static final int FORMAT_VERSION = 3;
+
+    /**
+     * Stores the name of the cache directory.
+     */
+    private static final String DIRECTORY = "apex-cache";
+
+    /**
+     * Stores the digest algorithm used to build the keys.
+     */
+    private static final String ALGORITHM = "SHA-1";
+
+    /**
+     * Stores the directory of the entries.
+     */
+    private final File directory;
+
+    /**
+     * Stores the fingerprint of the rules.
+     */
+    private final byte[] fingerprint;
+
+    /**
+     * Stores the key computed for each looked up file.
+     */
+    private final Map<File, String> keys = Maps.newHashMap();
+
+    /**
+     * Default constructor.
+     *
+     * @param workDir working directory of the analysis.
+     * @param fingerprint fingerprint of the rules.
+     */
+    public ApexResultCache(File workDir, String fingerprint) {
+        this.directory = new File(workDir, DIRECTORY);
+        this.fingerprint = fingerprint.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the fingerprint of the code of the analyzer, the settings of the configuration that change the
+     * results, the active checks, their rule keys and the values of their {@link RuleProperty} fields.
+     *
+     * @param <C> type of the checks.
+     * @param checks active checks.
+     * @param config configuration of the analysis.
+     * @return the fingerprint.
+     */
+    public static <C> String fingerprint(Checks<C> checks, ApexConfiguration config) {
+        List<String> rules = Lists.newArrayList();
+        Set<Class<?>> types = Sets.newHashSet(ApexResultCache.class, ApexMetric.class);
+        for (C check : checks.all()) {
+            types.add(check.getClass());
+            StringBuilder rule = new StringBuilder();
+            rule.append(checks.ruleKey(check)).append('|').append(check.getClass().getName());
+            for (Class<?> type = check.getClass(); type != null; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (field.isAnnotationPresent(RuleProperty.class)) {
+                        rule.append('|').append(field.getName()).append('=').append(readField(field, check));
+                    }
+                }
+            }
+            rules.add(rule.toString());
+        }
+        Collections.sort(rules);
+        String settings = Joiner.on('|').join(FORMAT_VERSION, config.getCharset().name(), config.getErrorRecovery(),
+                config.getMaxFileTokens(), config.getMaxFileMillis(), ApexCodeDigest.digest(types));
+        return settings + "\n" + Joiner.on('\n').join(rules);
+    }
+
+    /**
+     * Returns the cached result of a file.
+     *
+     * @param file file to be analyzed.
+     * @return the result, or null when the file is not cached.
+     */
+    public ApexFileResult get(File file) {
+        String key = key(file);
+        if (key == null) {
+            return null;
+        }
+        File entry = new File(directory, key);
+        if (!entry.isFile()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            return read(input);
+        } catch (IOException | IllegalArgumentException e) {
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the result of a file. A file whose entry can not be written, for instance on a full disk, is
+     * analyzed again by the next analysis.
+     *
+     * @param file analyzed file.
+     * @param result result of the analysis.
+     */
+    public void put(File file, ApexFileResult result) {
+        String key = key(file);
+        if (key == null) {
+            return;
+        }
+        File temporary = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            temporary = File.createTempFile(DIRECTORY, null, directory);
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                write(output, result);
+            }
+            Files.move(temporary.toPath(), new File(directory, key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            if (temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the key of a file, computed from its content and the fingerprint.
+     *
+     * @param file the file.
+     * @return the key, or null when the file can not be read.
+     */
+    private String key(File file) {
+        String key = keys.get(file);
+        if (key == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+                digest.update(fingerprint);
+                digest.update(Files.readAllBytes(file.toPath()));
+                key = toHex(digest.digest());
+            } catch (IOException | NoSuchAlgorithmException e) {
+                return null;
+            }
+            keys.put(file, key);
+        }
+        return key;
+    }
+
+    /**
+     * Returns a digest as hexadecimal digits.
+     *
+     * @param bytes the digest.
+     * @return the digits.
+     */
+    private static String toHex(byte[] bytes) {
+        return String.format("%040x", new BigInteger(1, bytes));
+    }
+
+    /**
+     * Reads a result.
+     *
+     * @param input entry stream.
+     * @return the result.
+     * @throws IOException when the entry is invalid.
+     */
+    private static ApexFileResult read(DataInputStream input) throws IOException {
+        if (input.readInt() != FORMAT_VERSION) {
+            throw new IOException();
+        }
+        ApexFileResult result = new ApexFileResult();
+        int measures = input.readInt();
+        for (int i = 0; i < measures; i++) {
+            result.setMeasure(ApexMetric.valueOf(input.readUTF()), input.readDouble());
+        }
+        int functions = input.readInt();
+        for (int i = 0; i < functions; i++) {
+            result.addFunctionComplexity(input.readDouble());
+        }
+        int messages = input.readInt();
+        for (int i = 0; i < messages; i++) {
+            RuleKey ruleKey = RuleKey.parse(input.readUTF());
+            int line = input.readInt();
+            result.addMessage(ruleKey, line < 0 ? null : line, input.readUTF());
+        }
+        return result;
+    }
+
+    /**
+     * Writes a result.
+     *
+     * @param output entry stream.
+     * @param result the result.
+     * @throws IOException when the entry can not be written.
+     */
+    private static void write(DataOutputStream output, ApexFileResult result) throws IOException {
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(ApexMetric.values().length);
+        for (ApexMetric metric : ApexMetric.values()) {
+            output.writeUTF(metric.name());
+            output.writeDouble(result.getMeasure(metric));
+        }
+        output.writeInt(result.getFunctionComplexities().size());
+        for (Double complexity : result.getFunctionComplexities()) {
+            output.writeDouble(complexity);
+        }
+        output.writeInt(result.getMessages().size());
+        for (ApexFileResult.Message message : result.getMessages()) {
+            output.writeUTF(message.getRuleKey().toString());
+            output.writeInt(message.getLine() == null ? -1 : message.getLine());
+            output.writeUTF(message.getText());
+        }
+    }
+
+    /**
+     * Returns the value of a field of a check.
+     *
+     * @param field the field.
+     * @param check the check.
+     * @return the value as string.
+     */
+    private static String readField(Field field, Object check) {
+        try {
+            field.setAccessible(true);
+            return String.valueOf(field.get(check));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
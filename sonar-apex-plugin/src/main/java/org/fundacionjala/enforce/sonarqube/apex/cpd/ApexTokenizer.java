@@ -26,20 +26,19 @@ package org.fundacionjala.enforce.sonarqube.apex.cpd;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.List;
 
-import com.sonar.sslr.api.Token;
-import com.sonar.sslr.impl.Lexer;
 import net.sourceforge.pmd.cpd.SourceCode;
 import net.sourceforge.pmd.cpd.TokenEntry;
 import net.sourceforge.pmd.cpd.Tokenizer;
 import net.sourceforge.pmd.cpd.Tokens;
 
 import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
-import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexLexer;
+import org.fundacionjala.enforce.sonarqube.apex.lexer.ApexTokenStream;
+import org.fundacionjala.enforce.sonarqube.apex.parser.ApexParser;
 
 /**
- * Scans the source code to build {@link TokenEntry}.
+ * Scans the source code to build {@link TokenEntry}. The files are lexed by the compiled parser of the current
+ * thread, which keeps its buffers from one file to the next.
  */
 public class ApexTokenizer implements Tokenizer {
 
@@ -66,23 +65,12 @@ public class ApexTokenizer implements Tokenizer {
      */
     @Override
     public void tokenize(SourceCode source, Tokens cpdTokens) throws IOException {
-        Lexer lexer = ApexLexer.create(config);
         String fileName = source.getFileName();
-        List<Token> tokens = lexer.lex(new File(fileName));
-        tokens.forEach(token -> {
-            TokenEntry cpdToken = new TokenEntry(getTokenImage(token), fileName, token.getLine());
+        ApexTokenStream tokens = ApexParser.getCompiled(config).getLexer().lexStream(new File(fileName));
+        for (int index = 0; index < tokens.size(); index++) {
+            TokenEntry cpdToken = new TokenEntry(tokens.getValue(index), fileName, tokens.getLine(index));
             cpdTokens.add(cpdToken);
-        });
+        }
         cpdTokens.add(TokenEntry.getEOF());
     }
-
-    /**
-     * Returns the Token's value.
-     *
-     * @param token current token.
-     * @return the token's value
-     */
-    private String getTokenImage(Token token) {
-        return token.getValue();
-    }
 }
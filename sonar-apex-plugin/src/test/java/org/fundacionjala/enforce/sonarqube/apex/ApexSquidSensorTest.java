@@ -26,7 +26,9 @@ package org.fundacionjala.enforce.sonarqube.apex;
 import java.io.File;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.fs.InputFile;
@@ -36,6 +38,7 @@ import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.batch.rule.CheckFactory;
 import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
 import org.sonar.api.component.ResourcePerspectives;
+import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issuable;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.resources.Project;
@@ -54,9 +57,14 @@ import static org.mockito.Mockito.when;
 
 public class ApexSquidSensorTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private ApexSquidSensor squidSensor;
     private DefaultFileSystem fileSystem;
     ResourcePerspectives perspectives;
+    private Settings settings;
+    private CheckFactory checkFactory;
 
     @Before
     public void setUp() {
@@ -65,10 +73,11 @@ public class ApexSquidSensorTest {
                 .setName("Print Statement Usage")
                 .activate()
                 .build();
-        CheckFactory checkFactory = new CheckFactory(activeRules);
+        checkFactory = new CheckFactory(activeRules);
         perspectives = mock(ResourcePerspectives.class);
         fileSystem = new DefaultFileSystem(new File("."));
-        squidSensor = new ApexSquidSensor(fileSystem, perspectives, checkFactory);
+        settings = new Settings();
+        squidSensor = new ApexSquidSensor(fileSystem, perspectives, checkFactory, settings);
     }
 
     @Test
@@ -82,6 +91,74 @@ public class ApexSquidSensorTest {
 
     @Test
     public void testAnalyse() {
+        verifyMeasures(analyse());
+    }
+
+    @Test
+    public void testAnalyseWithThreads() {
+        settings.setProperty(ApexSquidSensor.THREADS_KEY, 4);
+        verifyMeasures(analyse());
+    }
+
+    @Test
+    public void testAnalyseWithStreaming() {
+        settings.setProperty(ApexSquidSensor.STREAMING_KEY, true);
+        verifyMeasures(analyse());
+    }
+
+    @Test
+    public void testAnalyseWithStreamingAndThreads() {
+        settings.setProperty(ApexSquidSensor.STREAMING_KEY, true);
+        settings.setProperty(ApexSquidSensor.THREADS_KEY, 4);
+        verifyMeasures(analyse());
+    }
+
+    @Test
+    public void testAnalyseWithCache() {
+        settings.setProperty(ApexSquidSensor.CACHE_KEY, true);
+        fileSystem.setWorkDir(folder.getRoot());
+        analyse();
+        assertThat(new File(folder.getRoot(), "apex-cache").list().length, is(1));
+
+        squidSensor = new ApexSquidSensor(fileSystem, perspectives, checkFactory, settings);
+        SensorContext context = mock(SensorContext.class);
+        squidSensor.analyse(new Project("cls"), context);
+        verifyMeasures(context);
+    }
+
+    @Test
+    public void testAnalyseWithAstCache() {
+        settings.setProperty(ApexSquidSensor.AST_CACHE_KEY, true);
+        fileSystem.setWorkDir(folder.getRoot());
+        verifyMeasures(analyse());
+        assertThat(new File(folder.getRoot(), "apex-ast-cache").list().length, is(1));
+
+        squidSensor = new ApexSquidSensor(fileSystem, perspectives, checkFactory, settings);
+        SensorContext context = mock(SensorContext.class);
+        squidSensor.analyse(new Project("cls"), context);
+        verifyMeasures(context);
+    }
+
+    @Test
+    public void testAnalyseWithABudget() {
+        settings.setProperty(ApexSquidSensor.MAX_FILE_TOKENS_KEY, 10);
+        SensorContext context = analyse();
+        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.LINES), eq(7.0));
+        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.NCLOC), eq(6.0));
+        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.STATEMENTS), eq(0.0));
+    }
+
+    private void verifyMeasures(SensorContext context) {
+        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.FILES), eq(1.0));
+        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.LINES), eq(7.0));
+        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.NCLOC), eq(6.0));
+        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.STATEMENTS), eq(2.0));
+        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.FUNCTIONS), eq(1.0));
+        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.CLASSES), eq(1.0));
+        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.COMPLEXITY), eq(1.0));
+    }
+
+    private SensorContext analyse() {
         String relativePath = "src/test/resources/sensor/Book.cls";
         DefaultInputFile inputFile = new DefaultInputFile(relativePath).setLanguage(Apex.KEY);
         inputFile.setAbsolutePath((new File(relativePath)).getAbsolutePath());
@@ -98,13 +175,6 @@ public class ApexSquidSensorTest {
         Project project = new Project("cls");
         SensorContext context = mock(SensorContext.class);
         squidSensor.analyse(project, context);
-
-        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.FILES), eq(1.0));
-        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.LINES), eq(7.0));
-        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.NCLOC), eq(6.0));
-        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.STATEMENTS), eq(2.0));
-        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.FUNCTIONS), eq(1.0));
-        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.CLASSES), eq(1.0));
-        verify(context).saveMeasure(any(InputFile.class), eq(CoreMetrics.COMPLEXITY), eq(1.0));
+        return context;
     }
 }
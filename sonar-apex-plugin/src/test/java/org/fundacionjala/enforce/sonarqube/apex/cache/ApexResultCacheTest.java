@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Fundacion Jala.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.fundacionjala.enforce.sonarqube.apex.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.google.common.base.Charsets;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.rule.CheckFactory;
+import org.sonar.api.batch.rule.Checks;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.batch.rule.internal.NewActiveRule;
+import org.sonar.api.rule.RuleKey;
+
+import org.fundacionjala.enforce.sonarqube.apex.ApexConfiguration;
+import org.fundacionjala.enforce.sonarqube.apex.ApexFileResult;
+import org.fundacionjala.enforce.sonarqube.apex.api.ApexMetric;
+import org.fundacionjala.enforce.sonarqube.apex.checks.CheckList;
+import org.fundacionjala.enforce.sonarqube.apex.checks.ClassNameCheck;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ApexResultCacheTest {
+
+    private static final RuleKey RULE_KEY = RuleKey.of(CheckList.REPOSITORY_KEY, ClassNameCheck.CHECK_KEY);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private ApexFileResult result;
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.newFile("Book.cls");
+        Files.write(file.toPath(), "public class Book {}".getBytes(StandardCharsets.UTF_8));
+        result = new ApexFileResult();
+        result.setMeasure(ApexMetric.LINES, 7.0);
+        result.setMeasure(ApexMetric.COMPLEXITY, 3.0);
+        result.addFunctionComplexity(1.0);
+        result.addFunctionComplexity(2.0);
+        result.addMessage(RULE_KEY, 1, "Rename class.");
+        result.addMessage(RULE_KEY, null, "File issue.");
+    }
+
+    @Test
+    public void testStoredResultIsReplayed() {
+        new ApexResultCache(folder.getRoot(), "rules").put(file, result);
+        ApexFileResult cached = new ApexResultCache(folder.getRoot(), "rules").get(file);
+
+        assertThat(cached, notNullValue());
+        assertThat(cached.getMeasure(ApexMetric.LINES), is(7.0));
+        assertThat(cached.getMeasure(ApexMetric.COMPLEXITY), is(3.0));
+        assertThat(cached.getMeasure(ApexMetric.METHODS), is(0.0));
+        assertThat(cached.getFunctionComplexities().size(), is(2));
+        assertThat(cached.getMessages().size(), is(2));
+        assertThat(cached.getMessages().get(0).getRuleKey(), equalTo(RULE_KEY));
+        assertThat(cached.getMessages().get(0).getLine(), is(1));
+        assertThat(cached.getMessages().get(0).getText(), equalTo("Rename class."));
+        assertThat(cached.getMessages().get(1).getLine(), nullValue());
+    }
+
+    @Test
+    public void testChangedContentIsNotReplayed() throws IOException {
+        new ApexResultCache(folder.getRoot(), "rules").put(file, result);
+        Files.write(file.toPath(), "public class Books {}".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(new ApexResultCache(folder.getRoot(), "rules").get(file), nullValue());
+    }
+
+    @Test
+    public void testChangedRulesAreNotReplayed() {
+        new ApexResultCache(folder.getRoot(), "rules").put(file, result);
+
+        assertThat(new ApexResultCache(folder.getRoot(), "other rules").get(file), nullValue());
+    }
+
+    @Test
+    public void testFingerprintDependsOnRuleParameters() {
+        ApexConfiguration config = new ApexConfiguration(Charsets.UTF_8);
+        String defaultFingerprint = ApexResultCache.fingerprint(createChecks(null), config);
+        String customFingerprint = ApexResultCache.fingerprint(createChecks("^[a-z]+$"), config);
+
+        assertThat(customFingerprint, not(equalTo(defaultFingerprint)));
+        assertThat(ApexResultCache.fingerprint(createChecks(null), config), equalTo(defaultFingerprint));
+    }
+
+    @Test
+    public void testFingerprintDependsOnTheSettings() {
+        ApexConfiguration config = new ApexConfiguration(Charsets.UTF_8);
+        String defaultFingerprint = ApexResultCache.fingerprint(createChecks(null), config);
+        config.setErrorRecovery(true);
+        String recoveringFingerprint = ApexResultCache.fingerprint(createChecks(null), config);
+        config.setMaxFileTokens(1000);
+        String budgetFingerprint = ApexResultCache.fingerprint(createChecks(null), config);
+
+        assertThat(recoveringFingerprint, not(equalTo(defaultFingerprint)));
+        assertThat(budgetFingerprint, not(equalTo(recoveringFingerprint)));
+    }
+
+    @Test
+    public void testUnwritableCacheMisses() throws IOException {
+        File workDir = folder.newFile("work");
+        new ApexResultCache(workDir, "rules").put(file, result);
+
+        assertThat(new ApexResultCache(workDir, "rules").get(file), nullValue());
+    }
+
+    @Test
+    public void testUnreadableFileMisses() {
+        File missing = new File(folder.getRoot(), "Missing.cls");
+        new ApexResultCache(folder.getRoot(), "rules").put(missing, result);
+
+        assertThat(new ApexResultCache(folder.getRoot(), "rules").get(missing), nullValue());
+    }
+
+    private Checks<Object> createChecks(String format) {
+        NewActiveRule rule = new ActiveRulesBuilder().create(RULE_KEY);
+        if (format != null) {
+            rule.setParam("format", format);
+        }
+        return new CheckFactory(rule.activate().build())
+                .create(CheckList.REPOSITORY_KEY)
+                .addAnnotatedChecks(CheckList.getChecks());
+    }
+}